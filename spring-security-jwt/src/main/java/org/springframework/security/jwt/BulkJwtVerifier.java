@@ -0,0 +1,214 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+/**
+ * Decodes and verifies a batch of tokens in parallel (e.g. to re-validate stored tokens after a key change). The
+ * results come back in the same order as the tokens, with a failure recorded against any token that could not be
+ * decoded or verified rather than aborting the rest of the batch.
+ * <p>
+ * The work is split into a few chunks per thread and run on the {@link #setExecutorService(ExecutorService) executor
+ * service} provided, or if there isn't one, on a pool of {@link #setParallelism(int) parallelism} threads created for
+ * the batch and shut down when it is done.
+ */
+public class BulkJwtVerifier {
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final SignatureVerifier verifier;
+	private final SignatureVerifierRegistry verifiers;
+
+	private ExecutorService executorService;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Verify every token with the same key.
+	 */
+	public BulkJwtVerifier(SignatureVerifier verifier) {
+		if (verifier == null) {
+			throw new IllegalArgumentException("Verifier cannot be null");
+		}
+		this.verifier = verifier;
+		this.verifiers = null;
+	}
+
+	/**
+	 * Verify each token with the key chosen by the registry from its header.
+	 */
+	public BulkJwtVerifier(SignatureVerifierRegistry verifiers) {
+		if (verifiers == null) {
+			throw new IllegalArgumentException("Registry cannot be null");
+		}
+		this.verifier = null;
+		this.verifiers = verifiers;
+	}
+
+	/**
+	 * An executor service to run the verification on. It is not shut down afterwards.
+	 */
+	public void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	/**
+	 * The number of threads to use when there is no executor service (defaults to the number of processors). With
+	 * an executor service it is only used to decide how to split up the batch.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param tokens the encoded tokens
+	 * @return a result for each token, in the same order
+	 * @throws IllegalStateException if the calling thread is interrupted while waiting for the results
+	 */
+	public List<Result> verify(Iterable<String> tokens) {
+		final List<String> batch = new ArrayList<String>();
+		for (String token : tokens) {
+			batch.add(token);
+		}
+
+		if (batch.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final Result[] results = new Result[batch.size()];
+
+		if (parallelism == 1 && executorService == null) {
+			verify(batch, results, 0, results.length);
+			return resultList(results);
+		}
+
+		ExecutorService executor = executorService;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.min(parallelism, results.length));
+		}
+
+		int chunkSize = Math.max(1, (results.length + parallelism * CHUNKS_PER_THREAD - 1)
+				/ (parallelism * CHUNKS_PER_THREAD));
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		try {
+			for (int start = 0; start < results.length; start += chunkSize) {
+				final int from = start;
+				final int to = Math.min(start + chunkSize, results.length);
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						verify(batch, results, from, to);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while verifying tokens", e);
+		}
+		catch (ExecutionException e) {
+			// Failures are caught for each token, so this can only be an Error
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		finally {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			if (executor != executorService) {
+				executor.shutdownNow();
+			}
+		}
+
+		return resultList(results);
+	}
+
+	private void verify(List<String> batch, Result[] results, int from, int to) {
+		for (int i = from; i < to; i++) {
+			String token = batch.get(i);
+			try {
+				results[i] = new Result(token, verify(token), null);
+			}
+			catch (RuntimeException e) {
+				results[i] = new Result(token, null, e);
+			}
+		}
+	}
+
+	private Jwt verify(String token) {
+		if (verifier != null) {
+			return JwtHelper.decodeAndVerify(token, verifier);
+		}
+		return JwtHelper.decodeAndVerify(token, verifiers);
+	}
+
+	private static List<Result> resultList(Result[] results) {
+		List<Result> list = new ArrayList<Result>(results.length);
+		Collections.addAll(list, results);
+		return list;
+	}
+
+	/**
+	 * The outcome of verifying one token: either the verified {@link Jwt} or the exception that stopped it from being
+	 * decoded or verified.
+	 */
+	public static class Result {
+		private final String token;
+		private final Jwt jwt;
+		private final RuntimeException failure;
+
+		Result(String token, Jwt jwt, RuntimeException failure) {
+			this.token = token;
+			this.jwt = jwt;
+			this.failure = failure;
+		}
+
+		public String getToken() {
+			return token;
+		}
+
+		/**
+		 * @return the verified token, or null if it failed
+		 */
+		public Jwt getJwt() {
+			return jwt;
+		}
+
+		/**
+		 * @return the reason the token failed (e.g. an InvalidSignatureException), or null if it was verified
+		 */
+		public RuntimeException getFailure() {
+			return failure;
+		}
+
+		public boolean isVerified() {
+			return failure == null;
+		}
+	}
+}
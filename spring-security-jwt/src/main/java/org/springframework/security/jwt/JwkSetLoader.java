@@ -0,0 +1,181 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import static org.springframework.security.jwt.JwtAlgorithms.javaSigAlg;
+import static org.springframework.security.jwt.codec.Codecs.b64UrlDecode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.springframework.security.jwt.crypto.sign.EcdsaVerifier;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+/**
+ * Loads a JWK Set (a JSON object with a "keys" array) from a URL, which can be a file, a classpath resource (via
+ * {@link ClassLoader#getResource(String)}) or anything else the JDK can open. RSA, EC (P-256 and P-384) and symmetric
+ * ("oct") keys are supported. Every key must have a "kid". The algorithm is taken from "alg" if it is present, and
+ * otherwise defaults to RS256, ES256/ES384 (by curve) and HS256 respectively.
+ */
+public class JwkSetLoader implements KeySetLoader {
+	private static final JsonFactory f = new JsonFactory();
+	private static final Map<String, String> curves = new HashMap<String, String>();
+
+	static {
+		curves.put("P-256", "secp256r1");
+		curves.put("P-384", "secp384r1");
+	}
+
+	private final URL url;
+
+	public JwkSetLoader(URL url) {
+		if (url == null) {
+			throw new IllegalArgumentException("URL cannot be null");
+		}
+		this.url = url;
+	}
+
+	public KeySet load() throws IOException {
+		InputStream in = url.openStream();
+		JsonParser jp = null;
+		try {
+			jp = f.createJsonParser(in);
+			return new KeySet(parseKeys(jp));
+		}
+		finally {
+			if (jp != null) {
+				jp.close();
+			}
+			in.close();
+		}
+	}
+
+	private Map<String, SignatureVerifier> parseKeys(JsonParser jp) throws IOException {
+		Map<String, SignatureVerifier> verifiers = new LinkedHashMap<String, SignatureVerifier>();
+
+		if (jp.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("JWK Set must be a JSON object");
+		}
+		while (jp.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldname = jp.getCurrentName();
+			if (!"keys".equals(fieldname)) {
+				jp.nextToken();
+				jp.skipChildren();
+				continue;
+			}
+			if (jp.nextToken() != JsonToken.START_ARRAY) {
+				throw new IOException("JWK Set 'keys' must be an array");
+			}
+			while (jp.nextToken() == JsonToken.START_OBJECT) {
+				Map<String, String> jwk = parseKey(jp);
+				String kid = jwk.get("kid");
+				if (kid == null) {
+					throw new IOException("JWK has no 'kid'");
+				}
+				if (verifiers.put(kid, createVerifier(jwk)) != null) {
+					throw new IOException("Duplicate 'kid' in JWK Set: " + kid);
+				}
+			}
+		}
+
+		return verifiers;
+	}
+
+	private Map<String, String> parseKey(JsonParser jp) throws IOException {
+		Map<String, String> jwk = new HashMap<String, String>();
+
+		while (jp.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldname = jp.getCurrentName();
+			if (jp.nextToken() == JsonToken.VALUE_STRING) {
+				jwk.put(fieldname, jp.getText());
+			}
+			else {
+				// e.g. "key_ops" or "x5c", which we don't use
+				jp.skipChildren();
+			}
+		}
+
+		return jwk;
+	}
+
+	private SignatureVerifier createVerifier(Map<String, String> jwk) throws IOException {
+		String kty = jwk.get("kty");
+		String alg = jwk.get("alg");
+
+		try {
+			if ("RSA".equals(kty)) {
+				RSAPublicKey key = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(
+						new RSAPublicKeySpec(integer(jwk, "n"), integer(jwk, "e")));
+				return new RsaVerifier(key, javaSigAlg(alg == null ? "RS256" : alg));
+			}
+			if ("EC".equals(kty)) {
+				String curve = curves.get(jwk.get("crv"));
+				if (curve == null) {
+					throw new IOException("Unsupported elliptic curve: " + jwk.get("crv"));
+				}
+				AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+				parameters.init(new ECGenParameterSpec(curve));
+				ECPoint w = new ECPoint(integer(jwk, "x"), integer(jwk, "y"));
+				ECPublicKey key = (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(
+						new ECPublicKeySpec(w, parameters.getParameterSpec(ECParameterSpec.class)));
+				return alg == null ? new EcdsaVerifier(key) : new EcdsaVerifier(key, javaSigAlg(alg));
+			}
+			if ("oct".equals(kty)) {
+				String javaAlg = javaSigAlg(alg == null ? "HS256" : alg);
+				return new MacSigner(javaAlg, new SecretKeySpec(b64UrlDecode(required(jwk, "k")), javaAlg));
+			}
+		}
+		catch (GeneralSecurityException e) {
+			throw new IOException("Invalid JWK '" + jwk.get("kid") + "': " + e.getMessage());
+		}
+		catch (IllegalArgumentException e) {
+			throw new IOException("Invalid JWK '" + jwk.get("kid") + "': " + e.getMessage());
+		}
+
+		throw new IOException("Unsupported JWK key type: " + kty);
+	}
+
+	private static BigInteger integer(Map<String, String> jwk, String name) throws IOException {
+		return new BigInteger(1, b64UrlDecode(required(jwk, name)));
+	}
+
+	private static String required(Map<String, String> jwk, String name) throws IOException {
+		String value = jwk.get(name);
+		if (value == null) {
+			throw new IOException("JWK '" + jwk.get("kid") + "' has no '" + name + "'");
+		}
+		return value;
+	}
+}
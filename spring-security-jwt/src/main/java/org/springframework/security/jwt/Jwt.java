@@ -20,6 +20,14 @@ import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 public interface Jwt extends BinaryFormat {
 	String getClaims();
 
+	/**
+	 * The registered claims, parsed on first use. These can be read (e.g. to check the expiry) before verifying the
+	 * signature, but should not be trusted until it has been.
+	 *
+	 * @throws IllegalArgumentException if the claims cannot be parsed
+	 */
+	JwtClaims getClaimSet();
+
 	String getEncoded();
 
 	void verifySignature(SignatureVerifier verifier);
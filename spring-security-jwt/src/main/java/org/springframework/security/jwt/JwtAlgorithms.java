@@ -32,6 +32,8 @@ public class JwtAlgorithms {
 		sigAlgs.put("HS512" , "HMACSHA512");
 		sigAlgs.put("RS256" , "SHA256withRSA");
 		sigAlgs.put("RS512" , "SHA512withRSA");
+		sigAlgs.put("ES256" , "SHA256withECDSA");
+		sigAlgs.put("ES384" , "SHA384withECDSA");
 
 		keyAlgs.put("RSA1_5" , "RSA/ECB/PKCS1Padding");
 
@@ -54,6 +56,16 @@ public class JwtAlgorithms {
 		return alg;
 	}
 
+	static String javaSigAlg(String sigAlg) {
+		String alg = sigAlgs.get(sigAlg);
+
+		if (alg == null) {
+			throw new IllegalArgumentException("Invalid or unsupported signature algorithm: " + sigAlg);
+		}
+
+		return alg;
+	}
+
 	static String keyEncryptionAlg(String javaName) {
 		String alg = javaToKeyAlgs.get(javaName);
 
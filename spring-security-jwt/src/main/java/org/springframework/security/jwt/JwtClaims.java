@@ -0,0 +1,203 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * The registered claims of a token (and the OAuth2 "scope" and "client_id"), read in a single streaming pass over the
+ * claims segment without building a map of the whole thing. Other claims are skipped, so callers that need them still
+ * have to parse {@link Jwt#getClaims()} themselves.
+ * <p>
+ * Since reading these does not need the signature, the time based checks can be used to reject a stale token before
+ * paying for its verification. Nothing else here should be trusted until the signature has been verified.
+ */
+public class JwtClaims {
+	/**
+	 * The value returned for a time claim which is not present.
+	 */
+	public static final long NONE = -1;
+
+	private static final JsonFactory f = new JsonFactory();
+
+	private long exp = NONE;
+	private long nbf = NONE;
+	private long iat = NONE;
+	private String iss;
+	private String sub;
+	private String clientId;
+	private Set<String> aud = Collections.emptySet();
+	private Set<String> scope = Collections.emptySet();
+
+	/**
+	 * @param claims the JSON claims
+	 * @throws IllegalArgumentException if the claims are not a JSON object or a claim has the wrong type
+	 */
+	JwtClaims(byte[] claims) {
+		JsonParser jp = null;
+		try {
+			jp = f.createJsonParser(claims);
+			if (jp.nextToken() != JsonToken.START_OBJECT) {
+				throw new IllegalArgumentException("Claims are not a JSON object");
+			}
+			while (jp.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldname = jp.getCurrentName();
+				JsonToken token = jp.nextToken();
+				if ("exp".equals(fieldname)) {
+					exp = numericDate(jp, token, fieldname);
+				} else if ("nbf".equals(fieldname)) {
+					nbf = numericDate(jp, token, fieldname);
+				} else if ("iat".equals(fieldname)) {
+					iat = numericDate(jp, token, fieldname);
+				} else if ("iss".equals(fieldname)) {
+					iss = string(jp, token, fieldname);
+				} else if ("sub".equals(fieldname)) {
+					sub = string(jp, token, fieldname);
+				} else if ("client_id".equals(fieldname)) {
+					clientId = string(jp, token, fieldname);
+				} else if ("aud".equals(fieldname)) {
+					aud = strings(jp, token, fieldname, false);
+				} else if ("scope".equals(fieldname)) {
+					scope = strings(jp, token, fieldname, true);
+				} else {
+					jp.skipChildren();
+				}
+			}
+		} catch (IOException io) {
+			throw new IllegalArgumentException("Claims are not valid JSON", io);
+		} finally {
+			if (jp != null) {
+				try {
+					jp.close();
+				} catch (IOException ignore) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the "exp" claim in seconds since the epoch, or {@link #NONE}
+	 */
+	public long getExpiresAt() {
+		return exp;
+	}
+
+	/**
+	 * @return the "nbf" claim in seconds since the epoch, or {@link #NONE}
+	 */
+	public long getNotBefore() {
+		return nbf;
+	}
+
+	/**
+	 * @return the "iat" claim in seconds since the epoch, or {@link #NONE}
+	 */
+	public long getIssuedAt() {
+		return iat;
+	}
+
+	public String getIssuer() {
+		return iss;
+	}
+
+	public String getSubject() {
+		return sub;
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	/**
+	 * @return the "aud" claim, which may be a single string or an array (empty if there is none)
+	 */
+	public Set<String> getAudience() {
+		return aud;
+	}
+
+	/**
+	 * @return the "scope" claim, which may be a space separated string or an array (empty if there is none)
+	 */
+	public Set<String> getScope() {
+		return scope;
+	}
+
+	/**
+	 * @param now the current time in milliseconds
+	 * @return true if the token has an "exp" claim at or before the time given
+	 */
+	public boolean isExpired(long now) {
+		return exp != NONE && now >= exp * 1000L;
+	}
+
+	/**
+	 * @param now the current time in milliseconds
+	 * @return true if the token has an "nbf" claim after the time given
+	 */
+	public boolean isNotYetValid(long now) {
+		return nbf != NONE && now < nbf * 1000L;
+	}
+
+	/**
+	 * @param now the current time in milliseconds
+	 * @return true if the token is neither expired nor not yet valid at the time given
+	 */
+	public boolean isValidAt(long now) {
+		return !isExpired(now) && !isNotYetValid(now);
+	}
+
+	private static long numericDate(JsonParser jp, JsonToken token, String name) throws IOException {
+		if (token == JsonToken.VALUE_NUMBER_INT) {
+			return jp.getLongValue();
+		}
+		if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+			return (long) jp.getDoubleValue();
+		}
+		throw new IllegalArgumentException("'" + name + "' must be a number");
+	}
+
+	private static String string(JsonParser jp, JsonToken token, String name) throws IOException {
+		if (token != JsonToken.VALUE_STRING) {
+			throw new IllegalArgumentException("'" + name + "' must be a string");
+		}
+		return jp.getText();
+	}
+
+	private static Set<String> strings(JsonParser jp, JsonToken token, String name, boolean spaceSeparated)
+			throws IOException {
+		Set<String> result = new LinkedHashSet<String>();
+		if (token == JsonToken.VALUE_STRING && !spaceSeparated) {
+			result.add(jp.getText());
+		} else if (token == JsonToken.VALUE_STRING) {
+			for (String value : jp.getText().split(" ")) {
+				if (value.length() > 0) {
+					result.add(value);
+				}
+			}
+		} else if (token == JsonToken.START_ARRAY) {
+			while ((token = jp.nextToken()) != JsonToken.END_ARRAY) {
+				result.add(string(jp, token, name));
+			}
+		} else {
+			throw new IllegalArgumentException("'" + name + "' must be a string or an array of strings");
+		}
+		return Collections.unmodifiableSet(result);
+	}
+}
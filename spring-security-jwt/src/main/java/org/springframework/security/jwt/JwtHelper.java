@@ -15,13 +15,13 @@ package org.springframework.security.jwt;
 import static org.springframework.security.jwt.JwtAlgorithms.sigAlg;
 import static org.springframework.security.jwt.codec.Codecs.b64UrlDecode;
 import static org.springframework.security.jwt.codec.Codecs.b64UrlEncode;
-import static org.springframework.security.jwt.codec.Codecs.concat;
+import static org.springframework.security.jwt.codec.Codecs.b64UrlEncodedLength;
 import static org.springframework.security.jwt.codec.Codecs.utf8Decode;
 import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.CharBuffer;
+import java.nio.ByteBuffer;
 
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
@@ -42,32 +42,82 @@ public class JwtHelper {
 	 * @param token the (non-null) encoded token (three Base-64 encoded strings separated by "." characters)
 	 */
 	public static Jwt decode(String token) {
-		int firstPeriod = token.indexOf('.');
-		int lastPeriod = token.lastIndexOf('.');
+		byte[] bytes = utf8Encode(token);
+		return decode(bytes, 0, bytes.length, token, true);
+	}
 
-		if (firstPeriod <=0 || lastPeriod <= firstPeriod) {
-			throw new IllegalArgumentException("JWT must have 3 tokens");
+	/**
+	 * Creates a token from the bytes of an encoded token, e.g. straight from a request header. Only the header is
+	 * decoded up front and the array is not copied until the signature is verified. Verification works on a private
+	 * copy of the token, and the claims of a verified token are read from that copy, so the array can be reused as soon
+	 * as {@link Jwt#verifySignature(SignatureVerifier)} returns. Until then it must not be modified.
+	 *
+	 * @param token the (non-null) ASCII bytes of the encoded token
+	 */
+	public static Jwt decode(byte[] token) {
+		return decode(token, 0, token.length, null, false);
+	}
+
+	/**
+	 * Creates a token from the remaining bytes in a buffer (the buffer position is not changed). If the buffer is
+	 * backed by an array the same rules apply as for {@link #decode(byte[])}, otherwise the bytes are copied up front.
+	 *
+	 * @param token the (non-null) buffer containing the ASCII bytes of the encoded token
+	 */
+	public static Jwt decode(ByteBuffer token) {
+		if (token.hasArray()) {
+			int offset = token.arrayOffset() + token.position();
+			return decode(token.array(), offset, offset + token.remaining(), null, false);
 		}
-		CharBuffer buffer = CharBuffer.wrap(token, 0, firstPeriod);
-		// TODO: Use a Reader which supports CharBuffer
-		JwtHeader header = JwtHeaderHelper.create(buffer.toString());
+		byte[] bytes = new byte[token.remaining()];
+		token.duplicate().get(bytes);
+		return decode(bytes, 0, bytes.length, null, true);
+	}
 
-		buffer.limit(lastPeriod).position(firstPeriod + 1);
-		byte[] claims = b64UrlDecode(buffer);
-		boolean emptyCrypto = lastPeriod == token.length() - 1;
+	private static Jwt decode(byte[] token, int start, int end, String encoded, boolean owned) {
+		int firstPeriod = indexOf(token, start, end, PERIOD[0]);
+		int lastPeriod = lastIndexOf(token, start, end, PERIOD[0]);
 
-		byte[] crypto;
+		if (firstPeriod <= start || lastPeriod <= firstPeriod) {
+			throw new IllegalArgumentException("JWT must have 3 tokens");
+		}
+		JwtHeader header = JwtHeaderHelper.create(token, start, firstPeriod - start);
+		boolean emptyCrypto = lastPeriod == end - 1;
 
-		if (emptyCrypto) {
-			if (!"none".equals(header.parameters.alg)) {
-				throw new IllegalArgumentException("Signed or encrypted token must have non-empty crypto segment");
-			}
-			crypto = new byte[0];
-		} else {
-			buffer.limit(token.length()).position(lastPeriod + 1);
-			crypto = b64UrlDecode(buffer);
+		if (emptyCrypto && !"none".equals(header.parameters.alg)) {
+			throw new IllegalArgumentException("Signed or encrypted token must have non-empty crypto segment");
 		}
-		return new JwtImpl(header, claims, crypto);
+		return new JwtImpl(header, token, start, firstPeriod, lastPeriod, end, encoded, owned);
+	}
+
+	public static Jwt decodeAndVerify(byte[] token, SignatureVerifier verifier) {
+		Jwt jwt = decode(token);
+		jwt.verifySignature(verifier);
+
+		return jwt;
+	}
+
+	/**
+	 * Decodes a token and verifies it with the key that its header ("kid" and "alg") asks for.
+	 *
+	 * @param token the encoded token
+	 * @param verifiers the keys that are currently trusted
+	 * @throws org.springframework.security.jwt.crypto.sign.InvalidSignatureException if there is no such key or the
+	 * signature does not match
+	 */
+	public static Jwt decodeAndVerify(String token, SignatureVerifierRegistry verifiers) {
+		return verify((JwtImpl) decode(token), verifiers);
+	}
+
+	public static Jwt decodeAndVerify(byte[] token, SignatureVerifierRegistry verifiers) {
+		return verify((JwtImpl) decode(token), verifiers);
+	}
+
+	private static Jwt verify(JwtImpl jwt, SignatureVerifierRegistry verifiers) {
+		HeaderParameters parameters = jwt.header().parameters;
+		jwt.verifySignature(verifiers.getVerifier(parameters.kid, parameters.alg));
+
+		return jwt;
 	}
 
 	public static Jwt decodeAndVerify(String token, SignatureVerifier verifier) {
@@ -78,10 +128,55 @@ public class JwtHelper {
 	}
 
 	public static Jwt encode(CharSequence content, Signer signer) {
-		JwtHeader header = JwtHeaderHelper.create(signer);
+		return encode(content, signer, null);
+	}
+
+	/**
+	 * Creates a signed token with a "kid" header identifying the signing key, so that the recipient can pick the
+	 * right key to verify it with (e.g. using a {@link SignatureVerifierRegistry}).
+	 *
+	 * @param content the claims
+	 * @param signer the signer
+	 * @param keyId the id of the signing key (may be null)
+	 */
+	public static Jwt encode(CharSequence content, Signer signer, String keyId) {
+		JwtHeader header = JwtHeaderHelper.create(signer, keyId);
 		byte[] claims = utf8Encode(content);
-		byte[] crypto = signer.sign(concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims)));
-		return new JwtImpl(header, claims, crypto);
+		byte[] headerBytes = header.bytes();
+		int firstPeriod = b64UrlEncodedLength(headerBytes.length);
+		int lastPeriod = firstPeriod + 1 + b64UrlEncodedLength(claims.length);
+
+		// Encode each segment straight into place rather than concatenating encoded copies
+		byte[] signingInput = new byte[lastPeriod];
+		b64UrlEncode(headerBytes, 0, headerBytes.length, signingInput, 0);
+		signingInput[firstPeriod] = PERIOD[0];
+		b64UrlEncode(claims, 0, claims.length, signingInput, firstPeriod + 1);
+
+		byte[] crypto = signer.sign(signingInput);
+		byte[] token = new byte[lastPeriod + 1 + b64UrlEncodedLength(crypto.length)];
+		System.arraycopy(signingInput, 0, token, 0, lastPeriod);
+		token[lastPeriod] = PERIOD[0];
+		b64UrlEncode(crypto, 0, crypto.length, token, lastPeriod + 1);
+
+		return new JwtImpl(header, token, firstPeriod, lastPeriod, signingInput, claims, crypto);
+	}
+
+	private static int indexOf(byte[] bytes, int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(byte[] bytes, int start, int end, byte b) {
+		for (int i = end - 1; i >= start; i--) {
+			if (bytes[i] == b) {
+				return i;
+			}
+		}
+		return -1;
 	}
 }
 
@@ -98,9 +193,14 @@ class JwtHeaderHelper {
 		return new JwtHeader(bytes, parseParams(bytes));
 	}
 
+	static JwtHeader create(byte[] token, int off, int len) {
+		byte[] bytes = b64UrlDecode(token, off, len);
+		return new JwtHeader(bytes, parseParams(bytes));
+	}
+
 
-	static JwtHeader create(Signer signer) {
-		HeaderParameters p = new HeaderParameters(sigAlg(signer.algorithm()), null, null);
+	static JwtHeader create(Signer signer, String kid) {
+		HeaderParameters p = new HeaderParameters(sigAlg(signer.algorithm()), null, null, kid);
 		return new JwtHeader(serializeParams(p), p);
 	}
 
@@ -113,7 +213,7 @@ class JwtHeaderHelper {
 		JsonParser jp = null;
 		try {
 			jp = f.createJsonParser(header);
-			String alg = null, enc = null, iv = null;
+			String alg = null, enc = null, iv = null, kid = null;
 			jp.nextToken();
 			while (jp.nextToken() != JsonToken.END_OBJECT) {
 				String fieldname = jp.getCurrentName();
@@ -132,11 +232,16 @@ class JwtHeaderHelper {
 						throw new IllegalArgumentException("Duplicate 'enc' field");
 					}
 					enc = value;
-				} if ("iv".equals(fieldname)) {
+				} else if ("iv".equals(fieldname)) {
 					if (iv != null) {
 						throw new IllegalArgumentException("Duplicate 'iv' field");
 					}
-					iv = jp.nextToken().asString();
+					iv = value;
+				} else if ("kid".equals(fieldname)) {
+					if (kid != null) {
+						throw new IllegalArgumentException("Duplicate 'kid' field");
+					}
+					kid = value;
 				} else if ("typ".equals(fieldname)) {
 					if (!"JWT".equalsIgnoreCase(value)) {
 						throw new IllegalArgumentException("typ is not \"JWT\"");
@@ -144,7 +249,7 @@ class JwtHeaderHelper {
 				}
 			}
 
-			return new HeaderParameters(alg, enc, iv);
+			return new HeaderParameters(alg, enc, iv, kid);
 		} catch (IOException io) {
 			throw new RuntimeException(io);
 		} finally {
@@ -171,6 +276,9 @@ class JwtHeaderHelper {
 			if (params.iv != null) {
 				g.writeStringField("iv", params.iv);
 			}
+			if (params.kid != null) {
+				g.writeStringField("kid", params.kid);
+			}
 			g.writeEndObject();
 			g.flush();
 
@@ -221,51 +329,158 @@ class HeaderParameters {
 	final String alg;
 	final String enc;
 	final String iv;
+	final String kid;
 
 	HeaderParameters(String alg) {
 		this(alg, null, null);
 	}
 
 	HeaderParameters(String alg, String enc, String iv) {
+		this(alg, enc, iv, null);
+	}
+
+	HeaderParameters(String alg, String enc, String iv, String kid) {
 		if (alg == null) {
 			throw new IllegalArgumentException("alg is required");
 		}
 		this.alg = alg;
 		this.enc = enc;
 		this.iv = iv;
+		this.kid = kid;
 	}
 
 }
 
 class JwtImpl implements Jwt {
 	private final JwtHeader header;
-	private final byte[] content;
-	private final byte[] crypto;
-	private String claims;
+	// The compact serialization: the signing input up to the last period, then the encoded crypto segment. The
+	// periods and the length are relative to the start of the token.
+	private final byte[] token;
+	private final int start;
+	private final int firstPeriod;
+	private final int lastPeriod;
+	private final int length;
+	// True if nobody else has a reference to the array, so it can be read at any time
+	private final boolean owned;
+	// The signing input on its own, as the verifiers need it. For an array shared with the caller this is the private
+	// copy that the signature was verified over, and from then on the token is read from it (and the copy of the
+	// encoded crypto segment) rather than from the array we were given.
+	private volatile byte[] signingInput;
+	private volatile byte[] encodedCrypto;
+	// Decoded lazily (racing threads just compute the same value), so that a token that is only verified never has
+	// its claims decoded
+	private volatile byte[] content;
+	private volatile byte[] crypto;
+	private volatile String claims;
+	private volatile JwtClaims claimSet;
+	private volatile String encoded;
 
 	/**
 	 * @param header the header, containing the JWS/JWE algorithm information.
-	 * @param content the base64-decoded "claims" segment (may be encrypted, depending on header information).
-	 * @param crypto the base64-decoded "crypto" segment.
+	 * @param token an array containing the encoded token (not copied)
+	 * @param start the index of the start of the token in the array
+	 * @param firstPeriod the index of the period after the header segment
+	 * @param lastPeriod the index of the period before the crypto segment
+	 * @param end the index of the end of the token in the array
+	 * @param encoded the encoded token as a String if it is already known (otherwise null)
+	 * @param owned true if nobody else has a reference to the array (so it does not need to be copied)
 	 */
-	JwtImpl(JwtHeader header, byte[] content, byte[] crypto) {
+	JwtImpl(JwtHeader header, byte[] token, int start, int firstPeriod, int lastPeriod, int end, String encoded,
+			boolean owned) {
 		this.header = header;
+		this.token = token;
+		this.start = start;
+		this.firstPeriod = firstPeriod - start;
+		this.lastPeriod = lastPeriod - start;
+		this.length = end - start;
+		this.encoded = encoded;
+		this.owned = owned;
+	}
+
+	/**
+	 * @param header the header, containing the JWS/JWE algorithm information.
+	 * @param token the encoded token
+	 * @param firstPeriod the index of the period after the header segment
+	 * @param lastPeriod the index of the period before the crypto segment
+	 * @param signingInput the token up to the last period
+	 * @param content the "claims" segment (may be encrypted, depending on header information).
+	 * @param crypto the "crypto" segment.
+	 */
+	JwtImpl(JwtHeader header, byte[] token, int firstPeriod, int lastPeriod, byte[] signingInput, byte[] content,
+			byte[] crypto) {
+		this(header, token, 0, firstPeriod, lastPeriod, token.length, null, true);
+		this.signingInput = signingInput;
 		this.content = content;
 		this.crypto = crypto;
-		claims = utf8Decode(content);
+	}
+
+	JwtHeader header() {
+		return header;
 	}
 
 	/**
-	 * Validates a signature contained in the 'crypto' segment.
+	 * Validates a signature contained in the 'crypto' segment. Unless the token owns its bytes already, the signature
+	 * is verified over a private copy, and once it has been verified everything is read from that copy.
 	 *
 	 * @param verifier the signature verifier
 	 */
 	public void verifySignature(SignatureVerifier verifier) {
-		verifier.verify(signingInput(), crypto);
- 	}
+		byte[] input = signingInput;
+		if (input != null) {
+			// Owned or already verified, either way nothing needs copying
+			verifier.verify(input, crypto());
+			return;
+		}
+		input = copy(token, start, start + lastPeriod);
+		if (owned) {
+			verifier.verify(input, crypto());
+			signingInput = input;
+			return;
+		}
+		byte[] cryptoSegment = copy(token, start + lastPeriod + 1, start + length);
+		byte[] crypto = b64UrlDecode(cryptoSegment, 0, cryptoSegment.length);
+		verifier.verify(input, crypto);
+		// Forget anything decoded from the caller's array before it was verified, the claims are decoded from the copy
+		this.content = null;
+		this.crypto = crypto;
+		this.claims = null;
+		this.claimSet = null;
+		this.encoded = null;
+		this.encodedCrypto = cryptoSegment;
+		this.signingInput = input;
+	}
+
+	private byte[] content() {
+		byte[] result = content;
+		if (result == null) {
+			result = decode(firstPeriod + 1, lastPeriod);
+			content = result;
+		}
+		return result;
+	}
 
-	private byte[] signingInput() {
-		return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD, b64UrlEncode(content));
+	private byte[] crypto() {
+		byte[] result = crypto;
+		if (result == null) {
+			result = decode(lastPeriod + 1, length);
+			crypto = result;
+		}
+		return result;
+	}
+
+	// Only used for the crypto segment before a shared array has been verified, after that it is already decoded
+	private byte[] decode(int from, int to) {
+		byte[] input = signingInput;
+		if (!owned && input != null) {
+			return b64UrlDecode(input, from, to - from);
+		}
+		return b64UrlDecode(token, start + from, to - from);
+	}
+
+	private static byte[] copy(byte[] bytes, int from, int to) {
+		byte[] result = new byte[to - from];
+		System.arraycopy(bytes, from, result, 0, result.length);
+		return result;
 	}
 
   /**
@@ -274,19 +489,47 @@ class JwtImpl implements Jwt {
    * @return the encoded header, claims and crypto segments concatenated with "." characters
    */
 	public byte[] bytes() {
-		return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD, b64UrlEncode(content), JwtHelper.PERIOD, b64UrlEncode(crypto));
+		byte[] input = signingInput;
+		if (owned || input == null) {
+			return copy(token, start, start + length);
+		}
+		byte[] result = new byte[length];
+		System.arraycopy(input, 0, result, 0, lastPeriod);
+		result[lastPeriod] = JwtHelper.PERIOD[0];
+		System.arraycopy(encodedCrypto, 0, result, lastPeriod + 1, length - lastPeriod - 1);
+		return result;
 	}
 
 	public String getClaims() {
-		return utf8Decode(content);
+		String result = claims;
+		if (result == null) {
+			result = utf8Decode(content());
+			claims = result;
+		}
+		return result;
+	}
+
+	public JwtClaims getClaimSet() {
+		JwtClaims result = claimSet;
+		if (result == null) {
+			result = new JwtClaims(content());
+			claimSet = result;
+		}
+		return result;
 	}
 
 	public String getEncoded() {
-		return utf8Decode(bytes());
+		String result = encoded;
+		if (result == null) {
+			result = owned || signingInput == null ? utf8Decode(ByteBuffer.wrap(token, start, length))
+					: utf8Decode(bytes());
+			encoded = result;
+		}
+		return result;
 	}
 
 	@Override
 	public String toString() {
-		return header + " " + claims + " ["+ crypto.length + " crypto bytes]";
+		return header + " " + getClaims() + " ["+ crypto().length + " crypto bytes]";
 	}
 }
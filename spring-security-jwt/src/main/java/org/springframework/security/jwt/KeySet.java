@@ -0,0 +1,82 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import static org.springframework.security.jwt.JwtAlgorithms.sigAlg;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+/**
+ * An immutable set of verification keys, indexed by key id ("kid") and by JWS algorithm, so that the key for a token
+ * can be found with a single lookup. A token without a key id is verified with the only key for its algorithm, if
+ * there is exactly one.
+ *
+ * @see SignatureVerifierRegistry
+ */
+public final class KeySet {
+	private final Map<String, SignatureVerifier> byKeyId;
+	private final Map<String, String> algorithms = new HashMap<String, String>();
+	private final Map<String, SignatureVerifier> byAlgorithm = new HashMap<String, SignatureVerifier>();
+
+	/**
+	 * @param verifiers the verifiers keyed by key id
+	 * @throws IllegalArgumentException if a verifier uses an algorithm that cannot be used for JWTs
+	 */
+	public KeySet(Map<String, ? extends SignatureVerifier> verifiers) {
+		byKeyId = Collections.unmodifiableMap(new LinkedHashMap<String, SignatureVerifier>(verifiers));
+		Set<String> ambiguous = new HashSet<String>();
+
+		for (Map.Entry<String, SignatureVerifier> entry : byKeyId.entrySet()) {
+			String alg = sigAlg(entry.getValue().algorithm());
+			algorithms.put(entry.getKey(), alg);
+			if (byAlgorithm.put(alg, entry.getValue()) != null) {
+				ambiguous.add(alg);
+			}
+		}
+		byAlgorithm.keySet().removeAll(ambiguous);
+	}
+
+	/**
+	 * @param kid the key id from the token header (may be null)
+	 * @param alg the JWS algorithm from the token header
+	 * @return the verifier for the key, or null if there is no key with that id and algorithm
+	 */
+	public SignatureVerifier getVerifier(String kid, String alg) {
+		if (kid == null) {
+			return byAlgorithm.get(alg);
+		}
+		SignatureVerifier verifier = byKeyId.get(kid);
+		// Never verify with a key of a different type from the one the token claims to be signed with
+		return verifier != null && alg.equals(algorithms.get(kid)) ? verifier : null;
+	}
+
+	public Set<String> getKeyIds() {
+		return byKeyId.keySet();
+	}
+
+	public int size() {
+		return byKeyId.size();
+	}
+
+	@Override
+	public String toString() {
+		return "KeySet " + algorithms;
+	}
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import java.io.IOException;
+
+/**
+ * Strategy for loading the current set of verification keys, e.g. from a file, the classpath or a key management
+ * service. Called by a {@link SignatureVerifierRegistry} whenever it is refreshed.
+ *
+ * @see JwkSetLoader
+ */
+public interface KeySetLoader {
+	/**
+	 * @return the keys that should be trusted from now on
+	 * @throws IOException if the keys cannot be read
+	 */
+	KeySet load() throws IOException;
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+/**
+ * Chooses the key to verify a token with from its "kid" and "alg" headers, so that keys can be rotated without
+ * having to try each of them in turn. See {@link JwtHelper#decodeAndVerify(String, SignatureVerifierRegistry)}.
+ * <p>
+ * The keys are held as an immutable {@link KeySet} which is replaced in one go when the keys change (either directly,
+ * or by calling {@link #refresh()} to reload them with a {@link KeySetLoader}). Verification only ever reads the
+ * current snapshot, so it never waits for a reload, and if a reload fails the previous keys stay in use. Calling
+ * {@link #refresh()} periodically (or when a token arrives with an unknown key id) is up to the application.
+ */
+public class SignatureVerifierRegistry {
+	private final AtomicReference<KeySet> keys = new AtomicReference<KeySet>();
+	private final KeySetLoader loader;
+
+	/**
+	 * Create a registry with keys that are managed in-process with {@link #setKeySet(KeySet)}.
+	 */
+	public SignatureVerifierRegistry(KeySet keys) {
+		this.loader = null;
+		setKeySet(keys);
+	}
+
+	/**
+	 * Create a registry that loads its keys (straight away, and again on each {@link #refresh()}) with the loader
+	 * provided.
+	 *
+	 * @throws IOException if the initial keys cannot be loaded
+	 */
+	public SignatureVerifierRegistry(KeySetLoader loader) throws IOException {
+		this.loader = loader;
+		setKeySet(loader.load());
+	}
+
+	/**
+	 * Replace the current keys.
+	 */
+	public void setKeySet(KeySet keySet) {
+		if (keySet == null) {
+			throw new IllegalArgumentException("Key set cannot be null");
+		}
+		keys.set(keySet);
+	}
+
+	public KeySet getKeySet() {
+		return keys.get();
+	}
+
+	/**
+	 * Reload the keys with the loader and swap them in. Tokens verified while this is happening use the old keys.
+	 *
+	 * @throws IOException if the keys cannot be loaded, in which case the old keys are kept
+	 */
+	public void refresh() throws IOException {
+		if (loader == null) {
+			throw new IllegalStateException("Keys are managed in-process, there is nothing to reload them from");
+		}
+		setKeySet(loader.load());
+	}
+
+	/**
+	 * @param kid the key id from the token header (may be null)
+	 * @param alg the JWS algorithm from the token header
+	 * @return the verifier to use
+	 * @throws InvalidSignatureException if there is no matching key
+	 */
+	public SignatureVerifier getVerifier(String kid, String alg) {
+		SignatureVerifier verifier = keys.get().getVerifier(kid, alg);
+
+		if (verifier == null) {
+			throw new InvalidSignatureException("No " + alg + " key" + (kid == null ? "" : " with id '" + kid + "'")
+					+ " is trusted");
+		}
+
+		return verifier;
+	}
+}
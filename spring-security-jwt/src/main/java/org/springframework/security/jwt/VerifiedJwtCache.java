@@ -0,0 +1,252 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+/**
+ * Remembers tokens that have already been verified, so that a token presented many times over its lifetime (e.g. a
+ * bearer token) only pays for the signature check once. Tokens are looked up by a SHA-256 digest of the whole encoded
+ * token, compared in constant time, and a hit only counts if the token was verified with the same verifier (so a
+ * key that is rotated out of a {@link SignatureVerifierRegistry} stops being trusted straight away).
+ * <p>
+ * An entry is just the digest, the verifier and the expiry: on a hit the token is decoded again, which is cheap
+ * compared to checking the signature, so the cache does not hold on to the token or anything decoded from it.
+ * <p>
+ * Entries live for at most {@link #setTimeToLiveSeconds(int) timeToLiveSeconds} and never beyond the "exp" claim of
+ * the token. Tokens that have already expired, and tokens that fail verification, are not cached. The cache holds at
+ * most {@link #setMaxSize(int) maxSize} entries. When it is full, expired entries are purged and if that is not enough
+ * an arbitrary tenth of the remaining entries are evicted.
+ */
+public class VerifiedJwtCache {
+	private final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<Key, Entry>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private volatile int maxSize = 10000;
+	private volatile int timeToLiveSeconds = 300;
+
+	/**
+	 * The maximum number of tokens to remember (default 10000).
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Maximum cache size must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The maximum time in seconds to remember a token for (default 300). Tokens with an earlier "exp" are forgotten
+	 * when they expire.
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * Equivalent to {@link JwtHelper#decodeAndVerify(String, SignatureVerifier)}, but only verifies a token the first
+	 * time it is seen.
+	 */
+	public Jwt decodeAndVerify(String token, SignatureVerifier verifier) {
+		long now = System.currentTimeMillis();
+		Key key = new Key(token);
+		Entry entry = cache.get(key);
+
+		if (entry != null && entry.verifier == verifier && !entry.isExpired(now)) {
+			hits.incrementAndGet();
+			return JwtHelper.decode(token);
+		}
+
+		misses.incrementAndGet();
+		Jwt jwt = JwtHelper.decodeAndVerify(token, verifier);
+		put(key, new Entry(verifier, expiry(jwt, now)), now);
+
+		return jwt;
+	}
+
+	/**
+	 * Equivalent to {@link JwtHelper#decodeAndVerify(String, SignatureVerifierRegistry)}, but only verifies a token
+	 * the first time it is seen (as long as the key it was verified with is still the one the registry chooses).
+	 */
+	public Jwt decodeAndVerify(String token, SignatureVerifierRegistry verifiers) {
+		long now = System.currentTimeMillis();
+		Key key = new Key(token);
+		Entry entry = cache.get(key);
+		JwtImpl jwt = (JwtImpl) JwtHelper.decode(token);
+		HeaderParameters parameters = jwt.header().parameters;
+
+		if (entry != null && !entry.isExpired(now)
+				&& verifiers.getKeySet().getVerifier(parameters.kid, parameters.alg) == entry.verifier) {
+			hits.incrementAndGet();
+			return jwt;
+		}
+
+		misses.incrementAndGet();
+		SignatureVerifier verifier = verifiers.getVerifier(parameters.kid, parameters.alg);
+		jwt.verifySignature(verifier);
+		put(key, new Entry(verifier, expiry(jwt, now)), now);
+
+		return jwt;
+	}
+
+	/**
+	 * Forget all tokens, e.g. because a key has been found to be compromised.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the number of tokens found in the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of tokens that had to be verified
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the proportion of lookups that were hits (0 if there have been none)
+	 */
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * @return the number of tokens removed to make room for others (not counting those that expired)
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private void put(Key key, Entry entry, long now) {
+		if (entry.expiry <= now) {
+			return;
+		}
+		if (cache.size() >= maxSize) {
+			purge(now);
+		}
+		cache.put(key, entry);
+	}
+
+	private void purge(long now) {
+		for (Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().isExpired(now)) {
+				iterator.remove();
+			}
+		}
+		int excess = cache.size() - maxSize + Math.max(1, maxSize / 10);
+		for (Iterator<Map.Entry<Key, Entry>> iterator = cache.entrySet().iterator(); excess > 0
+				&& iterator.hasNext(); excess--) {
+			iterator.next();
+			iterator.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private long expiry(Jwt jwt, long now) {
+		long expiry = now + timeToLiveSeconds * 1000L;
+		long exp;
+
+		try {
+			exp = jwt.getClaimSet().getExpiresAt();
+		}
+		catch (IllegalArgumentException e) {
+			// Claims we can't read don't have an expiry as far as we're concerned
+			exp = JwtClaims.NONE;
+		}
+
+		if (exp != JwtClaims.NONE) {
+			expiry = Math.min(expiry, exp * 1000L);
+		}
+
+		return expiry;
+	}
+
+	private static class Entry {
+		private final SignatureVerifier verifier;
+		private final long expiry;
+
+		Entry(SignatureVerifier verifier, long expiry) {
+			this.verifier = verifier;
+			this.expiry = expiry;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiry;
+		}
+	}
+
+	/**
+	 * A SHA-256 digest of the encoded token, which is all we need to remember to recognise it again.
+	 */
+	private static class Key {
+		private final byte[] digest;
+		private final int hash;
+
+		Key(String token) {
+			try {
+				digest = MessageDigest.getInstance("SHA-256").digest(utf8Encode(token));
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			// The digest is already uniformly distributed
+			hash = (digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | (digest[3] & 0xff);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			byte[] other = ((Key) obj).digest;
+			if (other.length != digest.length) {
+				return false;
+			}
+			// Constant time, so that timing does not reveal how much of a digest matched
+			int xor = 0;
+			for (int i = 0; i < digest.length; i++) {
+				xor |= digest[i] ^ other[i];
+			}
+			return xor == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
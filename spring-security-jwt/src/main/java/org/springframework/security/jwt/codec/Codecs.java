@@ -49,10 +49,52 @@ public class Codecs {
 		return Base64.urlDecode(bytes);
 	}
 
+	/**
+	 * Decode a URL-safe (unpadded) Base64 segment of a larger array, e.g. one part of a JWT, without copying it
+	 * out first.
+	 */
+	public static byte[] b64UrlDecode(byte[] bytes, int off, int len) {
+		return Base64.urlDecode(bytes, off, len);
+	}
+
 	public static byte[] b64UrlDecode(CharSequence value) {
 		return b64UrlDecode(utf8Encode(value));
 	}
 
+	/**
+	 * The exact length of the URL-safe (unpadded) Base64 encoding of len bytes.
+	 */
+	public static int b64UrlEncodedLength(int len) {
+		return Base64.urlEncodedLength(len);
+	}
+
+	/**
+	 * Encode a range of bytes as URL-safe (unpadded) Base64 directly into a buffer, which must have room for
+	 * {@link #b64UrlEncodedLength(int)} bytes from dstOff.
+	 *
+	 * @return the number of bytes written
+	 */
+	public static int b64UrlEncode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		return Base64.urlEncode(src, off, len, dst, dstOff);
+	}
+
+	/**
+	 * The exact length of the bytes encoded in a range of URL-safe Base64.
+	 */
+	public static int b64UrlDecodedLength(byte[] b64, int off, int len) {
+		return Base64.urlDecodedLength(b64, off, len);
+	}
+
+	/**
+	 * Decode a range of URL-safe Base64 directly into a buffer, which must have room for
+	 * {@link #b64UrlDecodedLength(byte[], int, int)} bytes from dstOff.
+	 *
+	 * @return the number of bytes written
+	 */
+	public static int b64UrlDecode(byte[] b64, int off, int len, byte[] dst, int dstOff) {
+		return Base64.urlDecode(b64, off, len, dst, dstOff);
+	}
+
 
 	/**
 	 * UTF-8 encoding/decoding. Using a charset rather than `String.getBytes` is less forgiving
@@ -109,7 +151,21 @@ public class Codecs {
 
 
 class Base64 {
-	private static byte EQUALS = (byte)'=';
+	private static final byte EQUALS = (byte)'=';
+
+	private static final byte[] URL_ALPHABET;
+
+	private static final byte[] URL_DECODABET = new byte[128];
+
+	static {
+		URL_ALPHABET = Codecs.utf8Encode("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_");
+		for (int i = 0; i < URL_DECODABET.length; i++) {
+			URL_DECODABET[i] = -1;
+		}
+		for (int i = 0; i < URL_ALPHABET.length; i++) {
+			URL_DECODABET[URL_ALPHABET[i]] = (byte) i;
+		}
+	}
 
 	static byte[] encode(byte[] bytes) {
 		return Base64Codec.encode(bytes);
@@ -120,47 +176,122 @@ class Base64 {
 	}
 
 	static byte[] urlEncode(byte[] bytes) {
-		byte[] b64Bytes = Base64Codec.encodeBytesToBytes(bytes, 0, bytes.length, Base64Codec.URL_SAFE);
+		byte[] result = new byte[urlEncodedLength(bytes.length)];
+		urlEncode(bytes, 0, bytes.length, result, 0);
+		return result;
+	}
 
-		int length = b64Bytes.length;
+	/**
+	 * @return the exact number of characters needed to encode len bytes without padding
+	 */
+	static int urlEncodedLength(int len) {
+		int remainder = len % 3;
+		return (len / 3) * 4 + (remainder == 0 ? 0 : remainder + 1);
+	}
 
-		while(b64Bytes[length - 1] == EQUALS) {
-		  length -= 1;
+	/**
+	 * Encode without padding, writing the result into dst.
+	 *
+	 * @return the number of bytes written
+	 */
+	static int urlEncode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		int remainder = len % 3;
+		int end = off + len - remainder;
+		int d = dstOff;
+
+		for (int i = off; i < end; i += 3) {
+			int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+			dst[d++] = URL_ALPHABET[bits >>> 18];
+			dst[d++] = URL_ALPHABET[(bits >>> 12) & 0x3f];
+			dst[d++] = URL_ALPHABET[(bits >>> 6) & 0x3f];
+			dst[d++] = URL_ALPHABET[bits & 0x3f];
 		}
 
-		byte[] result = new byte[length];
-		System.arraycopy(b64Bytes, 0, result, 0, length);
+		if (remainder > 0) {
+			int bits = (src[end] & 0xff) << 16 | (remainder == 2 ? (src[end + 1] & 0xff) << 8 : 0);
+			dst[d++] = URL_ALPHABET[bits >>> 18];
+			dst[d++] = URL_ALPHABET[(bits >>> 12) & 0x3f];
+			if (remainder == 2) {
+				dst[d++] = URL_ALPHABET[(bits >>> 6) & 0x3f];
+			}
+		}
 
-		return result;
+		return d - dstOff;
 	}
 
 	static byte[] urlDecode(byte[] b64) {
-		// Pad with '=' as necessary before feeding to standard decoder
-		byte[] b64Bytes = null;
-
-		int lMod4 = b64.length % 4;
-
-		if (lMod4 == 0) {
-			b64Bytes = b64;
-		} else if (lMod4 == 2) {
-			b64Bytes = pad(b64, 2);
-		} else if (lMod4 == 3) {
-			b64Bytes = pad(b64, 1);
-		} else {
+		return urlDecode(b64, 0, b64.length);
+	}
+
+	static byte[] urlDecode(byte[] b64, int off, int len) {
+		byte[] result = new byte[urlDecodedLength(b64, off, len)];
+		urlDecode(b64, off, len, result, 0);
+		return result;
+	}
+
+	/**
+	 * @return the exact number of bytes the (optionally padded) input decodes to
+	 */
+	static int urlDecodedLength(byte[] b64, int off, int len) {
+		len = unpaddedLength(b64, off, len);
+		int remainder = len % 4;
+		if (remainder == 1) {
 			throw new IllegalArgumentException("Invalid Base64 string");
 		}
+		return (len / 4) * 3 + (remainder == 0 ? 0 : remainder - 1);
+	}
+
+	/**
+	 * Decode unpadded (or padded) input, writing the result into dst.
+	 *
+	 * @return the number of bytes written
+	 */
+	static int urlDecode(byte[] b64, int off, int len, byte[] dst, int dstOff) {
+		len = unpaddedLength(b64, off, len);
+		int remainder = len % 4;
+		if (remainder == 1) {
+			throw new IllegalArgumentException("Invalid Base64 string");
+		}
+		int end = off + len - remainder;
+		int d = dstOff;
+
+		for (int i = off; i < end; i += 4) {
+			int bits = value(b64, i) << 18 | value(b64, i + 1) << 12 | value(b64, i + 2) << 6 | value(b64, i + 3);
+			dst[d++] = (byte) (bits >> 16);
+			dst[d++] = (byte) (bits >> 8);
+			dst[d++] = (byte) bits;
+		}
 
-		return Base64Codec.decode(b64Bytes, 0, b64Bytes.length, Base64Codec.URL_SAFE);
+		if (remainder > 0) {
+			int bits = value(b64, end) << 18 | value(b64, end + 1) << 12 | (remainder == 3 ? value(b64, end + 2) << 6 : 0);
+			dst[d++] = (byte) (bits >> 16);
+			if (remainder == 3) {
+				dst[d++] = (byte) (bits >> 8);
+			}
+		}
+
+		return d - dstOff;
+	}
+
+	private static int unpaddedLength(byte[] b64, int off, int len) {
+		// At most two padding characters
+		if (len > 0 && b64[off + len - 1] == EQUALS) {
+			len--;
+			if (len > 0 && b64[off + len - 1] == EQUALS) {
+				len--;
+			}
+		}
+		return len;
 	}
 
-	private static byte[] pad(byte[] bytes, int n) {
-		int l = bytes.length;
-		byte[] padded = new byte[l + n];
-		System.arraycopy(bytes, 0, padded, 0, l);
-		for (int i = l; i < l + n; i++) {
-			padded[i] = EQUALS;
+	private static int value(byte[] b64, int i) {
+		byte b = b64[i];
+		int value = b < 0 ? -1 : URL_DECODABET[b];
+		if (value < 0) {
+			throw new InvalidBase64CharacterException(String.format(
+					"Bad Base64 input character decimal %d in array position %d", b & 0xff, i));
 		}
-		return padded;
+		return value;
 	}
 }
 
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import static org.springframework.security.jwt.codec.Codecs.b64Decode;
+import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
+
+import java.io.IOException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.ECKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.sec.ECPrivateKey;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+
+/**
+ * Reads elliptic curve keys from PEM data and works out which JWS algorithm goes with them.
+ */
+class EcKeyHelper {
+	private static Pattern PEM_DATA = Pattern.compile("-----BEGIN (.*)-----(.*)-----END (.*)-----", Pattern.DOTALL);
+
+	static KeyPair parseKeyPair(String pemData) {
+		Matcher m = PEM_DATA.matcher(pemData.trim());
+
+		if (!m.matches()) {
+			throw new IllegalArgumentException("String is not PEM encoded data");
+		}
+
+		String type = m.group(1);
+		byte[] content = b64Decode(utf8Encode(m.group(2)));
+
+		try {
+			KeyFactory fact = KeyFactory.getInstance("EC");
+
+			if (type.equals("EC PRIVATE KEY")) {
+				// SEC 1, as written by openssl: re-wrap it as PKCS#8 and X.509 for the key factory
+				ECPrivateKey key = ECPrivateKey.getInstance(ASN1Primitive.fromByteArray(content));
+				if (key.getParameters() == null) {
+					throw new IllegalArgumentException("EC private key does not name its curve");
+				}
+				AlgorithmIdentifier algId = new AlgorithmIdentifier(X9ObjectIdentifiers.id_ecPublicKey,
+						key.getParameters());
+				PublicKey publicKey = null;
+				if (key.getPublicKey() != null) {
+					publicKey = fact.generatePublic(new X509EncodedKeySpec(new SubjectPublicKeyInfo(algId, key
+							.getPublicKey().getBytes()).getEncoded()));
+				}
+
+				return new KeyPair(publicKey, fact.generatePrivate(new PKCS8EncodedKeySpec(new PrivateKeyInfo(algId,
+						key).getEncoded())));
+			}
+			else if (type.equals("PRIVATE KEY")) {
+				// PKCS#8
+				return new KeyPair(null, fact.generatePrivate(new PKCS8EncodedKeySpec(content)));
+			}
+			else if (type.equals("PUBLIC KEY")) {
+				// X.509 SubjectPublicKeyInfo
+				return new KeyPair(fact.generatePublic(new X509EncodedKeySpec(content)), null);
+			}
+
+			throw new IllegalArgumentException("Unsupported PEM data type: " + type);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		catch (InvalidKeySpecException e) {
+			throw new IllegalArgumentException("Not an EC key", e);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the Java name of the ECDSA signature algorithm matching the curve of the key
+	 */
+	static String algorithm(ECKey key) {
+		int fieldSize = key.getParams().getCurve().getField().getFieldSize();
+
+		if (fieldSize == 256) {
+			return "SHA256withECDSA";
+		}
+		if (fieldSize == 384) {
+			return "SHA384withECDSA";
+		}
+
+		throw new IllegalArgumentException("Unsupported elliptic curve with field size " + fieldSize);
+	}
+
+	/**
+	 * @return the length in bytes of each of R and S in a JWS signature made with the key
+	 */
+	static int signatureComponentLength(ECKey key) {
+		return (key.getParams().getOrder().bitLength() + 7) / 8;
+	}
+}
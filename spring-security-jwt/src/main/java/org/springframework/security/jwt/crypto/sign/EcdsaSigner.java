@@ -0,0 +1,127 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+
+/**
+ * A signer for signing using an elliptic curve private key (ES256 for P-256 keys, ES384 for P-384).
+ *
+ * The signature is in the form JWS requires: the R and S values concatenated, each padded to the size of the curve,
+ * rather than the DER encoding produced by the JCA. The key can be supplied directly or as PEM data (SEC 1 as written
+ * by <tt>openssl ecparam -genkey</tt>, or PKCS#8).
+ */
+public class EcdsaSigner implements Signer {
+	private final ECPrivateKey key;
+	private final String algorithm;
+	private final int componentLength;
+	private final EnginePool<Signature> signatures = new EnginePool<Signature>() {
+		@Override
+		protected Signature create() throws GeneralSecurityException {
+			Signature signature = Signature.getInstance(algorithm);
+			signature.initSign(key);
+			return signature;
+		}
+	};
+
+	public EcdsaSigner(ECPrivateKey key) {
+		this(key, EcKeyHelper.algorithm(key));
+	}
+
+	public EcdsaSigner(ECPrivateKey key, String algorithm) {
+		this.key = key;
+		this.algorithm = algorithm;
+		this.componentLength = EcKeyHelper.signatureComponentLength(key);
+	}
+
+	public EcdsaSigner(String pemKey) {
+		this(loadPrivateKey(pemKey));
+	}
+
+	public byte[] sign(byte[] bytes) {
+		try {
+			Signature signature = signatures.take();
+			signature.update(bytes);
+			byte[] der = signature.sign();
+			signatures.release(signature);
+			return derToJose(der, componentLength);
+		}
+		catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public String algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Convert a DER encoded ECDSA signature (a sequence of two integers) to the fixed length R || S form.
+	 */
+	static byte[] derToJose(byte[] der, int componentLength) {
+		int offset = 0;
+
+		if (der.length < 8 || der[offset++] != 0x30) {
+			throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+		}
+		offset += lengthOfLength(der[offset]);
+
+		byte[] result = new byte[2 * componentLength];
+
+		for (int i = 0; i < 2; i++) {
+			if (offset >= der.length || der[offset++] != 0x02) {
+				throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+			}
+			int length = der[offset++] & 0xff;
+			if (length == 0 || offset + length > der.length) {
+				throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+			}
+			byte[] value = new BigInteger(1, copy(der, offset, length)).toByteArray();
+			offset += length;
+			// toByteArray() adds a leading zero if the top bit is set, which we don't want
+			int start = value[0] == 0 ? 1 : 0;
+			int valueLength = value.length - start;
+			if (valueLength > componentLength) {
+				throw new IllegalArgumentException("ECDSA signature component is too long for the curve");
+			}
+			System.arraycopy(value, start, result, (i + 1) * componentLength - valueLength, valueLength);
+		}
+
+		return result;
+	}
+
+	private static int lengthOfLength(byte first) {
+		// Short form is the length itself, long form (only 0x81 is possible here) has one more byte
+		return (first & 0x80) == 0 ? 1 : 1 + (first & 0x7f);
+	}
+
+	private static byte[] copy(byte[] bytes, int offset, int length) {
+		byte[] result = new byte[length];
+		System.arraycopy(bytes, offset, result, 0, length);
+		return result;
+	}
+
+	private static ECPrivateKey loadPrivateKey(String key) {
+		KeyPair kp = EcKeyHelper.parseKeyPair(key);
+
+		if (kp.getPrivate() == null) {
+			throw new IllegalArgumentException("Not a private key");
+		}
+
+		return (ECPrivateKey) kp.getPrivate();
+	}
+}
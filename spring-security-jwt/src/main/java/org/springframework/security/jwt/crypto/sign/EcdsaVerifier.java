@@ -0,0 +1,122 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+
+/**
+ * Verifies signatures made with an elliptic curve private key (ES256 for P-256 keys, ES384 for P-384), in the JWS R
+ * || S form produced by {@link EcdsaSigner}.
+ *
+ * The key can be supplied directly or as PEM data (an X.509 public key, or a SEC 1 private key that includes the
+ * public key).
+ */
+public class EcdsaVerifier implements SignatureVerifier {
+	private final ECPublicKey key;
+	private final String algorithm;
+	private final int componentLength;
+	private final EnginePool<Signature> signatures = new EnginePool<Signature>() {
+		@Override
+		protected Signature create() throws GeneralSecurityException {
+			Signature signature = Signature.getInstance(algorithm);
+			signature.initVerify(key);
+			return signature;
+		}
+	};
+
+	public EcdsaVerifier(ECPublicKey key) {
+		this(key, EcKeyHelper.algorithm(key));
+	}
+
+	public EcdsaVerifier(ECPublicKey key, String algorithm) {
+		this.key = key;
+		this.algorithm = algorithm;
+		this.componentLength = EcKeyHelper.signatureComponentLength(key);
+	}
+
+	public EcdsaVerifier(String pemKey) {
+		this(loadPublicKey(pemKey));
+	}
+
+	public void verify(byte[] content, byte[] sig) {
+		if (sig.length != 2 * componentLength) {
+			throw new InvalidSignatureException("ECDSA signature has the wrong length for the curve");
+		}
+
+		byte[] der = joseToDer(sig);
+		boolean verified;
+		try {
+			Signature signature = signatures.take();
+			signature.update(content);
+			verified = signature.verify(der);
+			signatures.release(signature);
+		}
+		catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+
+		if (!verified) {
+			throw new InvalidSignatureException("ECDSA Signature did not match content");
+		}
+	}
+
+	public String algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Convert a fixed length R || S signature to the DER encoding (a sequence of two integers) expected by the JCA.
+	 */
+	static byte[] joseToDer(byte[] jose) {
+		int componentLength = jose.length / 2;
+		byte[] r = new BigInteger(1, copy(jose, 0, componentLength)).toByteArray();
+		byte[] s = new BigInteger(1, copy(jose, componentLength, componentLength)).toByteArray();
+		int length = 2 + r.length + 2 + s.length;
+
+		ByteArrayOutputStream der = new ByteArrayOutputStream(length + 3);
+		der.write(0x30);
+		if (length > 0x7f) {
+			der.write(0x81);
+		}
+		der.write(length);
+		der.write(0x02);
+		der.write(r.length);
+		der.write(r, 0, r.length);
+		der.write(0x02);
+		der.write(s.length);
+		der.write(s, 0, s.length);
+
+		return der.toByteArray();
+	}
+
+	private static byte[] copy(byte[] bytes, int offset, int length) {
+		byte[] result = new byte[length];
+		System.arraycopy(bytes, offset, result, 0, length);
+		return result;
+	}
+
+	private static ECPublicKey loadPublicKey(String key) {
+		KeyPair kp = EcKeyHelper.parseKeyPair(key);
+
+		if (kp.getPublic() == null) {
+			throw new IllegalArgumentException("Key data does not contain a public key");
+		}
+
+		return (ECPublicKey) kp.getPublic();
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of crypto engines (a <code>Signature</code> or <code>Mac</code>) initialized with one key.
+ * <p>
+ * Looking up and initializing an engine costs more than signing or verifying a small token, while completing a
+ * signature or verification leaves the engine ready for the next one. So the signers and verifiers each keep a few
+ * engines: one is taken for each use and only given back once it has completed, so an engine that failed half way is
+ * never reused. The pool belongs to the signer or verifier and goes away with it.
+ */
+abstract class EnginePool<T> {
+
+	private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+	private final BlockingQueue<T> engines = new ArrayBlockingQueue<T>(POOL_SIZE);
+
+	/**
+	 * @return an engine from the pool, or a new one if the pool is empty
+	 */
+	T take() throws GeneralSecurityException {
+		T engine = engines.poll();
+		return engine != null ? engine : create();
+	}
+
+	/**
+	 * Return an engine that has completed its work, unless the pool is already full.
+	 */
+	void release(T engine) {
+		engines.offer(engine);
+	}
+
+	/**
+	 * @return a new engine initialized with the key
+	 */
+	protected abstract T create() throws GeneralSecurityException;
+
+}
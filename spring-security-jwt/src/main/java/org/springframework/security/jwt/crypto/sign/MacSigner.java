@@ -25,6 +25,14 @@ public class MacSigner implements SignerVerifier {
 
 	private final String algorithm;
 	private final SecretKey key;
+	private final EnginePool<Mac> macs = new EnginePool<Mac>() {
+		@Override
+		protected Mac create() throws GeneralSecurityException {
+			Mac mac = Mac.getInstance(algorithm);
+			mac.init(key);
+			return mac;
+		}
+	};
 
 	public MacSigner(byte[] key) {
 		this(new SecretKeySpec(key, DEFAULT_ALGORITHM));
@@ -47,9 +55,10 @@ public class MacSigner implements SignerVerifier {
 
 	public byte[] sign(byte[] bytes) {
 		try {
-			Mac mac = Mac.getInstance(algorithm);
-			mac.init(key);
-			return mac.doFinal(bytes);
+			Mac mac = macs.take();
+			byte[] signed = mac.doFinal(bytes);
+			macs.release(mac);
+			return signed;
 		}
 		catch (GeneralSecurityException e) {
 			throw new RuntimeException(e);
@@ -21,10 +21,16 @@ import java.math.BigInteger;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -39,6 +45,8 @@ import org.bouncycastle.asn1.ASN1Sequence;
  * @author Luke Taylor
  */
 class RsaKeyHelper {
+	private static final BigInteger ONE = BigInteger.ONE;
+	private static final int MAX_FACTORING_ATTEMPTS = 100;
 	private static String BEGIN = "-----BEGIN";
 	private static Pattern PEM_DATA = Pattern.compile("-----BEGIN (.*)-----(.*)-----END (.*)-----", Pattern.DOTALL);
 
@@ -50,29 +58,51 @@ class RsaKeyHelper {
 		}
 
 		String type = m.group(1);
-
-		if (!type.equals("RSA PRIVATE KEY")) {
-			throw new IllegalArgumentException("Only private key data is currently supported");
-		}
-
-		String content = m.group(2);
+		byte[] content = b64Decode(utf8Encode(m.group(2)));
 
 		try {
-			ASN1Sequence seq = ASN1Sequence.getInstance(ASN1Primitive.fromByteArray(b64Decode(utf8Encode(content))));
-			if (seq.size() != 9) {
-				throw new IllegalArgumentException("Invalid RSA Key ASN1 sequence.");
+			KeyFactory fact = KeyFactory.getInstance("RSA");
+
+			if (type.equals("RSA PRIVATE KEY")) {
+				// PKCS#1
+				ASN1Sequence seq = ASN1Sequence.getInstance(ASN1Primitive.fromByteArray(content));
+				if (seq.size() != 9) {
+					throw new IllegalArgumentException("Invalid RSA Key ASN1 sequence.");
+				}
+				org.bouncycastle.asn1.pkcs.RSAPrivateKey key = org.bouncycastle.asn1.pkcs.RSAPrivateKey.getInstance(seq);
+				RSAPublicKeySpec pubSpec = new RSAPublicKeySpec(key.getModulus(), key.getPublicExponent());
+				RSAPrivateCrtKeySpec privSpec = new RSAPrivateCrtKeySpec(key.getModulus(), key.getPublicExponent(),
+						key.getPrivateExponent(), key.getPrime1(), key.getPrime2(), key.getExponent1(), key.getExponent2(),
+						key.getCoefficient());
+
+				return new KeyPair(
+						fact.generatePublic(pubSpec),
+						fact.generatePrivate(privSpec));
 			}
-			org.bouncycastle.asn1.pkcs.RSAPrivateKey key = org.bouncycastle.asn1.pkcs.RSAPrivateKey.getInstance(seq);
-			RSAPublicKeySpec pubSpec = new RSAPublicKeySpec(key.getModulus(), key.getPublicExponent());
-			RSAPrivateCrtKeySpec privSpec = new RSAPrivateCrtKeySpec(key.getModulus(), key.getPublicExponent(),
-					key.getPrivateExponent(), key.getPrime1(), key.getPrime2(), key.getExponent1(), key.getExponent2(),
-					key.getCoefficient());
+			else if (type.equals("PRIVATE KEY")) {
+				// PKCS#8, which the RSA key factory always turns into a CRT key
+				PrivateKey privateKey = fact.generatePrivate(new PKCS8EncodedKeySpec(content));
+				if (!(privateKey instanceof RSAPrivateCrtKey)) {
+					throw new IllegalArgumentException("Private key does not contain the RSA CRT parameters");
+				}
+				RSAPrivateCrtKey crtKey = (RSAPrivateCrtKey) privateKey;
+				RSAPublicKeySpec pubSpec = new RSAPublicKeySpec(crtKey.getModulus(), crtKey.getPublicExponent());
+
+				return new KeyPair(fact.generatePublic(pubSpec), crtKey);
+			}
+			else if (type.equals("PUBLIC KEY")) {
+				// X.509 SubjectPublicKeyInfo
+				return new KeyPair(fact.generatePublic(new X509EncodedKeySpec(content)), null);
+			}
+			else if (type.equals("RSA PUBLIC KEY")) {
+				// PKCS#1
+				org.bouncycastle.asn1.pkcs.RSAPublicKey key = org.bouncycastle.asn1.pkcs.RSAPublicKey
+						.getInstance(ASN1Primitive.fromByteArray(content));
 
-			KeyFactory fact = KeyFactory.getInstance("RSA");
+				return new KeyPair(createPublicKey(key.getModulus(), key.getPublicExponent()), null);
+			}
 
-			return new KeyPair(
-					fact.generatePublic(pubSpec),
-					fact.generatePrivate(privSpec));
+			throw new IllegalArgumentException("Unsupported PEM data type: " + type);
 		}
 		catch (IOException e) {
 			throw new RuntimeException(e);
@@ -134,6 +164,89 @@ class RsaKeyHelper {
 		}
 	}
 
+	/**
+	 * Create a private key from its modulus and exponents. If the prime factors of the modulus can be recovered
+	 * from them (which is always the case if the exponents really are a key pair) the result is an
+	 * {@link RSAPrivateCrtKey}, which makes signing several times faster. Otherwise (e.g. when the caller had to guess
+	 * the public exponent and guessed wrong) it is a plain private key, which signs correctly but more slowly.
+	 */
+	static RSAPrivateKey createPrivateKey(BigInteger n, BigInteger e, BigInteger d) {
+		try {
+			KeyFactory fact = KeyFactory.getInstance("RSA");
+			BigInteger p = findPrimeFactor(n, e, d);
+
+			if (p == null) {
+				return (RSAPrivateKey) fact.generatePrivate(new RSAPrivateKeySpec(n, d));
+			}
+
+			BigInteger q = n.divide(p);
+			if (p.compareTo(q) < 0) {
+				BigInteger tmp = p;
+				p = q;
+				q = tmp;
+			}
+			BigInteger dP = d.mod(p.subtract(ONE));
+			BigInteger dQ = d.mod(q.subtract(ONE));
+			BigInteger qInv = q.modInverse(p);
+
+			return (RSAPrivateKey) fact.generatePrivate(new RSAPrivateCrtKeySpec(n, e, d, p, q, dP, dQ, qInv));
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Factor the modulus given both exponents, with the usual probabilistic method: e * d - 1 is a multiple of
+	 * lambda(n), so for most g some square root of 1 in the sequence g^t, g^2t, ... (mod n) is non-trivial and shares a
+	 * factor with n.
+	 *
+	 * @return a prime factor of n, or null if none was found (e.g. because e and d do not belong together)
+	 */
+	private static BigInteger findPrimeFactor(BigInteger n, BigInteger e, BigInteger d) {
+		BigInteger k = e.multiply(d).subtract(ONE);
+
+		if (k.signum() <= 0 || k.testBit(0)) {
+			return null;
+		}
+
+		int r = k.getLowestSetBit();
+		BigInteger t = k.shiftRight(r);
+		BigInteger nMinusOne = n.subtract(ONE);
+
+		for (int g = 2; g < MAX_FACTORING_ATTEMPTS; g++) {
+			BigInteger y = BigInteger.valueOf(g).modPow(t, n);
+
+			if (y.equals(ONE) || y.equals(nMinusOne)) {
+				continue;
+			}
+
+			boolean trivial = false;
+
+			for (int i = 0; i < r && !trivial; i++) {
+				BigInteger x = y.multiply(y).mod(n);
+
+				if (x.equals(ONE)) {
+					// y is a non-trivial square root of 1
+					BigInteger p = y.subtract(ONE).gcd(n);
+					if (p.compareTo(ONE) > 0 && p.compareTo(n) < 0 && n.mod(p).signum() == 0) {
+						return p;
+					}
+					return null;
+				}
+				trivial = x.equals(nMinusOne);
+				y = x;
+			}
+
+			if (!trivial) {
+				// g^k is not 1, so k is not a multiple of lambda(n) and the exponents do not match
+				return null;
+			}
+		}
+
+		return null;
+	}
+
 	static RSAPublicKey createPublicKey(BigInteger n, BigInteger e) {
 		try {
 			return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(n, e));
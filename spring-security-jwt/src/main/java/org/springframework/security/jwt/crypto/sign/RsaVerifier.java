@@ -27,6 +27,14 @@ import java.security.interfaces.RSAPublicKey;
 public class RsaVerifier implements SignatureVerifier {
 	private final RSAPublicKey key;
 	private final String algorithm;
+	private final EnginePool<Signature> signatures = new EnginePool<Signature>() {
+		@Override
+		protected Signature create() throws GeneralSecurityException {
+			Signature signature = Signature.getInstance(algorithm);
+			signature.initVerify(key);
+			return signature;
+		}
+	};
 
 	public RsaVerifier(BigInteger n, BigInteger e) {
 		this(RsaKeyHelper.createPublicKey(n, e));
@@ -46,18 +54,21 @@ public class RsaVerifier implements SignatureVerifier {
 	}
 
 	public void verify(byte[] content, byte[] sig) {
+		boolean verified;
 		try {
-			Signature signature = Signature.getInstance(algorithm);
-			signature.initVerify(key);
+			Signature signature = signatures.take();
 			signature.update(content);
-
-			if (!signature.verify(sig)) {
-				throw new InvalidSignatureException("RSA Signature did not match content");
-			}
+			verified = signature.verify(sig);
+			// verify() resets the Signature whatever the result
+			signatures.release(signature);
 		}
 		catch (GeneralSecurityException e) {
 			throw new RuntimeException(e);
 		}
+
+		if (!verified) {
+			throw new InvalidSignatureException("RSA Signature did not match content");
+		}
 	}
 
 	public String algorithm() {
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+public class BulkJwtVerifierTests {
+	private final MacSigner one = new MacSigner("one");
+	private final MacSigner two = new MacSigner("two");
+
+	@Test
+	public void resultsAreInTokenOrderWithFailuresRecorded() {
+		List<String> tokens = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			if (i % 10 == 3) {
+				tokens.add(JwtHelper.encode(claims(i), two).getEncoded());
+			} else if (i % 10 == 7) {
+				tokens.add("garbage" + i);
+			} else {
+				tokens.add(JwtHelper.encode(claims(i), one).getEncoded());
+			}
+		}
+		BulkJwtVerifier verifier = new BulkJwtVerifier(one);
+		verifier.setParallelism(4);
+		check(tokens, verifier.verify(tokens));
+	}
+
+	@Test
+	public void resultsAreTheSameWhateverTheParallelism() {
+		List<String> tokens = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			tokens.add(JwtHelper.encode(claims(i), i % 5 == 0 ? two : one).getEncoded());
+		}
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int parallelism = 1; parallelism <= Math.max(2, cores); parallelism++) {
+			BulkJwtVerifier verifier = new BulkJwtVerifier(one);
+			verifier.setParallelism(parallelism);
+			List<BulkJwtVerifier.Result> results = verifier.verify(tokens);
+			assertEquals(tokens.size(), results.size());
+			for (int i = 0; i < tokens.size(); i++) {
+				assertEquals(i % 5 != 0, results.get(i).isVerified());
+			}
+		}
+	}
+
+	@Test
+	public void suppliedExecutorIsNotShutDown() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			BulkJwtVerifier verifier = new BulkJwtVerifier(new SignatureVerifierRegistry(new KeySet(Collections
+					.singletonMap("k1", one))));
+			verifier.setExecutorService(executor);
+			List<String> tokens = new ArrayList<String>();
+			tokens.add(JwtHelper.encode(claims(0), one, "k1").getEncoded());
+			tokens.add(JwtHelper.encode(claims(1), one, "k2").getEncoded());
+			List<BulkJwtVerifier.Result> results = verifier.verify(tokens);
+			assertTrue(results.get(0).isVerified());
+			assertTrue(results.get(1).getFailure() instanceof InvalidSignatureException);
+			assertFalse(executor.isShutdown());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void emptyBatch() {
+		assertTrue(new BulkJwtVerifier(one).verify(Collections.<String> emptyList()).isEmpty());
+	}
+
+	private void check(List<String> tokens, List<BulkJwtVerifier.Result> results) {
+		assertEquals(tokens.size(), results.size());
+		for (int i = 0; i < tokens.size(); i++) {
+			BulkJwtVerifier.Result result = results.get(i);
+			assertEquals(tokens.get(i), result.getToken());
+			if (i % 10 == 3) {
+				assertTrue(result.getFailure() instanceof InvalidSignatureException);
+				assertNull(result.getJwt());
+			} else if (i % 10 == 7) {
+				assertTrue(result.getFailure() instanceof IllegalArgumentException);
+			} else {
+				assertTrue(result.isVerified());
+				assertEquals(claims(i), result.getJwt().getClaims());
+			}
+		}
+	}
+
+	private static String claims(int i) {
+		return "{\"jti\":\"" + i + "\"}";
+	}
+}
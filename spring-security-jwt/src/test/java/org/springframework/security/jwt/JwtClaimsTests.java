@@ -0,0 +1,86 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.security.jwt.JwtTests.JOE_HMAC_TOKEN;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+public class JwtClaimsTests {
+	private final MacSigner hmac = new MacSigner("secret");
+
+	@Test
+	public void registeredClaimsAreRead() {
+		JwtClaims claims = JwtHelper.encode(
+				"{\"iss\":\"joe\",\"sub\":\"marissa\",\"client_id\":\"app\",\"exp\":1300819380,\"nbf\":1300819000,"
+						+ "\"iat\":1300818999.5,\"aud\":[\"sparklr\",\"tonr\"],\"scope\":\"read  write\","
+						+ "\"other\":{\"exp\":1,\"scope\":[\"admin\"]}}", hmac).getClaimSet();
+		assertEquals("joe", claims.getIssuer());
+		assertEquals("marissa", claims.getSubject());
+		assertEquals("app", claims.getClientId());
+		assertEquals(1300819380L, claims.getExpiresAt());
+		assertEquals(1300819000L, claims.getNotBefore());
+		assertEquals(1300818999L, claims.getIssuedAt());
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("sparklr", "tonr")), claims.getAudience());
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("read", "write")), claims.getScope());
+	}
+
+	@Test
+	public void missingClaimsHaveNoValue() {
+		JwtClaims claims = JwtHelper.encode("{\"aud\":\"one two\",\"scope\":[\"read\"]}", hmac).getClaimSet();
+		assertEquals(JwtClaims.NONE, claims.getExpiresAt());
+		assertEquals(JwtClaims.NONE, claims.getNotBefore());
+		assertNull(claims.getSubject());
+		assertEquals(Collections.singleton("one two"), claims.getAudience());
+		assertEquals(Collections.singleton("read"), claims.getScope());
+		assertTrue(claims.isValidAt(System.currentTimeMillis()));
+	}
+
+	@Test
+	public void timeChecks() {
+		JwtClaims claims = JwtHelper.encode("{\"nbf\":100,\"exp\":200}", hmac).getClaimSet();
+		assertTrue(claims.isNotYetValid(99999));
+		assertFalse(claims.isNotYetValid(100000));
+		assertTrue(claims.isValidAt(150000));
+		assertFalse(claims.isExpired(199999));
+		assertTrue(claims.isExpired(200000));
+		assertFalse(claims.isValidAt(200000));
+	}
+
+	@Test
+	public void expiryIsReadBeforeVerification() {
+		Jwt jwt = JwtHelper.decode(JOE_HMAC_TOKEN);
+		assertTrue(jwt.getClaimSet().isExpired(System.currentTimeMillis()));
+		assertSame(jwt.getClaimSet(), jwt.getClaimSet());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nonNumericExpiryIsRejected() {
+		JwtHelper.encode("{\"exp\":\"tomorrow\"}", hmac).getClaimSet();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void claimsMustBeAnObject() {
+		JwtHelper.encode("[1,2]", hmac).getClaimSet();
+	}
+}
@@ -12,14 +12,22 @@
  */
 package org.springframework.security.jwt;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import static org.springframework.security.jwt.JwtSpecData.*;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
 import org.springframework.security.jwt.crypto.sign.RsaSigner;
 import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 
 /**
  * @author Luke Taylor
@@ -42,6 +50,100 @@ public class JwtTests {
 		assertEquals(JOE_HMAC_TOKEN, token.getEncoded());
 	}
 
+	@Test
+	public void tokenDecodedFromBytesCreatesSameToken() throws Exception {
+		Jwt token = JwtHelper.decode(JOE_HMAC_TOKEN.getBytes("UTF-8"));
+		assertEquals(JOE_HMAC_TOKEN, token.getEncoded());
+		assertEquals(JOE_CLAIM_SEGMENT, token.getClaims());
+	}
+
+	@Test
+	public void tokenDecodedFromBufferUsesOnlyRemainingBytes() throws Exception {
+		byte[] bytes = ("Bearer " + JOE_HMAC_TOKEN + " ").getBytes("UTF-8");
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 7, JOE_HMAC_TOKEN.length()).slice();
+		Jwt token = JwtHelper.decode(buffer);
+		token.verifySignature(hmac);
+		assertEquals(JOE_HMAC_TOKEN, new String(token.bytes(), "UTF-8"));
+		assertEquals(JOE_CLAIM_SEGMENT, token.getClaims());
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void tokenDecodedFromDirectBuffer() throws Exception {
+		byte[] bytes = JOE_HMAC_TOKEN.getBytes("UTF-8");
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		assertEquals(JOE_CLAIM_SEGMENT, JwtHelper.decode(buffer).getClaims());
+	}
+
+	@Test
+	public void signatureIsVerifiedWithoutDecodingClaims() throws Exception {
+		// The claims segment is not valid Base64, but that only matters if someone asks for the claims
+		String token = JOE_HMAC_TOKEN.substring(0, JOE_HMAC_TOKEN.indexOf('.') + 1) + "*."
+				+ JOE_HMAC_TOKEN.substring(JOE_HMAC_TOKEN.lastIndexOf('.') + 1);
+		Jwt jwt = JwtHelper.decode(token.getBytes("UTF-8"));
+		try {
+			jwt.verifySignature(hmac);
+			fail("Expected InvalidSignatureException");
+		}
+		catch (InvalidSignatureException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void verifiedTokenDoesNotReadCallerBytes() throws Exception {
+		byte[] bytes = JOE_HMAC_TOKEN.getBytes("UTF-8");
+		Jwt jwt = JwtHelper.decode(bytes);
+		jwt.verifySignature(hmac);
+		// The caller reuses its buffer for the next request
+		byte[] other = JwtHelper.encode("{\"iss\":\"mallory\"}", hmac).bytes();
+		System.arraycopy(other, 0, bytes, 0, Math.min(other.length, bytes.length));
+		assertEquals(JOE_CLAIM_SEGMENT, jwt.getClaims());
+		assertEquals("joe", jwt.getClaimSet().getIssuer());
+		assertEquals(JOE_HMAC_TOKEN, jwt.getEncoded());
+	}
+
+	@Test
+	public void signingInputIsOnlyCopiedOnce() throws Exception {
+		final List<byte[]> inputs = new ArrayList<byte[]>();
+		SignatureVerifier verifier = new SignatureVerifier() {
+			public void verify(byte[] content, byte[] signature) {
+				inputs.add(content);
+				hmac.verify(content, signature);
+			}
+
+			public String algorithm() {
+				return hmac.algorithm();
+			}
+		};
+		Jwt jwt = JwtHelper.decode(JOE_HMAC_TOKEN.getBytes("UTF-8"));
+		jwt.verifySignature(verifier);
+		jwt.verifySignature(verifier);
+		assertSame(inputs.get(0), inputs.get(1));
+		assertArrayEquals(JOE_HMAC_TOKEN.getBytes("UTF-8"), jwt.bytes());
+	}
+
+	@Test
+	public void claimsReadBeforeVerificationAreDecodedAgainFromVerifiedBytes() throws Exception {
+		byte[] bytes = JOE_HMAC_TOKEN.getBytes("UTF-8");
+		Jwt jwt = JwtHelper.decode(bytes);
+		assertEquals(JOE_CLAIM_SEGMENT, jwt.getClaims());
+		jwt.verifySignature(hmac);
+		bytes[JOE_HMAC_TOKEN.indexOf('.') + 1] = 'x';
+		assertEquals(JOE_CLAIM_SEGMENT, jwt.getClaims());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void bytesWithoutPeriodsAreRejected() throws Exception {
+		JwtHelper.decode("abc".getBytes("UTF-8"));
+	}
+
+	@Test
+	public void hmacSignedBytesParseAndVerify() throws Exception {
+		assertEquals(JOE_CLAIM_SEGMENT, JwtHelper.decodeAndVerify(JOE_HMAC_TOKEN.getBytes("UTF-8"), hmac).getClaims());
+	}
+
 	@Test
 	public void expectedClaimsValueIsReturned() {
 		assertEquals(JOE_CLAIM_SEGMENT, JwtHelper.decode(JOE_HMAC_TOKEN).getClaims());
@@ -69,6 +171,24 @@ public class JwtTests {
 		assertEquals (JOE_CLAIM_SEGMENT, jwt.getClaims());
 	}
 
+	@Test
+	public void encodedTokenDecodesToSameToken() {
+		Jwt jwt = JwtHelper.encode(JOE_CLAIM_SEGMENT, hmac);
+		Jwt decoded = JwtHelper.decodeAndVerify(jwt.getEncoded(), hmac);
+		assertEquals(jwt.getEncoded(), decoded.getEncoded());
+		assertEquals(JOE_CLAIM_SEGMENT, decoded.getClaims());
+	}
+
+	@Test
+	public void headerWithAlgIvAndKidParses() throws Exception {
+		HeaderParameters params = JwtHeaderHelper.parseParams("{\"alg\":\"HS256\",\"iv\":\"AxY8DCtDaGlsbGljb3RoZQ\",\"kid\":\"key-1\",\"typ\":\"JWT\"}"
+				.getBytes("UTF-8"));
+		assertEquals("HS256", params.alg);
+		assertEquals("AxY8DCtDaGlsbGljb3RoZQ", params.iv);
+		assertEquals("key-1", params.kid);
+		assertEquals(null, params.enc);
+	}
+
 	@Test
 	public void rsaSignedTokenParsesAndVerifies() {
 		Jwt jwt = JwtHelper.decode(JOE_RSA_TOKEN);
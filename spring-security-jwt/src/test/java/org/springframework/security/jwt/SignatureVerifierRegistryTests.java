@@ -0,0 +1,153 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.springframework.security.jwt.JwtTests.JOE_CLAIM_SEGMENT;
+import static org.springframework.security.jwt.JwtTests.JOE_HMAC_TOKEN;
+import static org.springframework.security.jwt.JwtTests.JOE_RSA_TOKEN;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.security.jwt.codec.Codecs;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+public class SignatureVerifierRegistryTests {
+	private final MacSigner one = new MacSigner("one");
+	private final MacSigner two = new MacSigner("two");
+
+	@Test
+	public void keySetIsLoadedFromClasspath() throws Exception {
+		KeySet keys = new JwkSetLoader(getClass().getResource("jwks.json")).load();
+		assertEquals(new HashSet<String>(Arrays.asList("rsa-1", "ec-1", "hmac-1")), keys.getKeyIds());
+		SignatureVerifierRegistry registry = new SignatureVerifierRegistry(keys);
+		// Tokens without a key id use the only key for their algorithm
+		assertEquals(JOE_CLAIM_SEGMENT, JwtHelper.decodeAndVerify(JOE_HMAC_TOKEN, registry).getClaims());
+		assertEquals(JOE_CLAIM_SEGMENT, JwtHelper.decodeAndVerify(JOE_RSA_TOKEN, registry).getClaims());
+	}
+
+	@Test
+	public void keySetIsLoadedFromFile() throws Exception {
+		File file = File.createTempFile("jwks", ".json");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(Codecs.utf8Encode("{\"keys\":[{\"kty\":\"oct\",\"kid\":\"one\",\"k\":\""
+					+ Codecs.utf8Decode(Codecs.b64UrlEncode("one")) + "\"}]}"));
+		}
+		finally {
+			out.close();
+		}
+		SignatureVerifierRegistry registry = new SignatureVerifierRegistry(new JwkSetLoader(file.toURI().toURL()));
+		JwtHelper.decodeAndVerify(JwtHelper.encode(JOE_CLAIM_SEGMENT, one, "one").getEncoded(), registry);
+	}
+
+	@Test
+	public void keyIsChosenByKeyId() throws Exception {
+		SignatureVerifierRegistry registry = new SignatureVerifierRegistry(keySet("one", one, "two", two));
+		JwtHelper.decodeAndVerify(JwtHelper.encode(JOE_CLAIM_SEGMENT, one, "one").getEncoded(), registry);
+		JwtHelper.decodeAndVerify(JwtHelper.encode(JOE_CLAIM_SEGMENT, two, "two").getEncoded(), registry);
+		assertSame(two, registry.getVerifier("two", "HS256"));
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void tokenSignedWithDifferentKeyIsRejected() throws Exception {
+		SignatureVerifierRegistry registry = new SignatureVerifierRegistry(keySet("one", one, "two", two));
+		JwtHelper.decodeAndVerify(JwtHelper.encode(JOE_CLAIM_SEGMENT, one, "two").getEncoded(), registry);
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void unknownKeyIdIsRejected() throws Exception {
+		SignatureVerifierRegistry registry = new SignatureVerifierRegistry(keySet("one", one));
+		JwtHelper.decodeAndVerify(JwtHelper.encode(JOE_CLAIM_SEGMENT, two, "two").getEncoded(), registry);
+	}
+
+	@Test
+	public void keyIsNotUsedForDifferentAlgorithm() throws Exception {
+		KeySet keys = keySet("rsa", new RsaVerifier(JwtSpecData.N, JwtSpecData.E), "one", one);
+		assertNull(keys.getVerifier("rsa", "HS256"));
+		assertNull(keys.getVerifier("one", "RS256"));
+		assertSame(one, keys.getVerifier("one", "HS256"));
+	}
+
+	@Test
+	public void tokenWithoutKeyIdIsRejectedIfKeyIsAmbiguous() throws Exception {
+		KeySet keys = keySet("one", one, "two", two);
+		assertNull(keys.getVerifier(null, "HS256"));
+		assertSame(one, keySet("one", one).getVerifier(null, "HS256"));
+	}
+
+	@Test
+	public void keysAreSwappedOnRefresh() throws Exception {
+		final KeySet[] next = new KeySet[] { keySet("one", one) };
+		SignatureVerifierRegistry registry = new SignatureVerifierRegistry(new KeySetLoader() {
+			public KeySet load() throws IOException {
+				if (next[0] == null) {
+					throw new IOException("Planned");
+				}
+				return next[0];
+			}
+		});
+		String token = JwtHelper.encode(JOE_CLAIM_SEGMENT, two, "two").getEncoded();
+		try {
+			JwtHelper.decodeAndVerify(token, registry);
+			fail("Expected InvalidSignatureException");
+		}
+		catch (InvalidSignatureException e) {
+			// expected
+		}
+		next[0] = keySet("one", one, "two", two);
+		registry.refresh();
+		JwtHelper.decodeAndVerify(token, registry);
+
+		// A failed reload keeps the keys we had
+		KeySet current = registry.getKeySet();
+		next[0] = null;
+		try {
+			registry.refresh();
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			// expected
+		}
+		assertSame(current, registry.getKeySet());
+	}
+
+	@Test
+	public void keyIdIsIncludedInHeader() throws Exception {
+		Jwt jwt = JwtHelper.encode(JOE_CLAIM_SEGMENT, one, "one");
+		String header = jwt.getEncoded().substring(0, jwt.getEncoded().indexOf('.'));
+		assertEquals("{\"alg\":\"HS256\",\"kid\":\"one\"}", Codecs.utf8Decode(Codecs.b64UrlDecode(header)));
+	}
+
+	private static KeySet keySet(Object... keysAndVerifiers) {
+		Map<String, SignatureVerifier> verifiers = new LinkedHashMap<String, SignatureVerifier>();
+		for (int i = 0; i < keysAndVerifiers.length; i += 2) {
+			verifiers.put((String) keysAndVerifiers[i], (SignatureVerifier) keysAndVerifiers[i + 1]);
+		}
+		return new KeySet(verifiers);
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.springframework.security.jwt.JwtTests.JOE_HMAC_TOKEN;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+public class VerifiedJwtCacheTests {
+	private final MacSigner one = new MacSigner("one");
+	private final MacSigner two = new MacSigner("two");
+	private final VerifiedJwtCache cache = new VerifiedJwtCache();
+
+	@Test
+	public void tokenIsOnlyVerifiedOnce() {
+		String token = token("joe", 3600, one);
+		Jwt jwt = cache.decodeAndVerify(token, one);
+		assertEquals(jwt.getClaims(), cache.decodeAndVerify(token, one).getClaims());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRatio(), 0.0);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void differentVerifierIsNotAHit() {
+		String token = token("joe", 3600, one);
+		cache.decodeAndVerify(token, one);
+		try {
+			cache.decodeAndVerify(token, two);
+			fail();
+		}
+		catch (InvalidSignatureException expected) {
+		}
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void tamperedTokenIsNotAHit() {
+		String token = token("joe", 3600, one);
+		cache.decodeAndVerify(token, one);
+		String signature = token.substring(token.lastIndexOf('.'));
+		String forged = JwtHelper.encode("{\"iss\":\"root\",\"exp\":" + (now() + 3600) + "}", two).getEncoded();
+		forged = forged.substring(0, forged.lastIndexOf('.')) + signature;
+		try {
+			cache.decodeAndVerify(forged, one);
+			fail();
+		}
+		catch (InvalidSignatureException expected) {
+		}
+	}
+
+	@Test
+	public void failedVerificationIsNotCached() {
+		String token = token("joe", 3600, one);
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.decodeAndVerify(token, two);
+				fail();
+			}
+			catch (InvalidSignatureException expected) {
+			}
+		}
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void expiredTokenIsNotCached() {
+		cache.decodeAndVerify(JOE_HMAC_TOKEN, JwtTests.hmac);
+		cache.decodeAndVerify(JOE_HMAC_TOKEN, JwtTests.hmac);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void tokenWithoutExpiryUsesTimeToLive() throws Exception {
+		cache.setTimeToLiveSeconds(0);
+		String token = JwtHelper.encode("{\"iss\":\"joe\"}", one).getEncoded();
+		cache.decodeAndVerify(token, one);
+		assertEquals(0, cache.size());
+		cache.setTimeToLiveSeconds(60);
+		cache.decodeAndVerify(token, one);
+		cache.decodeAndVerify(token, one);
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void entriesAreEvictedWhenFull() {
+		cache.setMaxSize(10);
+		for (int i = 0; i < 25; i++) {
+			cache.decodeAndVerify(token("user" + i, 3600, one), one);
+		}
+		assertEquals(10, cache.size());
+		assertEquals(15, cache.getEvictionCount());
+	}
+
+	@Test
+	public void rotatedKeyIsNotAHit() {
+		SignatureVerifierRegistry registry = new SignatureVerifierRegistry(new KeySet(Collections.singletonMap("k1",
+				one)));
+		String token = JwtHelper.encode("{\"iss\":\"joe\",\"exp\":" + (now() + 3600) + "}", one, "k1").getEncoded();
+		Jwt jwt = cache.decodeAndVerify(token, registry);
+		assertEquals(jwt.getClaims(), cache.decodeAndVerify(token, registry).getClaims());
+		assertEquals(1, cache.getHitCount());
+		registry.setKeySet(new KeySet(Collections.singletonMap("k1", two)));
+		try {
+			cache.decodeAndVerify(token, registry);
+			fail();
+		}
+		catch (InvalidSignatureException expected) {
+		}
+		assertEquals(1, cache.getHitCount());
+	}
+
+	private static String token(String issuer, int validitySeconds, MacSigner signer) {
+		return JwtHelper.encode("{\"iss\":\"" + issuer + "\",\"exp\":" + (now() + validitySeconds) + "}", signer)
+				.getEncoded();
+	}
+
+	private static long now() {
+		return System.currentTimeMillis() / 1000;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CodecsTests {
+
+	@Test
+	public void urlEncodingMatchesPaddedCodecWithoutPadding() {
+		Random random = new Random(42);
+		for (int len = 0; len < 100; len++) {
+			byte[] bytes = new byte[len];
+			random.nextBytes(bytes);
+			String expected = Codecs.utf8Decode(Base64Codec.encodeBytesToBytes(bytes, 0, len, Base64Codec.URL_SAFE))
+					.replace("=", "");
+			byte[] encoded = Codecs.b64UrlEncode(bytes);
+			assertEquals(expected, Codecs.utf8Decode(encoded));
+			assertEquals(encoded.length, Codecs.b64UrlEncodedLength(len));
+			assertArrayEquals(bytes, Codecs.b64UrlDecode(encoded));
+		}
+	}
+
+	@Test
+	public void urlEncodingWritesIntoBuffer() {
+		byte[] bytes = Codecs.utf8Encode("foobar");
+		byte[] buffer = new byte[12];
+		assertEquals(6, Codecs.b64UrlEncode(bytes, 1, 4, buffer, 3));
+		assertEquals("b29iYQ", Codecs.utf8Decode(buffer).substring(3, 9));
+		assertEquals(0, buffer[9]);
+	}
+
+	@Test
+	public void urlDecodingReadsRangeIntoBuffer() {
+		byte[] b64 = Codecs.utf8Encode("xxZm9vYg.");
+		assertEquals(4, Codecs.b64UrlDecodedLength(b64, 2, 6));
+		byte[] buffer = new byte[6];
+		assertEquals(4, Codecs.b64UrlDecode(b64, 2, 6, buffer, 1));
+		assertEquals("foob", Codecs.utf8Decode(buffer).substring(1, 5));
+	}
+
+	@Test
+	public void paddedInputIsAccepted() {
+		assertEquals("foob", Codecs.utf8Decode(Codecs.b64UrlDecode("Zm9vYg==")));
+		assertEquals("fooba", Codecs.utf8Decode(Codecs.b64UrlDecode("Zm9vYmE=")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidLengthIsRejected() {
+		Codecs.b64UrlDecode("Zm9vY");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void standardAlphabetIsRejected() {
+		Codecs.b64UrlDecode("ab+/");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nonAsciiIsRejected() {
+		Codecs.b64UrlDecode("ab\u00e9");
+	}
+}
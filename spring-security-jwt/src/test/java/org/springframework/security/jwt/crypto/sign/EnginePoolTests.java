@@ -0,0 +1,67 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EnginePoolTests {
+	private int created;
+
+	private final EnginePool<Object> pool = new EnginePool<Object>() {
+		@Override
+		protected Object create() throws GeneralSecurityException {
+			created++;
+			return new Object();
+		}
+	};
+
+	@Test
+	public void releasedEngineIsReused() throws Exception {
+		Object engine = pool.take();
+		pool.release(engine);
+		assertSame(engine, pool.take());
+		assertEquals(1, created);
+	}
+
+	@Test
+	public void engineThatIsNotReleasedIsNotReused() throws Exception {
+		Object engine = pool.take();
+		assertNotSame(engine, pool.take());
+		assertEquals(2, created);
+	}
+
+	@Test
+	public void poolIsBounded() throws Exception {
+		int size = 2 * Runtime.getRuntime().availableProcessors();
+		List<Object> engines = new ArrayList<Object>();
+		for (int i = 0; i < size + 5; i++) {
+			engines.add(pool.take());
+		}
+		for (Object engine : engines) {
+			pool.release(engine);
+		}
+		for (int i = 0; i < size + 5; i++) {
+			pool.take();
+		}
+		// The pool only kept size of them, so the rest had to be created again
+		assertEquals(size + 10, created);
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.springframework.security.jwt.codec.Codecs;
+
+public class MacSignerTests {
+	private final MacSigner signer = new MacSigner("secret");
+
+	@Test
+	public void repeatedSignaturesAreTheSame() throws Exception {
+		byte[] content = Codecs.utf8Encode("Hi I'm the data");
+		byte[] signature = signer.sign(content);
+		signer.sign(Codecs.utf8Encode("Other data"));
+		assertArrayEquals(signature, signer.sign(content));
+		signer.verify(content, signature);
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void invalidSignatureIsRejected() throws Exception {
+		byte[] content = Codecs.utf8Encode("Hi I'm the data");
+		signer.verify(content, new MacSigner("other").sign(content));
+	}
+
+	@Test
+	public void signerIsThreadSafe() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<byte[]> contents = new ArrayList<byte[]>();
+		List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+		for (int i = 0; i < 200; i++) {
+			final byte[] content = Codecs.utf8Encode("Data " + i);
+			contents.add(content);
+			results.add(executor.submit(new Callable<byte[]>() {
+				public byte[] call() throws Exception {
+					return signer.sign(content);
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < contents.size(); i++) {
+				assertArrayEquals(new MacSigner("secret").sign(contents.get(i)), results.get(i).get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
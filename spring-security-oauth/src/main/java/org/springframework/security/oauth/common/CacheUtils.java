@@ -0,0 +1,82 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.common;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Helpers for the size-bounded concurrent maps used as caches. The maps have no order to evict by, so when one is full
+ * expired entries go first and then an arbitrary tenth of the rest.
+ */
+public class CacheUtils {
+
+  /**
+   * A cache entry that knows when it expires.
+   */
+  public interface Expiring {
+
+    /**
+     * Whether the entry has expired.
+     *
+     * @param now The current time in milliseconds.
+     * @return Whether the entry should no longer be used.
+     */
+    boolean isExpired(long now);
+  }
+
+  /**
+   * Make room in a full cache by removing the expired entries, and if that isn't enough an arbitrary tenth of the
+   * others. Does nothing if the cache isn't full.
+   *
+   * @param cache The cache.
+   * @param maxSize The maximum size of the cache.
+   * @param now The current time in milliseconds.
+   */
+  public static void makeRoom(Map<?, ? extends Expiring> cache, int maxSize, long now) {
+    if (cache.size() < maxSize) {
+      return;
+    }
+
+    for (Iterator<? extends Expiring> it = cache.values().iterator(); it.hasNext();) {
+      if (it.next().isExpired(now)) {
+        it.remove();
+      }
+    }
+    evictExcess(cache, maxSize);
+  }
+
+  /**
+   * Make room in a full cache by removing an arbitrary tenth of it. Does nothing if the cache isn't full.
+   *
+   * @param cache The cache.
+   * @param maxSize The maximum size of the cache.
+   */
+  public static void makeRoom(Map<?, ?> cache, int maxSize) {
+    if (cache.size() >= maxSize) {
+      evictExcess(cache, maxSize);
+    }
+  }
+
+  private static void evictExcess(Map<?, ?> cache, int maxSize) {
+    int excess = cache.size() - maxSize + Math.max(1, maxSize / 10);
+    for (Iterator<?> it = cache.keySet().iterator(); excess > 0 && it.hasNext(); excess--) {
+      it.next();
+      it.remove();
+    }
+  }
+}
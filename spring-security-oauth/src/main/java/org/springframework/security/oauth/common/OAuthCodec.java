@@ -37,6 +37,15 @@ public class OAuthCodec extends URLCodec {
     SAFE_CHARACTERS.set('~');
   }
 
+  private static final boolean[] SAFE_ASCII = new boolean[128];
+  static {
+    for (int i = 0; i < SAFE_ASCII.length; i++) {
+      SAFE_ASCII[i] = SAFE_CHARACTERS.get(i);
+    }
+  }
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
   /**
    * Private constructor (instance methods not accessible).
    */
@@ -54,12 +63,65 @@ public class OAuthCodec extends URLCodec {
       return "";
     }
 
-    try {
-      return new String(URLCodec.encodeUrl(SAFE_CHARACTERS, value.getBytes("UTF-8")), "US-ASCII");
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 128 || !SAFE_ASCII[c]) {
+        //something needs encoding, so copy the safe prefix and encode the rest.
+        StringBuilder builder = new StringBuilder(length + 16).append(value, 0, i);
+        return oauthEncode(value.subSequence(i, length), builder).toString();
+      }
     }
-    catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
+    return value;
+  }
+
+  /**
+   * Encode the specified value, appending it to a builder rather than creating a new string. The value is encoded as
+   * UTF-8 and every byte that isn't an unreserved character is percent-encoded with upper case hex digits, exactly as
+   * {@link #oauthEncode(String)} does.
+   *
+   * @param value The value to encode.
+   * @param builder The builder to append to.
+   * @return The builder.
+   */
+  public static StringBuilder oauthEncode(CharSequence value, StringBuilder builder) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 128) {
+        if (SAFE_ASCII[c]) {
+          builder.append(c);
+        }
+        else {
+          appendEscaped(c, builder);
+        }
+      }
+      else if (c < 0x800) {
+        appendEscaped(0xC0 | (c >> 6), builder);
+        appendEscaped(0x80 | (c & 0x3F), builder);
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        appendEscaped(0xF0 | (codePoint >> 18), builder);
+        appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), builder);
+        appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), builder);
+        appendEscaped(0x80 | (codePoint & 0x3F), builder);
+      }
+      else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+        //unpaired surrogates are replaced with '?', like String.getBytes("UTF-8") does.
+        appendEscaped('?', builder);
+      }
+      else {
+        appendEscaped(0xE0 | (c >> 12), builder);
+        appendEscaped(0x80 | ((c >> 6) & 0x3F), builder);
+        appendEscaped(0x80 | (c & 0x3F), builder);
+      }
     }
+    return builder;
+  }
+
+  private static void appendEscaped(int b, StringBuilder builder) {
+    builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
   }
 
   /**
@@ -19,6 +19,7 @@ package org.springframework.security.oauth.common.signature;
 import org.springframework.security.authentication.encoding.PasswordEncoder;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth.common.CacheUtils;
 import static org.springframework.security.oauth.common.OAuthCodec.oauthEncode;
 
 import javax.crypto.spec.SecretKeySpec;
@@ -26,6 +27,8 @@ import java.io.UnsupportedEncodingException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implements the signatures defined in OAuth Core 1.0. By default, PLAINTEXT signatures are not supported
@@ -38,6 +41,10 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
   private boolean supportHMAC_SHA1 = true;
   private boolean supportRSA_SHA1 = true;
   private PasswordEncoder plainTextPasswordEncoder;
+  private int hmacCacheSize = 1000;
+  private int rsaCacheSize = 100;
+  private final ConcurrentHashMap<HMACSecrets, HMAC_SHA1SignatureMethod> hmacMethods = new ConcurrentHashMap<HMACSecrets, HMAC_SHA1SignatureMethod>();
+  private final ConcurrentHashMap<RSAKeys, RSA_SHA1SignatureMethod> rsaMethods = new ConcurrentHashMap<RSAKeys, RSA_SHA1SignatureMethod>();
 
   public OAuthSignatureMethod getSignatureMethod(String methodName, SignatureSecret signatureSecret, String tokenSecret) throws UnsupportedSignatureMethodException {
     if (supportPlainText && PlainTextSignatureMethod.SIGNATURE_NAME.equals(methodName)) {
@@ -79,6 +86,12 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
         tokenSecret = "";
       }
 
+      HMACSecrets secrets = new HMACSecrets(consumerSecret, tokenSecret);
+      HMAC_SHA1SignatureMethod method = hmacCacheSize > 0 ? hmacMethods.get(secrets) : null;
+      if (method != null) {
+        return method;
+      }
+
       consumerSecret = oauthEncode(consumerSecret);
       tokenSecret = oauthEncode(tokenSecret);
 
@@ -90,20 +103,25 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
         throw new RuntimeException(e.getMessage());
       }
       SecretKeySpec spec = new SecretKeySpec(keyBytes, HMAC_SHA1SignatureMethod.MAC_NAME);
-      return new HMAC_SHA1SignatureMethod(spec);
+      method = new HMAC_SHA1SignatureMethod(spec);
+      if (hmacCacheSize > 0) {
+        CacheUtils.makeRoom(hmacMethods, hmacCacheSize);
+        hmacMethods.put(secrets, method);
+      }
+      return method;
     }
     else if (supportRSA_SHA1 && RSA_SHA1SignatureMethod.SIGNATURE_NAME.equals(methodName)) {
       if (signatureSecret instanceof RSAKeySecret) {
         PublicKey publicKey = ((RSAKeySecret) signatureSecret).getPublicKey();
         PrivateKey privateKey = ((RSAKeySecret) signatureSecret).getPrivateKey();
-        return new RSA_SHA1SignatureMethod(privateKey, publicKey);
+        return getRSASignatureMethod(privateKey, publicKey);
       }
       else {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication.getCredentials() instanceof X509Certificate) {
           X509Certificate certificate = (X509Certificate) authentication.getCredentials();
           if (certificate != null) {
-            return new RSA_SHA1SignatureMethod(certificate.getPublicKey());
+            return getRSASignatureMethod(null, certificate.getPublicKey());
           }
         }
       }
@@ -112,6 +130,57 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
     throw new UnsupportedSignatureMethodException("Unsupported signature method: " + methodName);    
   }
 
+  /**
+   * Forget the HMAC-SHA1 signature methods cached for a token secret, e.g. because the token has been removed.
+   *
+   * @param tokenSecret The token secret.
+   */
+  public void evictTokenSecret(String tokenSecret) {
+    if (tokenSecret == null) {
+      tokenSecret = "";
+    }
+
+    for (Iterator<HMACSecrets> it = hmacMethods.keySet().iterator(); it.hasNext();) {
+      if (it.next().tokenSecret.equals(tokenSecret)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Forget the HMAC-SHA1 signature methods cached for all token secrets, keeping those for consumer secrets alone.
+   */
+  public void evictTokenSecrets() {
+    for (Iterator<HMACSecrets> it = hmacMethods.keySet().iterator(); it.hasNext();) {
+      if (it.next().tokenSecret.length() > 0) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Get the RSA-SHA1 signature method for a key pair. Methods are cached (when enabled) because each one keeps a
+   * pool of signature engines initialized with its keys.
+   *
+   * @param privateKey The private key (possibly null).
+   * @param publicKey The public key (possibly null).
+   * @return The signature method.
+   */
+  protected RSA_SHA1SignatureMethod getRSASignatureMethod(PrivateKey privateKey, PublicKey publicKey) {
+    if (rsaCacheSize <= 0) {
+      return new RSA_SHA1SignatureMethod(privateKey, publicKey);
+    }
+
+    RSAKeys keys = new RSAKeys(privateKey, publicKey);
+    RSA_SHA1SignatureMethod method = rsaMethods.get(keys);
+    if (method == null) {
+      method = new RSA_SHA1SignatureMethod(privateKey, publicKey);
+      CacheUtils.makeRoom(rsaMethods, rsaCacheSize);
+      rsaMethods.put(keys, method);
+    }
+    return method;
+  }
+
   /**
    * Whether to support the plain text signature method.
    *
@@ -166,6 +235,52 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
     this.supportRSA_SHA1 = supportRSA_SHA1;
   }
 
+  /**
+   * The maximum number of HMAC-SHA1 signature methods (one for each pair of consumer and token secrets) to keep, so
+   * that the MAC for a token doesn't have to be set up again for each request. Zero disables the cache.
+   *
+   * @return The maximum number of HMAC-SHA1 signature methods to keep.
+   */
+  public int getHmacCacheSize() {
+    return hmacCacheSize;
+  }
+
+  /**
+   * The maximum number of HMAC-SHA1 signature methods (one for each pair of consumer and token secrets) to keep, so
+   * that the MAC for a token doesn't have to be set up again for each request. Zero disables the cache.
+   *
+   * @param hmacCacheSize The maximum number of HMAC-SHA1 signature methods to keep.
+   */
+  public void setHmacCacheSize(int hmacCacheSize) {
+    this.hmacCacheSize = hmacCacheSize;
+    if (hmacCacheSize <= 0) {
+      hmacMethods.clear();
+    }
+  }
+
+  /**
+   * The maximum number of RSA-SHA1 signature methods (one for each consumer key pair or certificate) to keep, so that
+   * their signature engines can be reused. Zero disables the cache.
+   *
+   * @return The maximum number of RSA-SHA1 signature methods to keep.
+   */
+  public int getRsaCacheSize() {
+    return rsaCacheSize;
+  }
+
+  /**
+   * The maximum number of RSA-SHA1 signature methods (one for each consumer key pair or certificate) to keep, so that
+   * their signature engines can be reused. Zero disables the cache.
+   *
+   * @param rsaCacheSize The maximum number of RSA-SHA1 signature methods to keep.
+   */
+  public void setRsaCacheSize(int rsaCacheSize) {
+    this.rsaCacheSize = rsaCacheSize;
+    if (rsaCacheSize <= 0) {
+      rsaMethods.clear();
+    }
+  }
+
   /**
    * The password encoder to use for the plain-text password signature method.
    *
@@ -183,4 +298,61 @@ public class CoreOAuthSignatureMethodFactory implements OAuthSignatureMethodFact
   public void setPlainTextPasswordEncoder(PasswordEncoder plainTextPasswordEncoder) {
     this.plainTextPasswordEncoder = plainTextPasswordEncoder;
   }
+
+  /**
+   * The secrets an HMAC-SHA1 key is made from.
+   */
+  private static class HMACSecrets {
+
+    private final String consumerSecret;
+    private final String tokenSecret;
+
+    HMACSecrets(String consumerSecret, String tokenSecret) {
+      this.consumerSecret = consumerSecret;
+      this.tokenSecret = tokenSecret;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof HMACSecrets)) {
+        return false;
+      }
+      HMACSecrets other = (HMACSecrets) obj;
+      return consumerSecret.equals(other.consumerSecret) && tokenSecret.equals(other.tokenSecret);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * consumerSecret.hashCode() + tokenSecret.hashCode();
+    }
+  }
+
+  /**
+   * The keys an RSA-SHA1 signature method is made from.
+   */
+  private static class RSAKeys {
+
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+
+    RSAKeys(PrivateKey privateKey, PublicKey publicKey) {
+      this.privateKey = privateKey;
+      this.publicKey = publicKey;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof RSAKeys)) {
+        return false;
+      }
+      RSAKeys other = (RSAKeys) obj;
+      return (privateKey == null ? other.privateKey == null : privateKey.equals(other.privateKey))
+        && (publicKey == null ? other.publicKey == null : publicKey.equals(other.publicKey));
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (privateKey == null ? 0 : privateKey.hashCode()) + (publicKey == null ? 0 : publicKey.hashCode());
+    }
+  }
 }
@@ -47,6 +47,10 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
 
   private final SecretKey key;
 
+  //initialized once (racing threads just initialize the same thing) and then cloned, so each signature starts from
+  //the keyed state without a provider lookup or key setup.
+  private volatile Mac prototype;
+
   /**
    * Construct a HMAC-SHA1 signature method with the given HMAC-SHA1 key.
    *
@@ -74,8 +78,7 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
    */
   public String sign(String signatureBaseString) {
     try {
-      Mac mac = Mac.getInstance(MAC_NAME);
-      mac.init(key);
+      Mac mac = createMac();
       byte[] text = signatureBaseString.getBytes("UTF-8");
       byte[] signatureBytes = mac.doFinal(text);
       signatureBytes = Base64.encodeBase64(signatureBytes);
@@ -117,8 +120,7 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
 
       byte[] signatureBytes = Base64.decodeBase64(signature.getBytes("UTF-8"));
 
-      Mac mac = Mac.getInstance(MAC_NAME);
-      mac.init(key);
+      Mac mac = createMac();
       byte[] text = signatureBaseString.getBytes("UTF-8");
       byte[] calculatedBytes = mac.doFinal(text);
       if (!safeArrayEquals(calculatedBytes, signatureBytes)) {
@@ -136,6 +138,29 @@ public class HMAC_SHA1SignatureMethod implements OAuthSignatureMethod {
     }
   }
 
+  /**
+   * Create a MAC initialized with the key, by cloning an initialized prototype where the provider supports it.
+   *
+   * @return A MAC ready to use.
+   */
+  private Mac createMac() throws NoSuchAlgorithmException, InvalidKeyException {
+    Mac prototype = this.prototype;
+    if (prototype == null) {
+      prototype = Mac.getInstance(MAC_NAME);
+      prototype.init(key);
+      this.prototype = prototype;
+    }
+
+    try {
+      return (Mac) prototype.clone();
+    }
+    catch (CloneNotSupportedException e) {
+      Mac mac = Mac.getInstance(MAC_NAME);
+      mac.init(key);
+      return mac;
+    }
+  }
+
   boolean safeArrayEquals(byte[] a1, byte[] a2) {
     if (a1 == null || a2 == null) {
       return (a1 == a2);
@@ -20,6 +20,8 @@ import org.apache.commons.codec.binary.Base64;
 
 import java.io.UnsupportedEncodingException;
 import java.security.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * RSA-SHA1 signature method. The RSA-SHA1 signature method uses the RSASSA-PKCS1-v1_5 signature algorithm as defined in RFC3447
@@ -34,8 +36,16 @@ public class RSA_SHA1SignatureMethod implements OAuthSignatureMethod {
    */
   public static final String SIGNATURE_NAME = "RSA-SHA1";
 
+  private static final String ALGORITHM = "SHA1withRSA";
+
+  //engines are kept initialized with the key between uses (completing a signature or verification resets them), so
+  //reusing one costs nothing but the RSA operation itself.
+  private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
   private final PrivateKey privateKey;
   private final PublicKey publicKey;
+  private final BlockingQueue<Signature> signers = new ArrayBlockingQueue<Signature>(POOL_SIZE);
+  private final BlockingQueue<Signature> verifiers = new ArrayBlockingQueue<Signature>(POOL_SIZE);
 
   /**
    * Construct a RSA-SHA1 signature method with the given RSA-SHA1 public/private key pair.
@@ -95,10 +105,15 @@ public class RSA_SHA1SignatureMethod implements OAuthSignatureMethod {
     }
 
     try {
-      Signature signer = Signature.getInstance("SHA1withRSA");
-      signer.initSign(privateKey);
+      Signature signer = signers.poll();
+      if (signer == null) {
+        signer = Signature.getInstance(ALGORITHM);
+        signer.initSign(privateKey);
+      }
       signer.update(signatureBaseString.getBytes("UTF-8"));
       byte[] signatureBytes = signer.sign();
+      //only returned to the pool if it got this far, so a failed engine is never reused.
+      signers.offer(signer);
       signatureBytes = Base64.encodeBase64(signatureBytes);
       return new String(signatureBytes, "UTF-8");
     }
@@ -134,10 +149,16 @@ public class RSA_SHA1SignatureMethod implements OAuthSignatureMethod {
 
     try {
       byte[] signatureBytes = Base64.decodeBase64(signature.getBytes("UTF-8"));
-      Signature verifier = Signature.getInstance("SHA1withRSA");
-      verifier.initVerify(publicKey);
+      Signature verifier = verifiers.poll();
+      if (verifier == null) {
+        verifier = Signature.getInstance(ALGORITHM);
+        verifier.initVerify(publicKey);
+      }
       verifier.update(signatureBaseString.getBytes("UTF-8"));
-      if (!verifier.verify(signatureBytes)) {
+      boolean verified = verifier.verify(signatureBytes);
+      //only returned to the pool if it got this far, so a failed engine is never reused.
+      verifiers.offer(verifier);
+      if (!verified) {
         throw new InvalidSignatureException("Invalid signature for signature method " + getName());
       }
     }
@@ -35,7 +35,10 @@ import java.net.MalformedURLException;
  */
 public class CoreOAuthProviderSupport implements OAuthProviderSupport {
 
+  private static final String PARSED_PARAMETERS_ATTRIBUTE = CoreOAuthProviderSupport.class.getName() + ".PARSED_PARAMETERS";
+
   private final Set<String> supportedOAuthParameters;
+  private final boolean significantParametersOverridden = overridesSignificantParameters(getClass());
   private String baseUrl = null;
 
   public CoreOAuthProviderSupport() {
@@ -48,6 +51,18 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
 
   // Inherited.
   public Map<String, String> parseParameters(HttpServletRequest request) {
+    //the filter needs the parameters and then the signature base string, so only parse them once per request.
+    Object parsed = request.getAttribute(PARSED_PARAMETERS_ATTRIBUTE);
+    if (parsed instanceof ParsedParameters && ((ParsedParameters) parsed).support == this) {
+      return new HashMap<String, String>(((ParsedParameters) parsed).parameters);
+    }
+
+    Map<String, String> parameters = doParseParameters(request);
+    request.setAttribute(PARSED_PARAMETERS_ATTRIBUTE, new ParsedParameters(this, parameters));
+    return new HashMap<String, String>(parameters);
+  }
+
+  private Map<String, String> doParseParameters(HttpServletRequest request) {
     Map<String, String> parameters = parseHeaderParameters(request);
 
     if (parameters == null) {
@@ -115,22 +130,7 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
 
   // Inherited.
   public String getSignatureBaseString(HttpServletRequest request) {
-    SortedMap<String, SortedSet<String>> significantParameters = loadSignificantParametersForSignatureBaseString(request);
-
-    //now concatenate them into a single query string according to the spec.
-    StringBuilder queryString = new StringBuilder();
-    Iterator<Map.Entry<String, SortedSet<String>>> paramIt = significantParameters.entrySet().iterator();
-    while (paramIt.hasNext()) {
-      Map.Entry<String, SortedSet<String>> sortedParameter = paramIt.next();
-      Iterator<String> valueIt = sortedParameter.getValue().iterator();
-      while (valueIt.hasNext()) {
-        String parameterValue = valueIt.next();
-        queryString.append(sortedParameter.getKey()).append('=').append(parameterValue);
-        if (paramIt.hasNext() || valueIt.hasNext()) {
-          queryString.append('&');
-        }
-      }
-    }
+    SignificantParameter[] sortedParameters = loadSortedSignificantParameters(request);
 
     String url = getBaseUrl(request);
     if (url == null) {
@@ -138,10 +138,98 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
       url = request.getRequestURL().toString();
     }
     url = normalizeUrl(url);
-    url = oauthEncode(url);
 
-    String method = request.getMethod().toUpperCase();
-    return new StringBuilder(method).append('&').append(url).append('&').append(oauthEncode(queryString.toString())).toString();
+    //...then encode the method, URL and the concatenated parameters straight into the base string.
+    StringBuilder baseString = new StringBuilder(url.length() + 32 * (sortedParameters.length + 1));
+    baseString.append(request.getMethod().toUpperCase()).append('&');
+    oauthEncode(url, baseString).append('&');
+    String signatureParameter = OAuthConsumerParameter.oauth_signature.toString();
+    SignificantParameter previous = null;
+    for (SignificantParameter parameter : sortedParameters) {
+      if (parameter.name.equals(signatureParameter) || parameter.equals(previous)) {
+        //the signature isn't part of the base string, and a value given more than once only counts once.
+        continue;
+      }
+
+      if (previous != null) {
+        baseString.append("%26");
+      }
+      oauthEncode(parameter.name, baseString).append("%3D");
+      oauthEncode(parameter.value, baseString);
+      previous = parameter;
+    }
+
+    return baseString.toString();
+  }
+
+  /**
+   * Load the significant parameters, each encoded once per the spec section 9.1, as a flat sorted array. If a subclass
+   * customizes {@link #loadSignificantParametersForSignatureBaseString(HttpServletRequest)}, its result is used as is.
+   *
+   * @param request The request.
+   * @return The sorted significant parameters.
+   */
+  private SignificantParameter[] loadSortedSignificantParameters(HttpServletRequest request) {
+    List<SignificantParameter> significantParameters = new ArrayList<SignificantParameter>();
+    if (significantParametersOverridden) {
+      for (Map.Entry<String, SortedSet<String>> entry : loadSignificantParametersForSignatureBaseString(request).entrySet()) {
+        for (String value : entry.getValue()) {
+          significantParameters.add(new SignificantParameter(entry.getKey(), value));
+        }
+      }
+      return significantParameters.toArray(new SignificantParameter[significantParameters.size()]);
+    }
+
+    //collect the parameters into a flat array to sort, rather than a map of sorted sets...
+    StringBuilder encoder = new StringBuilder();
+    Enumeration parameterNames = request.getParameterNames();
+    while (parameterNames.hasMoreElements()) {
+      String parameterName = (String) parameterNames.nextElement();
+      String[] values = request.getParameterValues(parameterName);
+      if (values == null) {
+        values = new String[]{ "" };
+      }
+
+      parameterName = encode(parameterName, encoder);
+      for (String parameterValue : values) {
+        significantParameters.add(new SignificantParameter(parameterName, encode(parameterValue, encoder)));
+      }
+    }
+
+    for (Map.Entry<String, String> oauthParam : parseParameters(request).entrySet()) {
+      if (!"realm".equals(oauthParam.getKey())) {
+        significantParameters.add(new SignificantParameter(encode(oauthParam.getKey(), encoder), encode(oauthParam.getValue(), encoder)));
+      }
+    }
+
+    SignificantParameter[] sortedParameters = significantParameters.toArray(new SignificantParameter[significantParameters.size()]);
+    Arrays.sort(sortedParameters);
+    return sortedParameters;
+  }
+
+  /**
+   * Whether the given type, or a superclass below this one, overrides
+   * {@link #loadSignificantParametersForSignatureBaseString(HttpServletRequest)}.
+   *
+   * @param type The type.
+   * @return Whether the hook is overridden.
+   */
+  private static boolean overridesSignificantParameters(Class<?> type) {
+    for (Class<?> current = type; current != CoreOAuthProviderSupport.class; current = current.getSuperclass()) {
+      try {
+        current.getDeclaredMethod("loadSignificantParametersForSignatureBaseString", HttpServletRequest.class);
+        return true;
+      }
+      catch (NoSuchMethodException e) {
+        //not declared here, try the superclass.
+      }
+    }
+    return false;
+  }
+
+  private static String encode(String value, StringBuilder encoder) {
+    encoder.setLength(0);
+    return oauthEncode(value == null ? "" : value, encoder).toString();
   }
 
   /**
@@ -168,7 +256,8 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
 
   /**
    * Loads the significant parameters (name-to-value map) that are to be used to calculate the signature base string.
-   * The parameters will be encoded, per the spec section 9.1.
+   * The parameters will be encoded, per the spec section 9.1. The default base string sorts the parameters without
+   * this map, but calls it when a subclass overrides it.
    *
    * @param request The request.
    * @return The significan parameters.
@@ -265,4 +354,51 @@ public class CoreOAuthProviderSupport implements OAuthProviderSupport {
   public void setBaseUrl(String baseUrl) {
     this.baseUrl = baseUrl;
   }
+
+  /**
+   * An encoded parameter name and value, sorted by name and then value per the spec section 9.1.1.
+   */
+  private static class SignificantParameter implements Comparable<SignificantParameter> {
+
+    private final String name;
+    private final String value;
+
+    SignificantParameter(String name, String value) {
+      this.name = name;
+      this.value = value;
+    }
+
+    public int compareTo(SignificantParameter other) {
+      int result = name.compareTo(other.name);
+      return result != 0 ? result : value.compareTo(other.value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SignificantParameter)) {
+        return false;
+      }
+      SignificantParameter other = (SignificantParameter) obj;
+      return name.equals(other.name) && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * name.hashCode() + value.hashCode();
+    }
+  }
+
+  /**
+   * The parameters parsed from a request, remembered by the support that parsed them.
+   */
+  private static class ParsedParameters {
+
+    private final CoreOAuthProviderSupport support;
+    private final Map<String, String> parameters;
+
+    ParsedParameters(CoreOAuthProviderSupport support, Map<String, String> parameters) {
+      this.support = support;
+      this.parameters = parameters;
+    }
+  }
 }
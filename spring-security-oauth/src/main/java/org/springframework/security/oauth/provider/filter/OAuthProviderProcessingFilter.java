@@ -43,6 +43,8 @@ import org.springframework.security.oauth.provider.nonce.ExpiringTimestampNonceS
 import org.springframework.security.oauth.provider.nonce.OAuthNonceServices;
 import org.springframework.security.oauth.provider.token.OAuthProviderToken;
 import org.springframework.security.oauth.provider.token.OAuthProviderTokenServices;
+import org.springframework.security.oauth.provider.token.OAuthTokenLifecycleRegistry;
+import org.springframework.security.oauth.provider.token.SignatureMethodCacheEvictor;
 import org.springframework.util.Assert;
 
 import javax.servlet.*;
@@ -82,6 +84,10 @@ public abstract class OAuthProviderProcessingFilter implements Filter, Initializ
   public void afterPropertiesSet() throws Exception {
     Assert.notNull(consumerDetailsService, "A consumer details service is required.");
     Assert.notNull(tokenServices, "Token services are required.");
+    if (tokenServices instanceof OAuthTokenLifecycleRegistry && signatureMethodFactory instanceof CoreOAuthSignatureMethodFactory) {
+      //make sure signature methods cached for a token go when the token does.
+      ((OAuthTokenLifecycleRegistry) tokenServices).register(new SignatureMethodCacheEvictor((CoreOAuthSignatureMethodFactory) signatureMethodFactory));
+    }
   }
 
   public void init(FilterConfig ignored) throws ServletException {
@@ -490,7 +496,9 @@ public abstract class OAuthProviderProcessingFilter implements Filter, Initializ
   }
 
   /**
-   * The OAuth token services.
+   * The OAuth token services. If they are an {@link OAuthTokenLifecycleRegistry} and the signature method factory is
+   * a {@link CoreOAuthSignatureMethodFactory}, {@link #afterPropertiesSet()} registers a
+   * {@link SignatureMethodCacheEvictor} with them, so that signature methods cached for a token are dropped with it.
    *
    * @param tokenServices The OAuth token services.
    */
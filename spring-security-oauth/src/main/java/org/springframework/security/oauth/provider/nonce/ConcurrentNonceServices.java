@@ -0,0 +1,176 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.provider.nonce;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+
+/**
+ * Nonce services with the same replay protection as {@link InMemoryNonceServices}, but without a global lock. Nonces
+ * are kept in a ring of per-second buckets, one for each second of the validity window either side of the current
+ * time. A request only touches the bucket for its own timestamp, and a bucket is replaced wholesale when its slot is
+ * reused for a later second, so expiring old nonces costs nothing per nonce.<br/>
+ * <br/>
+ *
+ * Unlike {@link InMemoryNonceServices}, timestamps more than the validity window in the future are rejected (they
+ * could not be remembered for long enough to detect a replay), and each instance keeps its own nonces.<br/>
+ * <br/>
+ *
+ * Memory use is bounded by the request rate multiplied by the validity window. The number of nonces remembered for
+ * any one second can be capped with {@link #setMaxNoncesPerSecond(int)}; requests over the cap are rejected, because
+ * accepting a nonce that cannot be remembered would allow it to be replayed.
+ */
+public class ConcurrentNonceServices implements OAuthNonceServices {
+
+	// default to a 10 minute validity window like InMemoryNonceServices
+	private long validityWindowSeconds = 60 * 10;
+
+	private int maxNoncesPerSecond = 0;
+
+	private volatile AtomicReferenceArray<Bucket> buckets;
+
+	public void validateNonce(ConsumerDetails consumerDetails, long timestamp, String nonce) {
+		long now = System.currentTimeMillis() / 1000;
+		long window = getValidityWindowSeconds();
+		if (now - timestamp > window) {
+			throw new CredentialsExpiredException("Expired timestamp.");
+		}
+		if (timestamp - now > window) {
+			throw new CredentialsExpiredException("Timestamp too far in the future.");
+		}
+
+		Bucket bucket = getBucket(timestamp);
+		if (maxNoncesPerSecond > 0 && bucket.count.incrementAndGet() > maxNoncesPerSecond) {
+			bucket.count.decrementAndGet();
+			throw new NonceAlreadyUsedException("Too many nonces for timestamp: " + timestamp);
+		}
+		if (bucket.nonces.putIfAbsent(new NonceKey(consumerDetails.getConsumerKey(), nonce), Boolean.TRUE) != null) {
+			if (maxNoncesPerSecond > 0) {
+				bucket.count.decrementAndGet();
+			}
+			throw new NonceAlreadyUsedException("Nonce already used: " + nonce);
+		}
+	}
+
+	private Bucket getBucket(long timestamp) {
+		AtomicReferenceArray<Bucket> buckets = getBuckets();
+		int index = (int) (timestamp % buckets.length());
+		while (true) {
+			Bucket bucket = buckets.get(index);
+			if (bucket != null && bucket.timestamp == timestamp) {
+				return bucket;
+			}
+			if (bucket != null && bucket.timestamp > timestamp) {
+				// The slot has moved on, so this timestamp has just left the validity window
+				throw new CredentialsExpiredException("Expired timestamp.");
+			}
+			Bucket fresh = new Bucket(timestamp);
+			if (buckets.compareAndSet(index, bucket, fresh)) {
+				return fresh;
+			}
+		}
+	}
+
+	private AtomicReferenceArray<Bucket> getBuckets() {
+		AtomicReferenceArray<Bucket> result = buckets;
+		if (result == null) {
+			synchronized (this) {
+				result = buckets;
+				if (result == null) {
+					// one slot for each second in [now - window, now + window]
+					result = new AtomicReferenceArray<Bucket>((int) (2 * getValidityWindowSeconds() + 1));
+					buckets = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Set the timestamp validity window (in seconds).
+	 *
+	 * @return the timestamp validity window (in seconds).
+	 */
+	public long getValidityWindowSeconds() {
+		return validityWindowSeconds;
+	}
+
+	/**
+	 * The timestamp validity window (in seconds). Changing it forgets all the nonces seen so far.
+	 *
+	 * @param validityWindowSeconds the timestamp validity window (in seconds).
+	 */
+	public synchronized void setValidityWindowSeconds(long validityWindowSeconds) {
+		this.validityWindowSeconds = validityWindowSeconds;
+		this.buckets = null;
+	}
+
+	/**
+	 * The maximum number of nonces to remember for any one timestamp (default 0 for no limit).
+	 *
+	 * @param maxNoncesPerSecond the maximum number of nonces per second
+	 */
+	public void setMaxNoncesPerSecond(int maxNoncesPerSecond) {
+		this.maxNoncesPerSecond = maxNoncesPerSecond;
+	}
+
+	private static class Bucket {
+
+		private final long timestamp;
+
+		private final ConcurrentHashMap<NonceKey, Boolean> nonces = new ConcurrentHashMap<NonceKey, Boolean>();
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Bucket(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+	}
+
+	private static class NonceKey {
+
+		private final String consumerKey;
+
+		private final String nonce;
+
+		public NonceKey(String consumerKey, String nonce) {
+			this.consumerKey = consumerKey;
+			this.nonce = nonce;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * consumerKey.hashCode() + nonce.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof NonceKey)) {
+				return false;
+			}
+			NonceKey other = (NonceKey) obj;
+			return consumerKey.equals(other.consumerKey) && nonce.equals(other.nonce);
+		}
+
+	}
+
+}
@@ -20,19 +20,31 @@ import org.springframework.beans.factory.DisposableBean;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Implementation of TokenServices that stores tokens in memory. The token services will schedule a thread to do cleaning up of expired tokens.
+ * Implementation of TokenServices that stores tokens in memory. The token services will schedule a thread to do cleaning up of expired tokens.<br/><br/>
+ *
+ * Tokens are indexed by expiry in buckets (one minute wide by default), so the cleanup only looks at the buckets that
+ * have expired rather than at every token. Each run can be limited with {@link #setSweepMillis(long) sweepMillis}, in
+ * which case whatever it doesn't get to is left for the next one. A token is only removed if the store still holds the exact
+ * instance that was indexed, so a token that is stored again (e.g. authorized) while the cleanup is running is kept.
+ * Removed tokens are not taken out of the index straight away, they just drop out when their bucket is cleaned up.
  *
  * @author Ryan Heaton
  */
 public class InMemorySelfCleaningProviderTokenServices extends InMemoryProviderTokenServices implements DisposableBean {
 
+  private final ConcurrentHashMap<Long, ConcurrentHashMap<String, OAuthProviderTokenImpl>> expiryBuckets = new ConcurrentHashMap<Long, ConcurrentHashMap<String, OAuthProviderTokenImpl>>();
+
   private ScheduledExecutorService scheduler;
   private Integer cleanupIntervalSeconds;
+  private int bucketSeconds = 60;
+  private long sweepMillis = Long.MAX_VALUE;
+  private volatile boolean indexing;
 
   @Override
   public void afterPropertiesSet() throws Exception {
@@ -43,22 +55,107 @@ public class InMemorySelfCleaningProviderTokenServices extends InMemoryProviderT
     }
 
     if (cleanupIntervalSeconds > 0) {
+      indexing = true;
+      for (OAuthProviderTokenImpl tokenImpl : tokenStore.values()) {
+        index(tokenImpl.getValue(), tokenImpl);
+      }
       scheduler = Executors.newSingleThreadScheduledExecutor();
       Runnable cleanupLogic = new Runnable() {
         public void run() {
-          Iterator<Map.Entry<String, OAuthProviderTokenImpl>> entriesIt = tokenStore.entrySet().iterator();
-          while (entriesIt.hasNext()) {
-            Map.Entry<String, OAuthProviderTokenImpl> entry = entriesIt.next();
-            OAuthProviderTokenImpl tokenImpl = entry.getValue();
-            if (isExpired(tokenImpl)) {
-              //there's a race condition here, but we'll live with it for now.
-              entriesIt.remove();
-              onTokenRemoved(tokenImpl);
-            }
-          }
+          sweepExpiredTokens();
         }
       };
-      scheduler.scheduleAtFixedRate(cleanupLogic, getAccessTokenValiditySeconds(), cleanupIntervalSeconds, TimeUnit.SECONDS);
+      scheduler.scheduleWithFixedDelay(cleanupLogic, getAccessTokenValiditySeconds(), cleanupIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  @Override
+  protected OAuthProviderTokenImpl readToken(String token) {
+    // the stored instances are never changed, so the cleanup can tell when one has been replaced
+    OAuthProviderTokenImpl tokenImpl = super.readToken(token);
+    return tokenImpl == null ? null : tokenImpl.copy();
+  }
+
+  @Override
+  protected void storeToken(String tokenValue, OAuthProviderTokenImpl token) {
+    super.storeToken(tokenValue, token);
+    if (indexing) {
+      index(tokenValue, token);
+    }
+  }
+
+  /**
+   * Remove the tokens in the expired buckets, for at most {@link #setSweepMillis(long) sweepMillis} if it is set.
+   *
+   * @return The number of tokens removed.
+   */
+  public int sweepExpiredTokens() {
+    long now = System.currentTimeMillis();
+    long current = now / (bucketSeconds * 1000L);
+    int removed = 0;
+    int visited = 0;
+    for (Long bucketKey : expiryBuckets.keySet()) {
+      if (bucketKey >= current) {
+        continue;
+      }
+      ConcurrentHashMap<String, OAuthProviderTokenImpl> bucket = expiryBuckets.get(bucketKey);
+      if (bucket == null) {
+        continue;
+      }
+      Iterator<Map.Entry<String, OAuthProviderTokenImpl>> entries = bucket.entrySet().iterator();
+      while (entries.hasNext()) {
+        if ((++visited & 63) == 0 && System.currentTimeMillis() - now > sweepMillis) {
+          return removed;
+        }
+        Map.Entry<String, OAuthProviderTokenImpl> entry = entries.next();
+        entries.remove();
+        if (sweep(entry.getKey(), entry.getValue())) {
+          removed++;
+        }
+      }
+      // anything stored into the bucket after this is indexed again (see index)
+      expiryBuckets.remove(bucketKey, bucket);
+      for (Map.Entry<String, OAuthProviderTokenImpl> entry : bucket.entrySet()) {
+        if (sweep(entry.getKey(), entry.getValue())) {
+          removed++;
+        }
+      }
+    }
+    return removed;
+  }
+
+  private boolean sweep(String tokenValue, OAuthProviderTokenImpl tokenImpl) {
+    if (!isExpired(tokenImpl)) {
+      // the validity has been changed since it was indexed
+      if (tokenStore.get(tokenValue) == tokenImpl) {
+        index(tokenValue, tokenImpl);
+      }
+      return false;
+    }
+    if (tokenStore.remove(tokenValue, tokenImpl)) {
+      onTokenRemoved(tokenImpl);
+      return true;
+    }
+    return false;
+  }
+
+  private void index(String tokenValue, OAuthProviderTokenImpl tokenImpl) {
+    Long bucketKey = getExpiry(tokenImpl) / (bucketSeconds * 1000L);
+    while (true) {
+      ConcurrentHashMap<String, OAuthProviderTokenImpl> bucket = expiryBuckets.get(bucketKey);
+      if (bucket == null) {
+        bucket = new ConcurrentHashMap<String, OAuthProviderTokenImpl>();
+        ConcurrentHashMap<String, OAuthProviderTokenImpl> existing = expiryBuckets.putIfAbsent(bucketKey, bucket);
+        if (existing != null) {
+          bucket = existing;
+        }
+      }
+      bucket.put(tokenValue, tokenImpl);
+      if (expiryBuckets.get(bucketKey) == bucket) {
+        return;
+      }
+      // the cleanup took the bucket away while we were adding to it, so it might not have seen this token
+      bucket.remove(tokenValue, tokenImpl);
     }
   }
 
@@ -78,11 +175,35 @@ public class InMemorySelfCleaningProviderTokenServices extends InMemoryProviderT
   }
 
   /**
-   * The interval at which to schedule cleanup.
+   * The interval at which to schedule cleanup (default 3600).
    *
    * @param cleanupIntervalSeconds The interval at which to schedule cleanup.
    */
   public void setCleanupIntervalSeconds(Integer cleanupIntervalSeconds) {
     this.cleanupIntervalSeconds = cleanupIntervalSeconds;
   }
-}
\ No newline at end of file
+
+  /**
+   * The width (in seconds) of the buckets that tokens are indexed in by expiry (default 60). Tokens are cleaned up
+   * after the end of their bucket, so this is also how long an expired token can stay in memory. Set it before the
+   * services are initialized.
+   *
+   * @param bucketSeconds The width (in seconds) of the expiry buckets.
+   */
+  public void setBucketSeconds(int bucketSeconds) {
+    if (bucketSeconds <= 0) {
+      throw new IllegalArgumentException("Bucket width must be positive.");
+    }
+    this.bucketSeconds = bucketSeconds;
+  }
+
+  /**
+   * The longest (in milliseconds) that one run of the cleanup will keep going (default no limit). Set it together with
+   * a short {@link #setCleanupIntervalSeconds(Integer) cleanupIntervalSeconds} to spread the cleanup out.
+   *
+   * @param sweepMillis The longest (in milliseconds) that one run of the cleanup will keep going.
+   */
+  public void setSweepMillis(long sweepMillis) {
+    this.sweepMillis = sweepMillis;
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.provider.token;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth.common.CacheUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.SerializationUtils;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token services that store tokens in a database, so that any node of a cluster can serve any step of the OAuth flow.
+ * The default statements expect a table like this (HSQL syntax):<br/><br/>
+ *
+ * <pre>
+ * create table oauth_provider_token (
+ *   token_value VARCHAR(256) PRIMARY KEY,
+ *   secret VARCHAR(256),
+ *   consumer_key VARCHAR(256),
+ *   callback_url VARCHAR(1024),
+ *   verifier VARCHAR(256),
+ *   access_token BOOLEAN,
+ *   issued_at BIGINT,
+ *   expires_at BIGINT,
+ *   user_authentication LONGVARBINARY
+ * );
+ * create index oauth_provider_token_expires_at on oauth_provider_token (expires_at);
+ * </pre>
+ *
+ * Everything but the user authentication is kept in plain columns, so a row is small and a lookup is a single primary
+ * key read. The expiry of each token is written with the row, so expired tokens of both kinds can be deleted in batches
+ * with {@link #purgeExpiredTokens()} (schedule it on one or more nodes, it is safe to run concurrently). The expiry is
+ * worked out when the token is stored, so changing the validity settings only affects tokens stored afterwards.<br/><br/>
+ *
+ * Access tokens can optionally be cached in memory for a few seconds (see {@link #setReadCacheSeconds(int)}), which
+ * saves a query on every protected resource request. Request tokens are never cached, so the steps of the
+ * authorization flow always see the database.
+ */
+public class JdbcProviderTokenServices extends RandomValueProviderTokenServices {
+
+  private static final Log LOG = LogFactory.getLog(JdbcProviderTokenServices.class);
+
+  private static final String TOKEN_FIELDS = "token_value, secret, consumer_key, callback_url, verifier, access_token, issued_at, user_authentication";
+
+  private static final String EXPIRED_TOKEN_FIELDS = "token_value, secret, consumer_key, callback_url, verifier, access_token, issued_at";
+
+  private static final String DEFAULT_SELECT_TOKEN_STATEMENT = "select " + TOKEN_FIELDS + " from oauth_provider_token where token_value = ?";
+
+  private static final String DEFAULT_INSERT_TOKEN_STATEMENT = "insert into oauth_provider_token (secret, consumer_key, callback_url, verifier, access_token, issued_at, expires_at, user_authentication, token_value) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String DEFAULT_UPDATE_TOKEN_STATEMENT = "update oauth_provider_token set secret = ?, consumer_key = ?, callback_url = ?, verifier = ?, access_token = ?, issued_at = ?, expires_at = ?, user_authentication = ? where token_value = ?";
+
+  private static final String DEFAULT_DELETE_TOKEN_STATEMENT = "delete from oauth_provider_token where token_value = ?";
+
+  private static final String DEFAULT_SELECT_EXPIRED_TOKENS_STATEMENT = "select " + EXPIRED_TOKEN_FIELDS + " from oauth_provider_token where expires_at < ?";
+
+  private static final String DEFAULT_DELETE_EXPIRED_TOKEN_STATEMENT = "delete from oauth_provider_token where token_value = ? and expires_at < ?";
+
+  private static final String DEFAULT_DELETE_EXPIRED_TOKENS_STATEMENT = "delete from oauth_provider_token where expires_at < ?";
+
+  private static final int[] TOKEN_TYPES = new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+    Types.BOOLEAN, Types.BIGINT, Types.BIGINT, Types.BLOB, Types.VARCHAR };
+
+  private final RowMapper<OAuthProviderTokenImpl> tokenMapper = new TokenRowMapper(true);
+
+  private final RowMapper<OAuthProviderTokenImpl> expiredTokenMapper = new TokenRowMapper(false);
+
+  private final ConcurrentHashMap<String, CachedToken> readCache = new ConcurrentHashMap<String, CachedToken>();
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private String selectTokenSql = DEFAULT_SELECT_TOKEN_STATEMENT;
+
+  private String insertTokenSql = DEFAULT_INSERT_TOKEN_STATEMENT;
+
+  private String updateTokenSql = DEFAULT_UPDATE_TOKEN_STATEMENT;
+
+  private String deleteTokenSql = DEFAULT_DELETE_TOKEN_STATEMENT;
+
+  private String selectExpiredTokensSql = DEFAULT_SELECT_EXPIRED_TOKENS_STATEMENT;
+
+  private String deleteExpiredTokenSql = DEFAULT_DELETE_EXPIRED_TOKEN_STATEMENT;
+
+  private String deleteExpiredTokensSql = DEFAULT_DELETE_EXPIRED_TOKENS_STATEMENT;
+
+  private int purgeBatchSize = 1000;
+
+  private int readCacheSeconds = 0;
+
+  private int readCacheMaxSize = 10000;
+
+  public JdbcProviderTokenServices(DataSource dataSource) {
+    Assert.notNull(dataSource, "DataSource required");
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  protected OAuthProviderTokenImpl readToken(String token) {
+    CachedToken cached = readCacheSeconds > 0 ? readCache.get(token) : null;
+    if (cached != null) {
+      if (!cached.isExpired(System.currentTimeMillis())) {
+        return cached.token.copy();
+      }
+      readCache.remove(token, cached);
+    }
+
+    OAuthProviderTokenImpl tokenImpl = null;
+    try {
+      tokenImpl = jdbcTemplate.queryForObject(selectTokenSql, tokenMapper, token);
+    }
+    catch (EmptyResultDataAccessException e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Failed to find token " + token);
+      }
+    }
+
+    if (tokenImpl != null && tokenImpl.isAccessToken() && readCacheSeconds > 0) {
+      // access tokens are never stored again after they are created, so the cached token can't go stale until it is
+      // removed. Callers get a copy whether or not it was cached.
+      long now = System.currentTimeMillis();
+      CacheUtils.makeRoom(readCache, readCacheMaxSize, now);
+      readCache.put(token, new CachedToken(tokenImpl, now + (readCacheSeconds * 1000L)));
+      return tokenImpl.copy();
+    }
+    return tokenImpl;
+  }
+
+  protected void storeToken(String tokenValue, OAuthProviderTokenImpl token) {
+    readCache.remove(tokenValue);
+    Object[] args = new Object[] { token.getSecret(), token.getConsumerKey(), token.getCallbackUrl(),
+      token.getVerifier(), token.isAccessToken(), token.getTimestamp(), getExpiry(token),
+      new SqlLobValue(serializeAuthentication(token.getUserAuthentication())), tokenValue };
+    // new tokens have fresh random values, so an update only misses when the token is being created
+    if (jdbcTemplate.update(updateTokenSql, args, TOKEN_TYPES) == 0) {
+      jdbcTemplate.update(insertTokenSql, args, TOKEN_TYPES);
+    }
+  }
+
+  protected OAuthProviderTokenImpl removeToken(String tokenValue) {
+    readCache.remove(tokenValue);
+    OAuthProviderTokenImpl tokenImpl = null;
+    try {
+      tokenImpl = jdbcTemplate.queryForObject(selectTokenSql, tokenMapper, tokenValue);
+    }
+    catch (EmptyResultDataAccessException e) {
+      return null;
+    }
+    // if another node got there first it is the one that removed the token
+    return jdbcTemplate.update(deleteTokenSql, tokenValue) > 0 ? tokenImpl : null;
+  }
+
+  /**
+   * Delete all the tokens that have expired. If every lifecycle listener is an {@link OAuthTokenPurgeListener} (or
+   * there are none) they are deleted with a single statement and the listeners are told that tokens were purged.
+   * Otherwise the expired tokens are read and deleted in JDBC batches of {@link #setPurgeBatchSize(int) purgeBatchSize}
+   * so that each listener can be told about each of them. The tokens the listeners are given don't have their user
+   * authentication, so that it doesn't have to be read and deserialized.
+   *
+   * @return The number of tokens deleted.
+   */
+  public int purgeExpiredTokens() {
+    final long now = System.currentTimeMillis();
+    Collection<OAuthTokenLifecycleListener> listeners = getLifecycleListeners();
+    if (onlyPurgeListeners(listeners)) {
+      int purged = jdbcTemplate.update(deleteExpiredTokensSql, now);
+      if (purged > 0) {
+        for (OAuthTokenLifecycleListener listener : listeners) {
+          ((OAuthTokenPurgeListener) listener).tokensPurged();
+        }
+      }
+      return purged;
+    }
+
+    int purged = 0;
+    JdbcTemplate batchTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+    batchTemplate.setMaxRows(purgeBatchSize);
+    while (true) {
+      List<OAuthProviderTokenImpl> expired = batchTemplate.query(selectExpiredTokensSql, expiredTokenMapper, now);
+      if (expired.isEmpty()) {
+        return purged;
+      }
+
+      List<Object[]> args = new ArrayList<Object[]>(expired.size());
+      for (OAuthProviderTokenImpl tokenImpl : expired) {
+        readCache.remove(tokenImpl.getValue());
+        // still checks the expiry, so a token that was stored again in the meantime is left alone
+        args.add(new Object[] { tokenImpl.getValue(), now });
+      }
+      int[] counts = jdbcTemplate.batchUpdate(deleteExpiredTokenSql, args);
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+          purged++;
+          onTokenRemoved(expired.get(i));
+        }
+      }
+      if (expired.size() < purgeBatchSize) {
+        return purged;
+      }
+    }
+  }
+
+  private static boolean onlyPurgeListeners(Collection<OAuthTokenLifecycleListener> listeners) {
+    for (OAuthTokenLifecycleListener listener : listeners) {
+      if (!(listener instanceof OAuthTokenPurgeListener)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Serialize the user authentication for storage.
+   *
+   * @param authentication The authentication (possibly null).
+   * @return The serialized authentication (or null).
+   */
+  protected byte[] serializeAuthentication(Authentication authentication) {
+    return SerializationUtils.serialize(authentication);
+  }
+
+  /**
+   * Deserialize a stored user authentication.
+   *
+   * @param authentication The serialized authentication (possibly null).
+   * @return The authentication (or null).
+   */
+  protected Authentication deserializeAuthentication(byte[] authentication) {
+    return (Authentication) SerializationUtils.deserialize(authentication);
+  }
+
+  /**
+   * The number of expired tokens to read at a time when purging (default 1000).
+   *
+   * @param purgeBatchSize The number of expired tokens to read at a time when purging.
+   */
+  public void setPurgeBatchSize(int purgeBatchSize) {
+    Assert.isTrue(purgeBatchSize > 0, "Purge batch size must be positive");
+    this.purgeBatchSize = purgeBatchSize;
+  }
+
+  /**
+   * How long (in seconds) to cache access tokens after they are read (default 0 for no caching). An access token
+   * removed on another node can still be used on this one for this long.
+   *
+   * @param readCacheSeconds How long (in seconds) to cache access tokens after they are read.
+   */
+  public void setReadCacheSeconds(int readCacheSeconds) {
+    this.readCacheSeconds = readCacheSeconds;
+    if (readCacheSeconds <= 0) {
+      readCache.clear();
+    }
+  }
+
+  /**
+   * The maximum number of access tokens to cache (default 10000).
+   *
+   * @param readCacheMaxSize The maximum number of access tokens to cache.
+   */
+  public void setReadCacheMaxSize(int readCacheMaxSize) {
+    Assert.isTrue(readCacheMaxSize > 0, "Read cache size must be positive");
+    this.readCacheMaxSize = readCacheMaxSize;
+  }
+
+  public void setSelectTokenSql(String selectTokenSql) {
+    this.selectTokenSql = selectTokenSql;
+  }
+
+  public void setInsertTokenSql(String insertTokenSql) {
+    this.insertTokenSql = insertTokenSql;
+  }
+
+  public void setUpdateTokenSql(String updateTokenSql) {
+    this.updateTokenSql = updateTokenSql;
+  }
+
+  public void setDeleteTokenSql(String deleteTokenSql) {
+    this.deleteTokenSql = deleteTokenSql;
+  }
+
+  public void setSelectExpiredTokensSql(String selectExpiredTokensSql) {
+    this.selectExpiredTokensSql = selectExpiredTokensSql;
+  }
+
+  public void setDeleteExpiredTokenSql(String deleteExpiredTokenSql) {
+    this.deleteExpiredTokenSql = deleteExpiredTokenSql;
+  }
+
+  public void setDeleteExpiredTokensSql(String deleteExpiredTokensSql) {
+    this.deleteExpiredTokensSql = deleteExpiredTokensSql;
+  }
+
+  private class TokenRowMapper implements RowMapper<OAuthProviderTokenImpl> {
+
+    private final boolean withAuthentication;
+
+    TokenRowMapper(boolean withAuthentication) {
+      this.withAuthentication = withAuthentication;
+    }
+
+    public OAuthProviderTokenImpl mapRow(ResultSet rs, int rowNum) throws SQLException {
+      OAuthProviderTokenImpl token = new OAuthProviderTokenImpl();
+      token.setValue(rs.getString(1));
+      token.setSecret(rs.getString(2));
+      token.setConsumerKey(rs.getString(3));
+      token.setCallbackUrl(rs.getString(4));
+      token.setVerifier(rs.getString(5));
+      token.setAccessToken(rs.getBoolean(6));
+      token.setTimestamp(rs.getLong(7));
+      if (withAuthentication) {
+        token.setUserAuthentication(deserializeAuthentication(rs.getBytes(8)));
+      }
+      return token;
+    }
+  }
+
+  private static class CachedToken implements CacheUtils.Expiring {
+
+    private final OAuthProviderTokenImpl token;
+
+    private final long expiry;
+
+    public CachedToken(OAuthProviderTokenImpl token, long expiry) {
+      this.token = token;
+      this.expiry = expiry;
+    }
+
+    public boolean isExpired(long now) {
+      return expiry <= now;
+    }
+  }
+}
@@ -23,7 +23,7 @@ import org.springframework.security.core.Authentication;
  *
  * @author Ryan Heaton
  */
-public class OAuthProviderTokenImpl implements OAuthAccessProviderToken {
+public class OAuthProviderTokenImpl implements OAuthAccessProviderToken, Cloneable {
 
   private static final long serialVersionUID = -1794426591002744140L;
 
@@ -180,4 +180,19 @@ public class OAuthProviderTokenImpl implements OAuthAccessProviderToken {
     this.timestamp = timestamp;
   }
 
+  /**
+   * A copy of this token (of the same class, with all its fields), for token services that must not hand out the
+   * instance they store. The user authentication is shared with the copy.
+   *
+   * @return A copy of this token.
+   */
+  public OAuthProviderTokenImpl copy() {
+    try {
+      return (OAuthProviderTokenImpl) super.clone();
+    }
+    catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
 }
@@ -0,0 +1,14 @@
+package org.springframework.security.oauth.provider.token;
+
+/**
+ * A lifecycle listener that doesn't need to be told about each token when expired tokens are purged in bulk, so that
+ * token services can delete them with a single statement and then just say that it happened.
+ */
+public interface OAuthTokenPurgeListener extends OAuthTokenLifecycleListener {
+
+  /**
+   * Lifecycle event for expired tokens purged in bulk, instead of {@link #tokenExpired(OAuthProviderToken)} for each.
+   */
+  void tokensPurged();
+
+}
@@ -100,18 +100,18 @@ public abstract class RandomValueProviderTokenServices implements OAuthProviderT
    * @return Whether the auth token is expired. 
    */
   protected boolean isExpired(OAuthProviderTokenImpl authToken) {
-    if (authToken.isAccessToken()) {
-      if ((authToken.getTimestamp() + (getAccessTokenValiditySeconds() * 1000L)) < System.currentTimeMillis()) {
-        return true;
-      }
-    }
-    else {
-      if ((authToken.getTimestamp() + (getRequestTokenValiditySeconds() * 1000L)) < System.currentTimeMillis()) {
-        return true;
-      }
-    }
+    return getExpiry(authToken) < System.currentTimeMillis();
+  }
 
-    return false;
+  /**
+   * The time at which the auth token expires, with the current validity settings.
+   *
+   * @param authToken The auth token.
+   * @return The expiry time of the auth token in milliseconds.
+   */
+  protected long getExpiry(OAuthProviderTokenImpl authToken) {
+    int validitySeconds = authToken.isAccessToken() ? getAccessTokenValiditySeconds() : getRequestTokenValiditySeconds();
+    return authToken.getTimestamp() + (validitySeconds * 1000L);
   }
 
   public OAuthProviderToken createUnauthorizedRequestToken(String consumerKey, String callbackUrl) throws AuthenticationException {
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2008 Web Cohesion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth.provider.token;
+
+import org.springframework.security.oauth.common.signature.CoreOAuthSignatureMethodFactory;
+
+/**
+ * Lifecycle listener that makes a signature method factory forget what it cached for a token once the token has been
+ * removed. {@link org.springframework.security.oauth.provider.filter.OAuthProviderProcessingFilter} registers one with
+ * its token services when it can. When expired tokens are purged in bulk it forgets all the token secrets, which is
+ * cheaper than reading back the secret of each token.
+ */
+public class SignatureMethodCacheEvictor implements OAuthTokenPurgeListener {
+
+  private final CoreOAuthSignatureMethodFactory signatureMethodFactory;
+
+  public SignatureMethodCacheEvictor(CoreOAuthSignatureMethodFactory signatureMethodFactory) {
+    this.signatureMethodFactory = signatureMethodFactory;
+  }
+
+  public void tokenCreated(OAuthProviderToken token) {
+    //nothing cached yet.
+  }
+
+  public void tokenExpired(OAuthProviderToken token) {
+    if (token != null) {
+      signatureMethodFactory.evictTokenSecret(token.getSecret());
+    }
+  }
+
+  public void tokensPurged() {
+    signatureMethodFactory.evictTokenSecrets();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    //one per factory is enough, however many filters share it.
+    return obj instanceof SignatureMethodCacheEvictor && ((SignatureMethodCacheEvictor) obj).signatureMethodFactory == signatureMethodFactory;
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(signatureMethodFactory);
+  }
+}
@@ -41,4 +41,17 @@ public class TestOAuthCodec {
 		assertFalse(original.equals(decoded));
 	}
 
+	/**
+	 * tests encoding reserved and non-ascii characters.
+	 */
+	@Test
+	public void testEncode() throws Exception {
+		assertEquals("abcXYZ019-._~", OAuthCodec.oauthEncode("abcXYZ019-._~"));
+		assertEquals("%20%2A%2B%2F%3D%25%26", OAuthCodec.oauthEncode(" *+/=%&"));
+		assertEquals("caf%C3%A9%E2%82%AC%F0%9F%98%80", OAuthCodec.oauthEncode("caf\u00e9\u20ac\ud83d\ude00"));
+		assertEquals("%3F", OAuthCodec.oauthEncode("\ud83d"));
+		assertEquals("", OAuthCodec.oauthEncode(null));
+		assertEquals("x=a%20b", OAuthCodec.oauthEncode("a b", new StringBuilder("x=")).toString());
+	}
+
 }
@@ -17,6 +17,8 @@
 package org.springframework.security.oauth.common.signature;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -28,6 +30,7 @@ import javax.crypto.spec.SecretKeySpec;
 
 import org.junit.Test;
 import org.springframework.security.oauth.provider.token.OAuthProviderTokenImpl;
+import org.springframework.security.oauth.provider.token.SignatureMethodCacheEvictor;
 
 /**
  * @author Ryan Heaton
@@ -82,4 +85,70 @@ public class TestCoreOAuthSignatureMethodFactory {
 		assertEquals(keyPair.getPublic(), ((RSA_SHA1SignatureMethod) signatureMethod).getPublicKey());
 	}
 
+	/**
+	 * tests caching HMAC-SHA1 signature methods until the token goes.
+	 */
+	@Test
+	public void testHMACSignatureMethodCache() throws Exception {
+		CoreOAuthSignatureMethodFactory factory = new CoreOAuthSignatureMethodFactory();
+		SharedConsumerSecret sharedSecret = new SharedConsumerSecretImpl("consumer_shhhhhhhhhh");
+		OAuthProviderTokenImpl token = new OAuthProviderTokenImpl();
+		token.setSecret("token_SHHHHHHHHHHHHHH");
+
+		OAuthSignatureMethod signatureMethod = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, token.getSecret());
+		assertSame(signatureMethod, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, token.getSecret()));
+		assertNotSame(signatureMethod, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				new SharedConsumerSecretImpl("other"), token.getSecret()));
+
+		// The cached method still signs like a new one
+		String signature = signatureMethod.sign("base");
+		assertEquals(signature, signatureMethod.sign("base"));
+		signatureMethod.verify("base", signature);
+
+		new SignatureMethodCacheEvictor(factory).tokenExpired(token);
+		assertNotSame(signatureMethod, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, token.getSecret()));
+
+		// a bulk purge forgets every token secret, but not the consumer-only methods
+		signatureMethod = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret,
+				token.getSecret());
+		OAuthSignatureMethod consumerOnly = factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, null);
+		new SignatureMethodCacheEvictor(factory).tokensPurged();
+		assertNotSame(signatureMethod, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME,
+				sharedSecret, token.getSecret()));
+		assertSame(consumerOnly, factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret,
+				null));
+
+		factory.setHmacCacheSize(0);
+		assertNotSame(factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, null),
+				factory.getSignatureMethod(HMAC_SHA1SignatureMethod.SIGNATURE_NAME, sharedSecret, null));
+	}
+
+	/**
+	 * tests caching RSA-SHA1 signature methods for the same keys.
+	 */
+	@Test
+	public void testRSASignatureMethodCache() throws Exception {
+		CoreOAuthSignatureMethodFactory factory = new CoreOAuthSignatureMethodFactory();
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(1024);
+		KeyPair keyPair = generator.generateKeyPair();
+		OAuthSignatureMethod signatureMethod = factory.getSignatureMethod(RSA_SHA1SignatureMethod.SIGNATURE_NAME,
+				new RSAKeySecret(keyPair.getPublic()), null);
+		assertSame(signatureMethod, factory.getSignatureMethod(RSA_SHA1SignatureMethod.SIGNATURE_NAME,
+				new RSAKeySecret(keyPair.getPublic()), null));
+		// a secret parsed again from the encoded key shares the method
+		assertSame(signatureMethod, factory.getSignatureMethod(RSA_SHA1SignatureMethod.SIGNATURE_NAME,
+				new RSAKeySecret(keyPair.getPublic().getEncoded()), null));
+		assertNotSame(signatureMethod, factory.getSignatureMethod(RSA_SHA1SignatureMethod.SIGNATURE_NAME,
+				new RSAKeySecret(keyPair.getPrivate(), keyPair.getPublic()), null));
+
+		factory.setRsaCacheSize(0);
+		assertNotSame(signatureMethod, factory.getSignatureMethod(RSA_SHA1SignatureMethod.SIGNATURE_NAME,
+				new RSAKeySecret(keyPair.getPublic()), null));
+	}
+
 }
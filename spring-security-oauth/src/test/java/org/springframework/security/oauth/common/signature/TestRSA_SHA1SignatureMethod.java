@@ -16,8 +16,10 @@
 
 package org.springframework.security.oauth.common.signature;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.security.KeyPair;
@@ -25,6 +27,12 @@ import java.security.KeyPairGenerator;
 import java.security.Signature;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -92,4 +100,40 @@ public class TestRSA_SHA1SignatureMethod {
 		assertNotNull(secret);
 	}
 
+	/**
+	 * tests sharing one signature method between threads, including after a bad signature.
+	 */
+	@Test
+	public void testConcurrentSignAndVerify() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(1024);
+		KeyPair keyPair = generator.generateKeyPair();
+		final RSA_SHA1SignatureMethod signatureMethod = new RSA_SHA1SignatureMethod(keyPair.getPrivate(),
+				keyPair.getPublic());
+
+		try {
+			signatureMethod.verify("base", signatureMethod.sign("other"));
+			fail("should fail with a signature for another base string.");
+		}
+		catch (InvalidSignatureException e) {
+			// fall thru...
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < 40; i++) {
+			final String baseString = "base" + i;
+			results.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					signatureMethod.verify(baseString, signatureMethod.sign(baseString));
+					return true;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+		executor.shutdown();
+	}
+
 }
@@ -17,17 +17,26 @@
 package org.springframework.security.oauth.provider;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.security.oauth.common.OAuthConsumerParameter;
@@ -41,6 +50,9 @@ public class TestCoreOAuthProviderSupport {
 	@Mock
 	private HttpServletRequest request;
 
+	@Captor
+	private ArgumentCaptor<Object> attribute;
+
 	/**
 	 * tests parsing parameters.
 	 */
@@ -102,4 +114,73 @@ public class TestCoreOAuthProviderSupport {
 				baseString);
 	}
 
+	/**
+	 * tests that parameters are sorted by encoded name and then value, with repeated values only counted once.
+	 */
+	@Test
+	public void testGetSignatureBaseStringOrdering() throws Exception {
+		Map<String, String[]> requestParameters = new LinkedHashMap<String, String[]>();
+		requestParameters.put("a-b", new String[] { "2" });
+		requestParameters.put("a", new String[] { "z", "y", "z" });
+		requestParameters.put("oauth_consumer_key", new String[] { "key" });
+		requestParameters.put("oauth_signature", new String[] { "sig" });
+
+		when(request.getParameterNames()).thenReturn(Collections.enumeration(requestParameters.keySet()));
+		for (String key : requestParameters.keySet()) {
+			when(request.getParameterValues(key)).thenReturn(requestParameters.get(key));
+		}
+		when(request.getHeaders("Authorization")).thenReturn(Collections.enumeration(Collections.<String> emptyList()));
+		when(request.getParameter("oauth_consumer_key")).thenReturn("key");
+		when(request.getParameter("oauth_signature")).thenReturn("sig");
+		when(request.getMethod()).thenReturn("post");
+		when(request.getRequestURL()).thenReturn(new StringBuffer("HTTP://Photos.Example.NET:80/photos?size=1"));
+
+		String baseString = new CoreOAuthProviderSupport().getSignatureBaseString(request);
+		assertEquals("POST&http%3A%2F%2Fphotos.example.net%2Fphotos&a%3Dy%26a%3Dz%26a-b%3D2%26oauth_consumer_key%3Dkey",
+				baseString);
+	}
+
+	/**
+	 * tests that a subclass customizing the significant parameters is still honored.
+	 */
+	@Test
+	public void testGetSignatureBaseStringWithCustomParameters() throws Exception {
+		when(request.getParameterNames()).thenReturn(Collections.enumeration(Arrays.asList("file")));
+		when(request.getParameterValues("file")).thenReturn(new String[] { "vacation.jpg" });
+		when(request.getHeaders("Authorization")).thenReturn(
+				Collections.enumeration(Arrays.asList("OAuth oauth_consumer_key=\"key\"")));
+		when(request.getMethod()).thenReturn("GET");
+		when(request.getRequestURL()).thenReturn(new StringBuffer("http://photos.example.net/photos"));
+
+		CoreOAuthProviderSupport support = new CoreOAuthProviderSupport() {
+			@Override
+			protected SortedMap<String, SortedSet<String>> loadSignificantParametersForSignatureBaseString(
+					HttpServletRequest request) {
+				SortedMap<String, SortedSet<String>> parameters = super
+						.loadSignificantParametersForSignatureBaseString(request);
+				parameters.remove("file");
+				parameters.put("extra", new TreeSet<String>(Arrays.asList("b", "a")));
+				return parameters;
+			}
+		};
+		assertEquals("GET&http%3A%2F%2Fphotos.example.net%2Fphotos&extra%3Da%26extra%3Db%26oauth_consumer_key%3Dkey",
+				support.getSignatureBaseString(request));
+	}
+
+	/**
+	 * tests that the authorization header is only parsed once per request.
+	 */
+	@Test
+	public void testParseParametersOnce() throws Exception {
+		CoreOAuthProviderSupport support = new CoreOAuthProviderSupport();
+		when(request.getHeaders("Authorization")).thenReturn(
+				Collections.enumeration(Arrays.asList("OAuth oauth_consumer_key=\"0685bd9184jfhq22\"")));
+		Map<String, String> params = support.parseParameters(request);
+		verify(request).setAttribute(anyString(), attribute.capture());
+		when(request.getAttribute(anyString())).thenReturn(attribute.getValue());
+		params.clear();
+		assertEquals("0685bd9184jfhq22", support.parseParameters(request).get("oauth_consumer_key"));
+		verify(request, times(1)).getHeaders("Authorization");
+	}
+
 }
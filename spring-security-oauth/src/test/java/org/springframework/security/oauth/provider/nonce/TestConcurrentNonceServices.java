@@ -0,0 +1,113 @@
+package org.springframework.security.oauth.provider.nonce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.oauth.provider.BaseConsumerDetails;
+import org.springframework.security.oauth.provider.ConsumerDetails;
+
+public class TestConcurrentNonceServices {
+
+	private long now;
+	private final ConcurrentNonceServices nonceServices = new ConcurrentNonceServices();
+
+	@Before
+	public void setUp() throws Exception {
+		// seconds since epoch, reset for every test
+		now = System.currentTimeMillis() / 1000;
+		nonceServices.setValidityWindowSeconds(10);
+	}
+
+	@Test
+	public void shouldAcceptSameNonceWithDifferentTimestamp() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now+5, nonce);
+	}
+
+	@Test(expected=NonceAlreadyUsedException.class)
+	public void shouldRejectAlreadyUsedNonceWithSameTimestamp() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+	}
+
+	@Test(expected=CredentialsExpiredException.class)
+	public void shouldRejectTooOldTimestamp() {
+		nonceServices.validateNonce(consumer("foo"), now-11, nonce());
+	}
+
+	@Test(expected=CredentialsExpiredException.class)
+	public void shouldRejectTimestampTooFarInFuture() {
+		nonceServices.validateNonce(consumer("foo"), now+11, nonce());
+	}
+
+	@Test
+	public void shouldAcceptSameNonceFromDifferentConsumers() {
+		String nonce = nonce();
+		nonceServices.validateNonce(consumer("foo"), now, nonce);
+		nonceServices.validateNonce(consumer("bar"), now, nonce);
+	}
+
+	@Test(expected=NonceAlreadyUsedException.class)
+	public void shouldRejectNoncesOverLimit() {
+		nonceServices.setMaxNoncesPerSecond(2);
+		nonceServices.validateNonce(consumer("foo"), now, nonce());
+		nonceServices.validateNonce(consumer("foo"), now, nonce());
+		nonceServices.validateNonce(consumer("foo"), now, nonce());
+	}
+
+	@Test
+	public void shouldAcceptNonceOnlyOnceWhenConcurrent() throws Exception {
+		final String nonce = nonce();
+		final CountDownLatch start = new CountDownLatch(1);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					start.await();
+					try {
+						nonceServices.validateNonce(consumer("foo"), now, nonce);
+						return true;
+					}
+					catch (NonceAlreadyUsedException e) {
+						return false;
+					}
+				}
+			}));
+		}
+		start.countDown();
+		int accepted = 0;
+		for (Future<Boolean> result : results) {
+			if (result.get(10, TimeUnit.SECONDS)) {
+				accepted++;
+			}
+		}
+		executor.shutdown();
+		assertEquals(1, accepted);
+	}
+
+	private String nonce() {
+		return UUID.randomUUID().toString();
+	}
+
+	private ConsumerDetails consumer(String name) {
+		BaseConsumerDetails details = new BaseConsumerDetails();
+		details.setConsumerKey(name);
+		return details;
+	}
+}
@@ -0,0 +1,136 @@
+package org.springframework.security.oauth.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInMemorySelfCleaningProviderTokenServices {
+
+	private final InMemorySelfCleaningProviderTokenServices services = new InMemorySelfCleaningProviderTokenServices();
+
+	private final List<String> removed = new ArrayList<String>();
+
+	@Before
+	public void setUp() throws Exception {
+		// the sweeps are run by hand
+		services.setCleanupIntervalSeconds(3600);
+		services.setBucketSeconds(1);
+		services.register(new OAuthTokenLifecycleListener() {
+			public void tokenCreated(OAuthProviderToken token) {
+			}
+
+			public void tokenExpired(OAuthProviderToken token) {
+				removed.add(token.getValue());
+			}
+		});
+		services.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		services.destroy();
+	}
+
+	@Test
+	public void testSweepRemovesOnlyExpiredTokens() throws Exception {
+		OAuthProviderToken expired = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		backdate(expired.getValue());
+		OAuthProviderToken current = services.createUnauthorizedRequestToken("consumer", "http://callback");
+
+		assertEquals(1, services.sweepExpiredTokens());
+		assertEquals(1, removed.size());
+		assertEquals(expired.getValue(), removed.get(0));
+		assertNull(services.readToken(expired.getValue()));
+		assertNotNull(services.readToken(current.getValue()));
+		assertEquals(0, services.sweepExpiredTokens());
+	}
+
+	@Test
+	public void testSweepKeepsTokenStoredAgain() throws Exception {
+		OAuthProviderToken token = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		backdate(token.getValue());
+
+		// stored again (as if authorized) after it was indexed as expired
+		OAuthProviderTokenImpl stored = services.readToken(token.getValue());
+		stored.setTimestamp(System.currentTimeMillis());
+		services.storeToken(token.getValue(), stored);
+
+		assertEquals(0, services.sweepExpiredTokens());
+		assertNotNull(services.readToken(token.getValue()));
+		assertTrue(removed.isEmpty());
+	}
+
+	@Test
+	public void testReadTokenDoesNotExposeStoredInstance() throws Exception {
+		OAuthProviderToken token = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		OAuthProviderTokenImpl read = services.readToken(token.getValue());
+		read.setVerifier("changed");
+		assertNull(services.readToken(token.getValue()).getVerifier());
+	}
+
+	@Test
+	public void testReadTokenCopiesSubclass() throws Exception {
+		ExtendedToken token = new ExtendedToken();
+		token.setValue("extended");
+		token.setTimestamp(System.currentTimeMillis());
+		token.extra = "extra";
+		services.storeToken(token.getValue(), token);
+
+		OAuthProviderTokenImpl read = services.readToken(token.getValue());
+		assertNotSame(token, read);
+		assertEquals("extra", ((ExtendedToken) read).extra);
+	}
+
+	@Test
+	public void testDefaultCleanupInterval() throws Exception {
+		InMemorySelfCleaningProviderTokenServices defaults = new InMemorySelfCleaningProviderTokenServices();
+		defaults.afterPropertiesSet();
+		try {
+			assertEquals(Integer.valueOf(3600), defaults.getCleanupIntervalSeconds());
+		}
+		finally {
+			defaults.destroy();
+		}
+	}
+
+	@Test
+	public void testSweepIsTimeBoxed() throws Exception {
+		services.setSweepMillis(-1);
+		for (int i = 0; i < 1000; i++) {
+			backdate(services.createUnauthorizedRequestToken("consumer", "http://callback").getValue());
+		}
+
+		int sweeps = 0;
+		int total = 0;
+		while (total < 1000) {
+			int count = services.sweepExpiredTokens();
+			assertTrue("Sweep should stop early: " + count, count < 1000);
+			total += count;
+			sweeps++;
+		}
+		assertTrue(sweeps > 1);
+		assertEquals(1000, removed.size());
+		assertTrue(services.tokenStore.isEmpty());
+	}
+
+	@SuppressWarnings("serial")
+	private static class ExtendedToken extends OAuthProviderTokenImpl {
+		private String extra;
+	}
+
+	private void backdate(String value) {
+		OAuthProviderTokenImpl token = services.readToken(value);
+		token.setTimestamp(System.currentTimeMillis() - (services.getRequestTokenValiditySeconds() + 10) * 1000L);
+		services.storeToken(value, token);
+	}
+
+}
@@ -0,0 +1,224 @@
+package org.springframework.security.oauth.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+public class TestJdbcProviderTokenServices {
+
+	private EmbeddedDatabase db;
+
+	private JdbcProviderTokenServices services;
+
+	private final Authentication user = new UsernamePasswordAuthenticationToken("marissa", "koala",
+			AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER"));
+
+	@Before
+	public void setUp() throws Exception {
+		// creates a HSQL in-memory db populated from default scripts classpath:schema.sql and classpath:data.sql
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		services = new JdbcProviderTokenServices(db);
+		services.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.shutdown();
+	}
+
+	@Test
+	public void testAuthorizationFlow() throws Exception {
+		OAuthProviderToken requestToken = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		OAuthProviderToken read = services.getToken(requestToken.getValue());
+		assertEquals(requestToken.getSecret(), read.getSecret());
+		assertEquals("http://callback", read.getCallbackUrl());
+		assertFalse(read.isAccessToken());
+		assertNull(read.getUserAuthentication());
+
+		services.authorizeRequestToken(requestToken.getValue(), "verifier", user);
+		read = services.getToken(requestToken.getValue());
+		assertEquals("verifier", read.getVerifier());
+		assertEquals("marissa", read.getUserAuthentication().getName());
+
+		OAuthAccessProviderToken accessToken = services.createAccessToken(requestToken.getValue());
+		read = services.getToken(accessToken.getValue());
+		assertTrue(read.isAccessToken());
+		assertEquals("consumer", read.getConsumerKey());
+		assertEquals(accessToken.getSecret(), read.getSecret());
+		assertEquals("marissa", read.getUserAuthentication().getName());
+
+		try {
+			services.getToken(requestToken.getValue());
+			fail("Request token should have been removed");
+		}
+		catch (InvalidOAuthTokenException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = ExpiredOAuthTokenException.class)
+	public void testExpiredToken() throws Exception {
+		services.setRequestTokenValiditySeconds(-1);
+		OAuthProviderToken requestToken = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		services.getToken(requestToken.getValue());
+	}
+
+	@Test
+	public void testPurgeExpiredTokens() throws Exception {
+		services.setRequestTokenValiditySeconds(-1);
+		for (int i = 0; i < 5; i++) {
+			services.createUnauthorizedRequestToken("consumer", "http://callback");
+		}
+		services.setRequestTokenValiditySeconds(60);
+		OAuthProviderToken current = services.createUnauthorizedRequestToken("consumer", "http://callback");
+
+		assertEquals(5, services.purgeExpiredTokens());
+		assertEquals(0, services.purgeExpiredTokens());
+		assertEquals(current.getSecret(), services.getToken(current.getValue()).getSecret());
+	}
+
+	@Test
+	public void testPurgeExpiredTokensInBatchesWithListener() throws Exception {
+		final List<String> removed = new ArrayList<String>();
+		services.register(new OAuthTokenLifecycleListener() {
+			public void tokenCreated(OAuthProviderToken token) {
+			}
+
+			public void tokenExpired(OAuthProviderToken token) {
+				removed.add(token.getValue());
+			}
+		});
+		services.setPurgeBatchSize(2);
+		services.setRequestTokenValiditySeconds(-1);
+		for (int i = 0; i < 5; i++) {
+			services.createUnauthorizedRequestToken("consumer", "http://callback");
+		}
+
+		assertEquals(5, services.purgeExpiredTokens());
+		assertEquals(5, removed.size());
+		assertEquals(5, new HashSet<String>(removed).size());
+	}
+
+	@Test
+	public void testPurgeExpiredTokensInOneStatementWithPurgeListener() throws Exception {
+		final List<String> events = new ArrayList<String>();
+		services.register(new OAuthTokenPurgeListener() {
+			public void tokenCreated(OAuthProviderToken token) {
+			}
+
+			public void tokenExpired(OAuthProviderToken token) {
+				events.add("expired");
+			}
+
+			public void tokensPurged() {
+				events.add("purged");
+			}
+		});
+		services.setPurgeBatchSize(2);
+		services.setRequestTokenValiditySeconds(-1);
+		for (int i = 0; i < 5; i++) {
+			services.createUnauthorizedRequestToken("consumer", "http://callback");
+		}
+
+		assertEquals(5, services.purgeExpiredTokens());
+		assertEquals(Arrays.asList("purged"), events);
+		assertEquals(0, services.purgeExpiredTokens());
+		assertEquals(1, events.size());
+	}
+
+	@Test
+	public void testReadCacheHandsOutCopies() throws Exception {
+		services.setReadCacheSeconds(60);
+		OAuthProviderToken requestToken = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		services.authorizeRequestToken(requestToken.getValue(), "verifier", user);
+		OAuthAccessProviderToken accessToken = services.createAccessToken(requestToken.getValue());
+
+		OAuthProviderToken miss = services.getToken(accessToken.getValue());
+		OAuthProviderToken hit = services.getToken(accessToken.getValue());
+		assertNotSame(miss, hit);
+		assertNotSame(hit, services.getToken(accessToken.getValue()));
+		assertEquals(miss.getSecret(), hit.getSecret());
+	}
+
+	@Test
+	public void testReadCacheServesAccessTokens() throws Exception {
+		services.setReadCacheSeconds(60);
+		OAuthProviderToken requestToken = services.createUnauthorizedRequestToken("consumer", "http://callback");
+		services.authorizeRequestToken(requestToken.getValue(), "verifier", user);
+		OAuthAccessProviderToken accessToken = services.createAccessToken(requestToken.getValue());
+		services.getToken(accessToken.getValue());
+
+		// removed by another node: still served from the cache until it times out
+		new JdbcTemplate(db).update("delete from oauth_provider_token where token_value = ?", accessToken.getValue());
+		assertEquals(accessToken.getSecret(), services.getToken(accessToken.getValue()).getSecret());
+
+		// removed on this node: gone straight away
+		services.removeToken(accessToken.getValue());
+		try {
+			services.getToken(accessToken.getValue());
+			fail("Access token should have been removed");
+		}
+		catch (InvalidOAuthTokenException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testConcurrentIssueAndLookup() throws Exception {
+		final JdbcProviderTokenServices other = new JdbcProviderTokenServices(db);
+		other.afterPropertiesSet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 8; i++) {
+				// alternate the steps between two instances, as if on two nodes of a cluster
+				final JdbcProviderTokenServices issuer = i % 2 == 0 ? services : other;
+				final JdbcProviderTokenServices reader = i % 2 == 0 ? other : services;
+				results.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						int count = 0;
+						for (int j = 0; j < 50; j++) {
+							OAuthProviderToken requestToken = issuer.createUnauthorizedRequestToken("consumer", "http://callback");
+							reader.authorizeRequestToken(requestToken.getValue(), "verifier", user);
+							OAuthAccessProviderToken accessToken = issuer.createAccessToken(requestToken.getValue());
+							if (accessToken.getSecret().equals(reader.getToken(accessToken.getValue()).getSecret())) {
+								count++;
+							}
+						}
+						return count;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertEquals(50, result.get().intValue());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals(400, new JdbcTemplate(db).queryForInt("select count(*) from oauth_provider_token"));
+	}
+
+}
@@ -24,3 +24,17 @@ create table oauth_refresh_token (
 create table oauth_code (
   code VARCHAR(256), authentication LONGVARBINARY
 );
+
+create table oauth_provider_token (
+  token_value VARCHAR(256) PRIMARY KEY,
+  secret VARCHAR(256),
+  consumer_key VARCHAR(256),
+  callback_url VARCHAR(1024),
+  verifier VARCHAR(256),
+  access_token BOOLEAN,
+  issued_at BIGINT,
+  expires_at BIGINT,
+  user_authentication LONGVARBINARY
+);
+
+create index oauth_provider_token_expires_at on oauth_provider_token (expires_at);
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.common.util;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Helpers for the size-bounded concurrent maps used as caches by the provider. The maps have no order to evict by, so
+ * when one is full expired entries go first and then an arbitrary tenth of the rest.
+ */
+public abstract class CacheUtils {
+
+	/**
+	 * A cache entry that knows when it expires.
+	 */
+	public interface Expiring {
+
+		/**
+		 * @param now the current time in milliseconds
+		 * @return true if the entry should no longer be used
+		 */
+		boolean isExpired(long now);
+
+	}
+
+	/**
+	 * Make room in a full cache by removing the expired entries, and if that is not enough an arbitrary tenth of the
+	 * others. Does nothing if the cache is not full.
+	 *
+	 * @param cache the cache
+	 * @param maxSize the maximum size of the cache
+	 * @param now the current time in milliseconds
+	 */
+	public static void makeRoom(Map<?, ? extends Expiring> cache, int maxSize, long now) {
+		if (cache.size() < maxSize) {
+			return;
+		}
+		for (Iterator<? extends Expiring> iterator = cache.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().isExpired(now)) {
+				iterator.remove();
+			}
+		}
+		int excess = cache.size() - maxSize + Math.max(1, maxSize / 10);
+		for (Iterator<?> iterator = cache.keySet().iterator(); excess > 0 && iterator.hasNext(); excess--) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+}
@@ -36,6 +36,7 @@ import org.springframework.security.oauth2.provider.endpoint.WhitelabelApprovalE
 import org.springframework.security.oauth2.provider.implicit.ImplicitTokenGranter;
 import org.springframework.security.oauth2.provider.password.ResourceOwnerPasswordTokenGranter;
 import org.springframework.security.oauth2.provider.refresh.RefreshTokenGranter;
+import org.springframework.security.oauth2.provider.token.JwtTokenEnhancer;
 import org.springframework.util.StringUtils;
 import org.springframework.util.xml.DomUtils;
 import org.w3c.dom.Element;
@@ -48,6 +49,16 @@ import org.w3c.dom.Element;
  */
 public class AuthorizationServerBeanDefinitionParser extends ProviderBeanDefinitionParser {
 
+	@Override
+	protected void configureDefaultTokenServices(Element element, BeanDefinitionBuilder tokenServices) {
+		String jwtSigningKey = element.getAttribute("jwt-signing-key");
+		if (StringUtils.hasText(jwtSigningKey)) {
+			BeanDefinitionBuilder tokenEnhancer = BeanDefinitionBuilder.rootBeanDefinition(JwtTokenEnhancer.class);
+			tokenEnhancer.addPropertyValue("signingKey", jwtSigningKey);
+			tokenServices.addPropertyValue("tokenEnhancer", tokenEnhancer.getBeanDefinition());
+		}
+	}
+
 	@Override
 	protected AbstractBeanDefinition parseEndpointAndReturnFilter(Element element, ParserContext parserContext,
 			String tokenServicesRef, String serializerRef) {
@@ -100,6 +111,18 @@ public class AuthorizationServerBeanDefinitionParser extends ProviderBeanDefinit
 				authorizationCodeServices = "oauth2AuthorizationCodeServices";
 				BeanDefinitionBuilder authorizationCodeServicesBean = BeanDefinitionBuilder
 						.rootBeanDefinition(InMemoryAuthorizationCodeServices.class);
+				String codeValiditySeconds = authorizationCodeElement.getAttribute("code-validity-seconds");
+				if (StringUtils.hasText(codeValiditySeconds)) {
+					authorizationCodeServicesBean.addPropertyValue("codeValiditySeconds", codeValiditySeconds);
+				}
+				String maxCodes = authorizationCodeElement.getAttribute("max-codes");
+				if (StringUtils.hasText(maxCodes)) {
+					authorizationCodeServicesBean.addPropertyValue("maxCodes", maxCodes);
+				}
+				String maxCodesPerClient = authorizationCodeElement.getAttribute("max-codes-per-client");
+				if (StringUtils.hasText(maxCodesPerClient)) {
+					authorizationCodeServicesBean.addPropertyValue("maxCodesPerClient", maxCodesPerClient);
+				}
 				parserContext.getRegistry().registerBeanDefinition(authorizationCodeServices,
 						authorizationCodeServicesBean.getBeanDefinition());
 			}
@@ -41,12 +41,23 @@ public abstract class ProviderBeanDefinitionParser extends AbstractBeanDefinitio
 			BeanDefinitionBuilder tokenServices = BeanDefinitionBuilder.rootBeanDefinition(DefaultTokenServices.class);
 			AbstractBeanDefinition tokenStore = BeanDefinitionBuilder.rootBeanDefinition(InMemoryTokenStore.class).getBeanDefinition();
 			tokenServices.addPropertyValue("tokenStore", tokenStore);
+			configureDefaultTokenServices(element, tokenServices);
 			parserContext.getRegistry().registerBeanDefinition(tokenServicesRef, tokenServices.getBeanDefinition());
 		}
 
 		return parseEndpointAndReturnFilter(element, parserContext, tokenServicesRef, serializerRef);
 	}
 
+	/**
+	 * Hook for subclasses to add properties to the default token services (only used if there is no
+	 * token-services-ref).
+	 *
+	 * @param element the element being parsed
+	 * @param tokenServices a builder for the default token services
+	 */
+	protected void configureDefaultTokenServices(Element element, BeanDefinitionBuilder tokenServices) {
+	}
+
 	protected abstract AbstractBeanDefinition parseEndpointAndReturnFilter(Element element, ParserContext parserContext,
 			String tokenServicesRef, String serializerRef);
 
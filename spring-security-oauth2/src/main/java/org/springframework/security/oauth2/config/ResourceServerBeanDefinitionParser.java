@@ -18,6 +18,7 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationManager;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationProcessingFilter;
+import org.springframework.security.oauth2.provider.token.JwtTokenServices;
 import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
@@ -30,6 +31,30 @@ import org.w3c.dom.Element;
  */
 public class ResourceServerBeanDefinitionParser extends ProviderBeanDefinitionParser {
 
+	@Override
+	protected AbstractBeanDefinition parseInternal(Element element, ParserContext parserContext) {
+
+		String jwtVerifierKey = element.getAttribute("jwt-verifier-key");
+
+		if (!StringUtils.hasText(jwtVerifierKey)) {
+			return super.parseInternal(element, parserContext);
+		}
+
+		if (StringUtils.hasText(element.getAttribute("token-services-ref"))) {
+			parserContext.getReaderContext().error(
+					"A resource server cannot have both a jwt-verifier-key and a token-services-ref", element);
+		}
+
+		// Tokens are self-contained, so they are verified locally instead of with the shared token services
+		BeanDefinitionBuilder tokenServices = BeanDefinitionBuilder.rootBeanDefinition(JwtTokenServices.class);
+		tokenServices.addPropertyValue("verifierKey", jwtVerifierKey);
+		String tokenServicesRef = parserContext.getReaderContext().generateBeanName(tokenServices.getRawBeanDefinition());
+		parserContext.getRegistry().registerBeanDefinition(tokenServicesRef, tokenServices.getBeanDefinition());
+
+		return parseEndpointAndReturnFilter(element, parserContext, tokenServicesRef,
+				element.getAttribute("serialization-service-ref"));
+	}
+
 	@Override
 	protected AbstractBeanDefinition parseEndpointAndReturnFilter(Element element, ParserContext parserContext,
 			String tokenServicesRef, String serializerRef) {
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.security.oauth2.common.util.CacheUtils;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link ClientDetailsService} that caches the client details loaded from another instance (e.g. a
+ * {@link JdbcClientDetailsService}), so that the several lookups made while granting a token do not all go to the
+ * store. Entries live for {@link #setTimeToLiveSeconds(int) timeToLiveSeconds}, and once an entry is older than
+ * {@link #setRefreshAheadSeconds(int) refreshAheadSeconds} the next caller to ask for it triggers a reload (using
+ * the {@link #setTaskExecutor(TaskExecutor) taskExecutor}) while the cached value continues to be served. With an
+ * asynchronous executor popular clients are then never reloaded on a request thread. Unknown clients are not cached.
+ * <p>
+ * This class is also a {@link ClientRegistrationService} that delegates to the underlying service, and any change made
+ * through it (update, secret change or removal) evicts the client from the cache immediately. Changes made directly to
+ * the underlying store are only picked up when the entry is reloaded, unless {@link #evict(String)} is called.
+ * <p>
+ * The cache holds at most {@link #setMaxSize(int) maxSize} entries. When it is full, expired entries are purged and
+ * if that is not enough an arbitrary tenth of the remaining entries are evicted.
+ */
+public class CachingClientDetailsService implements ClientDetailsService, ClientRegistrationService, InitializingBean {
+
+	private static final Log logger = LogFactory.getLog(CachingClientDetailsService.class);
+
+	private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+
+	// Incremented on every eviction, so a load that raced with one can tell not to cache a stale result
+	private final AtomicLong evictions = new AtomicLong();
+
+	private ClientDetailsService clientDetailsService;
+
+	private TaskExecutor taskExecutor = new SyncTaskExecutor();
+
+	private int maxSize = 1000;
+
+	private int timeToLiveSeconds = 300;
+
+	private int refreshAheadSeconds = 240;
+
+	/**
+	 * The client details service to load clients from on a cache miss. If it is also a
+	 * {@link ClientRegistrationService} then the registration methods of this class delegate to it.
+	 *
+	 * @param clientDetailsService the client details service to set
+	 */
+	public void setClientDetailsService(ClientDetailsService clientDetailsService) {
+		this.clientDetailsService = clientDetailsService;
+	}
+
+	/**
+	 * The executor used to reload entries that are due for a refresh. Defaults to running the reload on the calling
+	 * thread (still only one caller per entry).
+	 *
+	 * @param taskExecutor the task executor to set
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * The maximum number of clients to cache (default 1000).
+	 *
+	 * @param maxSize the maximum cache size
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The maximum time in seconds that a client is cached (default 300).
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * The age in seconds after which a cached client is reloaded ahead of its expiry (default 240). Set it to the time
+	 * to live or more to switch off refresh ahead.
+	 *
+	 * @param refreshAheadSeconds the age at which to refresh
+	 */
+	public void setRefreshAheadSeconds(int refreshAheadSeconds) {
+		this.refreshAheadSeconds = refreshAheadSeconds;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		Assert.state(clientDetailsService != null, "Client details service is required");
+		Assert.state(maxSize > 0, "Maximum cache size must be positive");
+		Assert.state(taskExecutor != null, "Task executor is required");
+	}
+
+	public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+		long now = System.currentTimeMillis();
+		CacheEntry entry = cache.get(clientId);
+		if (entry == null || entry.isExpired(now)) {
+			return load(clientId, now).clientDetails;
+		}
+		if (entry.isOlderThan(now, refreshAheadSeconds) && entry.refreshing.compareAndSet(false, true)) {
+			refresh(clientId, entry);
+		}
+		return entry.clientDetails;
+	}
+
+	/**
+	 * Remove a client from the cache, e.g. because it has been changed in the underlying store.
+	 *
+	 * @param clientId the client id
+	 */
+	public void evict(String clientId) {
+		evictions.incrementAndGet();
+		cache.remove(clientId);
+	}
+
+	/**
+	 * Remove all clients from the cache.
+	 */
+	public void clear() {
+		evictions.incrementAndGet();
+		cache.clear();
+	}
+
+	public void addClientDetails(ClientDetails clientDetails) throws ClientAlreadyExistsException {
+		getClientRegistrationService().addClientDetails(clientDetails);
+	}
+
+	public void updateClientDetails(ClientDetails clientDetails) throws NoSuchClientException {
+		try {
+			getClientRegistrationService().updateClientDetails(clientDetails);
+		}
+		finally {
+			evict(clientDetails.getClientId());
+		}
+	}
+
+	public void updateClientSecret(String clientId, String secret) throws NoSuchClientException {
+		try {
+			getClientRegistrationService().updateClientSecret(clientId, secret);
+		}
+		finally {
+			evict(clientId);
+		}
+	}
+
+	public void removeClientDetails(String clientId) throws NoSuchClientException {
+		try {
+			getClientRegistrationService().removeClientDetails(clientId);
+		}
+		finally {
+			evict(clientId);
+		}
+	}
+
+	public List<ClientDetails> listClientDetails() {
+		return getClientRegistrationService().listClientDetails();
+	}
+
+	private ClientRegistrationService getClientRegistrationService() {
+		Assert.state(clientDetailsService instanceof ClientRegistrationService,
+				"Client details service does not support registration");
+		return (ClientRegistrationService) clientDetailsService;
+	}
+
+	private CacheEntry load(String clientId, long now) {
+		long generation = evictions.get();
+		ClientDetails clientDetails;
+		try {
+			clientDetails = clientDetailsService.loadClientByClientId(clientId);
+		}
+		catch (RuntimeException e) {
+			cache.remove(clientId);
+			throw e;
+		}
+		CacheEntry entry = new CacheEntry(clientDetails, now, timeToLiveSeconds);
+		CacheUtils.makeRoom(cache, maxSize, now);
+		cache.put(clientId, entry);
+		if (evictions.get() != generation) {
+			// Evicted while we were loading it, so it might be out of date
+			cache.remove(clientId, entry);
+		}
+		return entry;
+	}
+
+	private void refresh(final String clientId, final CacheEntry entry) {
+		taskExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					// Only replace the entry if it has not been evicted or reloaded in the meantime
+					if (cache.get(clientId) == entry) {
+						ClientDetails clientDetails = clientDetailsService.loadClientByClientId(clientId);
+						cache.replace(clientId, entry, new CacheEntry(clientDetails, System.currentTimeMillis(),
+								timeToLiveSeconds));
+					}
+				}
+				catch (RuntimeException e) {
+					// The client might have been removed: the next caller will find out
+					logger.debug("Could not refresh client details for " + clientId, e);
+					cache.remove(clientId, entry);
+				}
+				finally {
+					entry.refreshing.set(false);
+				}
+			}
+		});
+	}
+
+	private static class CacheEntry implements CacheUtils.Expiring {
+
+		private final ClientDetails clientDetails;
+
+		private final long loaded;
+
+		private final long expiry;
+
+		private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+		public CacheEntry(ClientDetails clientDetails, long loaded, int timeToLiveSeconds) {
+			this.clientDetails = clientDetails;
+			this.loaded = loaded;
+			this.expiry = loaded + timeToLiveSeconds * 1000L;
+		}
+
+		public boolean isExpired(long now) {
+			return now >= expiry;
+		}
+
+		public boolean isOlderThan(long now, int ageSeconds) {
+			return now - loaded >= ageSeconds * 1000L;
+		}
+
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the {@link ClientDetails} loaded while processing a single request, so that the several components that
+ * need them (endpoint, authorization request manager, token granter and token services) only go to the
+ * {@link ClientDetailsService} once between them. The scope is bound to the current thread between {@link #open()} and
+ * {@link #close()}, which the {@link org.springframework.security.oauth2.provider.endpoint.TokenEndpoint} calls in a
+ * finally block. Outside a scope
+ * {@link #loadClientByClientId(ClientDetailsService, String)} simply delegates to the service.
+ */
+public final class ClientDetailsHolder {
+
+	private static final ThreadLocal<Scope> scopeHolder = new ThreadLocal<Scope>();
+
+	private ClientDetailsHolder() {
+	}
+
+	/**
+	 * Start remembering client details on the current thread (if that is not already happening).
+	 */
+	public static void open() {
+		if (scopeHolder.get() == null) {
+			scopeHolder.set(new Scope());
+		}
+	}
+
+	/**
+	 * Stop remembering client details on the current thread and forget the ones already loaded.
+	 */
+	public static void close() {
+		scopeHolder.remove();
+	}
+
+	/**
+	 * Load the client details for the client id provided, using the ones already loaded in the current scope if there
+	 * are any.
+	 *
+	 * @param clientDetailsService the service to load client details from if they are not already known
+	 * @param clientId the client id
+	 * @return the client details
+	 * @throws ClientRegistrationException if the client details service throws it
+	 */
+	public static ClientDetails loadClientByClientId(ClientDetailsService clientDetailsService, String clientId)
+			throws ClientRegistrationException {
+		Scope scope = scopeHolder.get();
+		if (scope == null) {
+			return clientDetailsService.loadClientByClientId(clientId);
+		}
+		ClientDetails clientDetails = scope.clients.get(clientId);
+		if (clientDetails == null) {
+			clientDetails = clientDetailsService.loadClientByClientId(clientId);
+			if (clientDetails != null) {
+				scope.clients.put(clientId, clientDetails);
+			}
+		}
+		return clientDetails;
+	}
+
+	private static class Scope {
+
+		private final Map<String, ClientDetails> clients = new HashMap<String, ClientDetails>();
+
+	}
+
+}
@@ -41,7 +41,7 @@ public class DefaultAuthorizationRequestManager implements AuthorizationRequestM
 		if (clientId == null) {
 			throw new InvalidClientException("A client id must be provided");
 		}
-		ClientDetails clientDetails = clientDetailsService.loadClientByClientId(clientId);
+		ClientDetails clientDetails = ClientDetailsHolder.loadClientByClientId(clientDetailsService, clientId);
 		Set<String> scopes = OAuth2Utils.parseParameterList(parameters.get("scope"));
 		if ((scopes == null || scopes.isEmpty())) {
 			// If no scopes are specified in the incoming data, use the default values registered with the client
@@ -1,10 +1,24 @@
 package org.springframework.security.oauth2.provider.code;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of authorization code services that stores the codes and authentication in memory.
- * 
+ * <p>
+ * Codes that are never redeemed can be kept from staying in memory forever: a code can be made to expire
+ * {@link #setCodeValiditySeconds(int) codeValiditySeconds} after it is issued, and the oldest codes evicted if there
+ * are more than {@link #setMaxCodes(int) maxCodes} in total, or more than {@link #setMaxCodesPerClient(int)
+ * maxCodesPerClient} for the same client. None of these limits is set by default. Expired and evicted codes are purged
+ * when new codes are issued, and an expired code cannot be redeemed even if it has not been purged yet.
+ *
  * @author Ryan Heaton
  * @author Dave Syer
  */
@@ -12,15 +26,254 @@ public class InMemoryAuthorizationCodeServices extends RandomValueAuthorizationC
 
 	protected final ConcurrentHashMap<String, AuthorizationRequestHolder> authorizationCodeStore = new ConcurrentHashMap<String, AuthorizationRequestHolder>();
 
+	// Only used if there are limits. Keyed by sequence number, so the oldest code is always first.
+	private final ConcurrentSkipListMap<Long, CodeEntry> issuedCodes = new ConcurrentSkipListMap<Long, CodeEntry>();
+
+	private final ConcurrentHashMap<String, CodeEntry> codeEntries = new ConcurrentHashMap<String, CodeEntry>();
+
+	// One for each client that has been issued a code
+	private final ConcurrentHashMap<String, ClientCodes> clientCodes = new ConcurrentHashMap<String, ClientCodes>();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	// The size of issuedCodes, which is expensive to count
+	private final AtomicInteger issuedCodeCount = new AtomicInteger();
+
+	private final AtomicLong issuedCount = new AtomicLong();
+
+	private final AtomicLong redeemedCount = new AtomicLong();
+
+	private final AtomicLong expiredCount = new AtomicLong();
+
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	private int codeValiditySeconds = 0;
+
+	private int maxCodes = 0;
+
+	private int maxCodesPerClient = 0;
+
+	/**
+	 * The time in seconds that an authorization code can be redeemed after it is issued (default 0). Zero or negative
+	 * means codes never expire (but they can still be evicted).
+	 *
+	 * @param codeValiditySeconds the code validity to set
+	 */
+	public void setCodeValiditySeconds(int codeValiditySeconds) {
+		this.codeValiditySeconds = codeValiditySeconds;
+	}
+
+	/**
+	 * The maximum number of outstanding authorization codes (default 0 for no limit). When there are more, the oldest
+	 * are evicted.
+	 *
+	 * @param maxCodes the maximum number of codes
+	 */
+	public void setMaxCodes(int maxCodes) {
+		this.maxCodes = maxCodes;
+	}
+
+	/**
+	 * The maximum number of outstanding authorization codes for any one client (default 0 for no limit). When there
+	 * are more, the oldest codes for that client are evicted, so one client abandoning authorization flows cannot use
+	 * up the space for the others.
+	 *
+	 * @param maxCodesPerClient the maximum number of codes per client
+	 */
+	public void setMaxCodesPerClient(int maxCodesPerClient) {
+		this.maxCodesPerClient = maxCodesPerClient;
+	}
+
+	/**
+	 * @return the number of codes issued
+	 */
+	public long getIssuedCount() {
+		return issuedCount.get();
+	}
+
+	/**
+	 * @return the number of codes successfully redeemed
+	 */
+	public long getRedeemedCount() {
+		return redeemedCount.get();
+	}
+
+	/**
+	 * @return the number of codes that expired before they were redeemed
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	/**
+	 * @return the number of codes evicted to stay within the size limits
+	 */
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/**
+	 * @return the number of codes currently stored
+	 */
+	public int getCodeCount() {
+		return authorizationCodeStore.size();
+	}
+
 	@Override
 	protected void store(String code, AuthorizationRequestHolder authentication) {
 		this.authorizationCodeStore.put(code, authentication);
+		issuedCount.incrementAndGet();
+		if (codeValiditySeconds <= 0 && maxCodes <= 0 && maxCodesPerClient <= 0) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		CodeEntry entry = new CodeEntry(code, authentication.getAuthenticationRequest().getClientId(), now,
+				sequence.incrementAndGet());
+		codeEntries.put(code, entry);
+		issuedCodes.put(entry.sequence, entry);
+		issuedCodeCount.incrementAndGet();
+		if (!this.authorizationCodeStore.containsKey(code)) {
+			// Already redeemed before it was tracked
+			forget(entry);
+			return;
+		}
+		if (maxCodesPerClient > 0) {
+			for (String evicted : getClientCodes(entry.clientId).add(code, maxCodesPerClient)) {
+				evict(evicted);
+			}
+		}
+		purge(now);
 	}
 
 	@Override
 	public AuthorizationRequestHolder remove(String code) {
+		// Removing from the store first means only one caller can ever redeem the code
 		AuthorizationRequestHolder auth = this.authorizationCodeStore.remove(code);
+		if (auth == null) {
+			return null;
+		}
+		CodeEntry entry = codeEntries.get(code);
+		if (entry != null) {
+			forget(entry);
+			if (entry.isExpired(System.currentTimeMillis(), codeValiditySeconds)) {
+				expiredCount.incrementAndGet();
+				return null;
+			}
+		}
+		redeemedCount.incrementAndGet();
 		return auth;
 	}
 
+	// Concurrent purges take turns at the oldest code, so between them they never remove more than they should
+	private void purge(long now) {
+		Map.Entry<Long, CodeEntry> oldest;
+		while ((oldest = issuedCodes.firstEntry()) != null) {
+			CodeEntry entry = oldest.getValue();
+			boolean expired = entry.isExpired(now, codeValiditySeconds);
+			if (!expired && (maxCodes <= 0 || issuedCodeCount.get() <= maxCodes)) {
+				// All the rest were issued later
+				return;
+			}
+			if (forget(entry) && this.authorizationCodeStore.remove(entry.code) != null) {
+				if (expired) {
+					expiredCount.incrementAndGet();
+				}
+				else {
+					evictedCount.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	private void evict(String code) {
+		CodeEntry entry = codeEntries.get(code);
+		if (entry != null) {
+			forget(entry);
+		}
+		if (this.authorizationCodeStore.remove(code) != null) {
+			evictedCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Stop tracking a code.
+	 *
+	 * @return true if this caller was the one to take it out of the issue order
+	 */
+	private boolean forget(CodeEntry entry) {
+		codeEntries.remove(entry.code, entry);
+		ClientCodes codes = clientCodes.get(entry.clientId);
+		if (codes != null) {
+			codes.remove(entry.code);
+		}
+		if (issuedCodes.remove(entry.sequence, entry)) {
+			issuedCodeCount.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	private ClientCodes getClientCodes(String clientId) {
+		ClientCodes codes = clientCodes.get(clientId);
+		if (codes == null) {
+			ClientCodes created = new ClientCodes();
+			codes = clientCodes.putIfAbsent(clientId, created);
+			if (codes == null) {
+				codes = created;
+			}
+		}
+		return codes;
+	}
+
+	private static class CodeEntry {
+
+		private final String code;
+
+		private final String clientId;
+
+		private final long issued;
+
+		private final long sequence;
+
+		public CodeEntry(String code, String clientId, long issued, long sequence) {
+			this.code = code;
+			this.clientId = clientId;
+			this.issued = issued;
+			this.sequence = sequence;
+		}
+
+		public boolean isExpired(long now, int validitySeconds) {
+			return validitySeconds > 0 && now - issued >= validitySeconds * 1000L;
+		}
+
+	}
+
+	/**
+	 * The outstanding codes for one client in order of issue. This is the only state that needs a lock, because
+	 * counting and evicting the codes for a client has to be done in one go.
+	 */
+	private static class ClientCodes {
+
+		private final LinkedHashSet<String> codes = new LinkedHashSet<String>();
+
+		/**
+		 * @return the codes that have to be evicted to make room for this one
+		 */
+		public synchronized List<String> add(String code, int maxCodes) {
+			codes.add(code);
+			List<String> evicted = new ArrayList<String>();
+			for (Iterator<String> iterator = codes.iterator(); codes.size() > maxCodes;) {
+				evicted.add(iterator.next());
+				iterator.remove();
+			}
+			return evicted;
+		}
+
+		public synchronized void remove(String code) {
+			codes.remove(code);
+		}
+
+	}
+
 }
@@ -10,7 +10,8 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.SqlLobValue;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.token.JavaSerializationTokenCodec;
+import org.springframework.security.oauth2.provider.token.TokenCodec;
 import org.springframework.util.Assert;
 
 /**
@@ -29,6 +30,8 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 	private String insertAuthenticationSql = DEFAULT_INSERT_STATEMENT;
 	private String deleteAuthenticationSql = DEFAULT_DELETE_STATEMENT;
 
+	private TokenCodec tokenCodec = new JavaSerializationTokenCodec();
+
 	private final JdbcTemplate jdbcTemplate;
 
 	public JdbcAuthorizationCodeServices(DataSource dataSource) {
@@ -39,7 +42,7 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 	@Override
 	protected void store(String code, AuthorizationRequestHolder authentication) {
 		jdbcTemplate.update(insertAuthenticationSql,
-				new Object[] { code, new SqlLobValue(SerializationUtils.serialize(authentication)) }, new int[] {
+				new Object[] { code, new SqlLobValue(tokenCodec.encodeAuthorizationRequestHolder(authentication)) }, new int[] {
 						Types.VARCHAR, Types.BLOB });
 	}
 
@@ -51,7 +54,7 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 					new RowMapper<AuthorizationRequestHolder>() {
 						public AuthorizationRequestHolder mapRow(ResultSet rs, int rowNum)
 								throws SQLException {
-							return SerializationUtils.deserialize(rs.getBytes("authentication"));
+							return tokenCodec.decodeAuthorizationRequestHolder(rs.getBytes("authentication"));
 						}
 					}, code);
 		} catch (EmptyResultDataAccessException e) {
@@ -65,6 +68,15 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 		return authentication;
 	}
 
+	/**
+	 * The codec used to convert the authentication to and from the binary column. Defaults to Java serialization.
+	 * 
+	 * @param tokenCodec the token codec to set
+	 */
+	public void setTokenCodec(TokenCodec tokenCodec) {
+		this.tokenCodec = tokenCodec;
+	}
+
 	public void setSelectAuthenticationSql(String selectAuthenticationSql) {
 		this.selectAuthenticationSql = selectAuthenticationSql;
 	}
@@ -32,6 +32,7 @@ import org.springframework.security.oauth2.common.exceptions.InvalidRequestExcep
 import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
 import org.springframework.security.oauth2.common.exceptions.UnsupportedGrantTypeException;
 import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.ClientDetailsHolder;
 import org.springframework.security.oauth2.provider.ClientRegistrationException;
 import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 import org.springframework.util.StringUtils;
@@ -64,6 +65,18 @@ public class TokenEndpoint extends AbstractEndpoint {
 	public ResponseEntity<OAuth2AccessToken> getAccessToken(Principal principal,
 			@RequestParam(value = "grant_type", required = false) String grantType,
 			@RequestParam Map<String, String> parameters) {
+		// The client details are needed several times while granting the token, but only need loading once
+		ClientDetailsHolder.open();
+		try {
+			return grantAccessToken(principal, grantType, parameters);
+		}
+		finally {
+			ClientDetailsHolder.close();
+		}
+	}
+
+	private ResponseEntity<OAuth2AccessToken> grantAccessToken(Principal principal, String grantType,
+			Map<String, String> parameters) {
 
 		if (!(principal instanceof Authentication)) {
 			throw new InsufficientAuthenticationException(
@@ -83,7 +96,7 @@ public class TokenEndpoint extends AbstractEndpoint {
 		}
 
 		getAuthorizationRequestManager().validateParameters(parameters,
-				getClientDetailsService().loadClientByClientId(clientId));
+				ClientDetailsHolder.loadClientByClientId(getClientDetailsService(), clientId));
 
 		DefaultAuthorizationRequest authorizationRequest = new DefaultAuthorizationRequest(
 				getAuthorizationRequestManager().createAuthorizationRequest(request));
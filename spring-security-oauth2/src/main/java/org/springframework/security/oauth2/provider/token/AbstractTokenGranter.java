@@ -20,6 +20,7 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsHolder;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
@@ -53,7 +54,7 @@ public abstract class AbstractTokenGranter implements TokenGranter {
 		}
 		
 		String clientId = authorizationRequest.getClientId();
-		ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
+		ClientDetails client = ClientDetailsHolder.loadClientByClientId(clientDetailsService, clientId);
 		validateGrantType(grantType, client);
 		
 		logger.debug("Getting access token for: " + clientId);
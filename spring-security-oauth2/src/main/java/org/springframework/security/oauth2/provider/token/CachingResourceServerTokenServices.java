@@ -0,0 +1,244 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.CacheUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link ResourceServerTokenServices} that caches the authentications loaded from another instance, so that a
+ * resource server does not have to go to the token store on every request. Entries live for at most
+ * {@link #setTimeToLiveSeconds(int) timeToLiveSeconds} and never beyond the expiry of the access token itself.
+ * Unknown tokens are remembered for {@link #setNegativeTimeToLiveSeconds(int) negativeTimeToLiveSeconds} so that
+ * repeated requests with a bad token do not hit the store either.
+ * <p>
+ * A token revoked through {@link #revokeToken(String)} (or {@link #evict(String)}) is removed from the cache
+ * immediately. A token revoked elsewhere (e.g. on another node or directly in the store) can still be accepted until
+ * its cache entry expires, so the time to live is the bound on how stale the cache can be.
+ * <p>
+ * The cache holds at most {@link #setMaxSize(int) maxSize} entries. When it is full, expired entries are purged and
+ * if that is not enough an arbitrary tenth of the remaining entries are evicted.
+ */
+public class CachingResourceServerTokenServices implements ResourceServerTokenServices, ConsumerTokenServices,
+		InitializingBean {
+
+	private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+
+	// Incremented on every eviction, so a load that raced with one can tell not to cache a stale result
+	private final AtomicLong evictions = new AtomicLong();
+
+	private ResourceServerTokenServices tokenServices;
+
+	private int maxSize = 10000;
+
+	private int timeToLiveSeconds = 60;
+
+	private int negativeTimeToLiveSeconds = 10;
+
+	/**
+	 * The token services to load authentications from on a cache miss. If they are also a
+	 * {@link StoredAccessTokenReader} (like {@link DefaultTokenServices}) a miss is loaded with a single call, otherwise
+	 * the access token and the authentication are loaded separately. If they are also {@link ConsumerTokenServices} then
+	 * the consumer methods of this class delegate to them.
+	 *
+	 * @param tokenServices the token services to set
+	 */
+	public void setTokenServices(ResourceServerTokenServices tokenServices) {
+		this.tokenServices = tokenServices;
+	}
+
+	/**
+	 * The maximum number of tokens to cache (default 10000).
+	 *
+	 * @param maxSize the maximum cache size
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The maximum time in seconds that a valid token is cached (default 60). Tokens that expire sooner are cached until
+	 * they expire.
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * The time in seconds that an unknown token is remembered (default 10). Zero or negative to disable negative
+	 * caching.
+	 *
+	 * @param negativeTimeToLiveSeconds the time to live for unknown tokens
+	 */
+	public void setNegativeTimeToLiveSeconds(int negativeTimeToLiveSeconds) {
+		this.negativeTimeToLiveSeconds = negativeTimeToLiveSeconds;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		Assert.state(tokenServices != null, "Token services are required");
+		Assert.state(maxSize > 0, "Maximum cache size must be positive");
+	}
+
+	public OAuth2Authentication loadAuthentication(String accessTokenValue) throws AuthenticationException {
+		long now = System.currentTimeMillis();
+		CacheEntry entry = cache.get(accessTokenValue);
+		if (entry == null || entry.isExpired(now)) {
+			entry = load(accessTokenValue, now);
+		}
+		if (entry.authentication == null) {
+			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+		}
+		// Callers are allowed to change the details, so don't hand out the cached instance
+		OAuth2Authentication authentication = new OAuth2Authentication(entry.authentication.getAuthorizationRequest(),
+				entry.authentication.getUserAuthentication());
+		authentication.setDetails(entry.authentication.getDetails());
+		return authentication;
+	}
+
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		CacheEntry entry = cache.get(accessToken);
+		if (entry != null && entry.accessToken != null && !entry.isExpired(System.currentTimeMillis())) {
+			return entry.accessToken;
+		}
+		return tokenServices.readAccessToken(accessToken);
+	}
+
+	/**
+	 * Remove a token from the cache, e.g. because it has been revoked.
+	 *
+	 * @param tokenValue the token value
+	 */
+	public void evict(String tokenValue) {
+		evictions.incrementAndGet();
+		cache.remove(tokenValue);
+	}
+
+	/**
+	 * Remove all tokens from the cache.
+	 */
+	public void clear() {
+		evictions.incrementAndGet();
+		cache.clear();
+	}
+
+	public boolean revokeToken(String tokenValue) {
+		// Evict after the revocation, so that a load in between can't cache the token again
+		boolean revoked = getConsumerTokenServices().revokeToken(tokenValue);
+		evict(tokenValue);
+		return revoked;
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+		return getConsumerTokenServices().findTokensByUserName(userName);
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		return getConsumerTokenServices().findTokensByClientId(clientId);
+	}
+
+	public String getClientId(String tokenValue) {
+		return getConsumerTokenServices().getClientId(tokenValue);
+	}
+
+	private ConsumerTokenServices getConsumerTokenServices() {
+		Assert.state(tokenServices instanceof ConsumerTokenServices, "Token services do not support consumer operations");
+		return (ConsumerTokenServices) tokenServices;
+	}
+
+	private CacheEntry load(String accessTokenValue, long now) {
+		long generation = evictions.get();
+		StoredAccessToken stored;
+		try {
+			stored = readStoredAccessToken(accessTokenValue);
+		}
+		catch (InvalidTokenException e) {
+			// Expired or revoked since we read it
+			cache.remove(accessTokenValue);
+			throw e;
+		}
+		OAuth2AccessToken accessToken = stored == null ? null : stored.getAccessToken();
+		OAuth2Authentication authentication = accessToken == null ? null : stored.getAuthentication();
+		if (authentication == null) {
+			if (negativeTimeToLiveSeconds <= 0) {
+				cache.remove(accessTokenValue);
+				return new CacheEntry(null, null, now);
+			}
+			return put(accessTokenValue, new CacheEntry(null, null, now + negativeTimeToLiveSeconds * 1000L), now,
+					generation);
+		}
+		long expiry = now + timeToLiveSeconds * 1000L;
+		if (accessToken.getExpiration() != null) {
+			expiry = Math.min(expiry, accessToken.getExpiration().getTime());
+		}
+		return put(accessTokenValue, new CacheEntry(accessToken, authentication, expiry), now, generation);
+	}
+
+	private StoredAccessToken readStoredAccessToken(String accessTokenValue) {
+		if (tokenServices instanceof StoredAccessTokenReader) {
+			StoredAccessToken stored = ((StoredAccessTokenReader) tokenServices).readStoredAccessToken(accessTokenValue);
+			if (stored != null && stored.getAccessToken() != null && stored.getAccessToken().isExpired()) {
+				// Let the token services deal with it (DefaultTokenServices removes it from the store)
+				tokenServices.loadAuthentication(accessTokenValue);
+				throw new InvalidTokenException("Access token expired: " + accessTokenValue);
+			}
+			return stored;
+		}
+		OAuth2AccessToken accessToken = tokenServices.readAccessToken(accessTokenValue);
+		if (accessToken == null) {
+			return null;
+		}
+		return new StoredAccessToken(accessToken, tokenServices.loadAuthentication(accessTokenValue));
+	}
+
+	private CacheEntry put(String accessTokenValue, CacheEntry entry, long now, long generation) {
+		CacheUtils.makeRoom(cache, maxSize, now);
+		cache.put(accessTokenValue, entry);
+		if (evictions.get() != generation) {
+			// Evicted (e.g. revoked) while we were loading it, so it might be out of date
+			cache.remove(accessTokenValue, entry);
+		}
+		return entry;
+	}
+
+	private static class CacheEntry implements CacheUtils.Expiring {
+
+		private final OAuth2AccessToken accessToken;
+
+		private final OAuth2Authentication authentication;
+
+		private final long expiry;
+
+		public CacheEntry(OAuth2AccessToken accessToken, OAuth2Authentication authentication, long expiry) {
+			this.accessToken = accessToken;
+			this.authentication = authentication;
+			this.expiry = expiry;
+		}
+
+		public boolean isExpired(long now) {
+			return now >= expiry;
+		}
+
+	}
+
+}
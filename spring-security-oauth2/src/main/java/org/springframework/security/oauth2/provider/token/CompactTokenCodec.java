@@ -0,0 +1,626 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationRequestHolder;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Token codec with a compact, versioned binary format. The well-known types ({@link DefaultOAuth2AccessToken},
+ * refresh tokens, {@link DefaultAuthorizationRequest}, {@link UsernamePasswordAuthenticationToken}, {@link User},
+ * {@link SimpleGrantedAuthority} and simple values) are written field by field without class descriptors. Anything
+ * else is embedded in Java serialized form, so every object that the {@link JavaSerializationTokenCodec} can store
+ * can also be stored by this one.
+ * <p>
+ * Decoding also accepts data written with Java serialization, so this codec can be switched on for an existing
+ * database: old rows stay readable and new rows are written in the compact format. Nodes that still use Java
+ * serialization cannot read the new rows, so in a cluster every node needs to be upgraded before any of them starts
+ * writing.
+ */
+public class CompactTokenCodec implements TokenCodec {
+
+	/**
+	 * First byte of every value in this format. Java serialization starts with 0xACED so the two cannot be confused.
+	 */
+	private static final int MAGIC = 0xC7;
+
+	private static final int VERSION = 1;
+
+	private static final int ACCESS_TOKEN = 1;
+
+	private static final int REFRESH_TOKEN = 2;
+
+	private static final int AUTHENTICATION = 3;
+
+	private static final int AUTHORIZATION_REQUEST_HOLDER = 4;
+
+	// Tags for embedded objects
+
+	private static final int NULL = 0;
+
+	private static final int COMPACT = 1;
+
+	private static final int SERIALIZED = 2;
+
+	private static final int EXPIRING = 3;
+
+	// Tags for arbitrary values
+
+	private static final int STRING = 3;
+
+	private static final int TRUE = 4;
+
+	private static final int FALSE = 5;
+
+	private static final int INTEGER = 6;
+
+	private static final int LONG = 7;
+
+	private static final int DATE = 8;
+
+	private static final int USER = 9;
+
+	public byte[] encodeAccessToken(OAuth2AccessToken token) {
+		if (token.getClass() != DefaultOAuth2AccessToken.class) {
+			return SerializationUtils.serialize(token);
+		}
+		Output output = new Output(ACCESS_TOKEN);
+		output.writeString(token.getValue());
+		output.writeString(token.getTokenType());
+		Date expiration = token.getExpiration();
+		writeValue(output, expiration == null ? null : new Date(expiration.getTime()));
+		writeStrings(output, token.getScope());
+		writeRefreshToken(output, token.getRefreshToken());
+		Map<String, Object> additionalInformation = token.getAdditionalInformation();
+		output.writeInt(additionalInformation.size());
+		for (Map.Entry<String, Object> entry : additionalInformation.entrySet()) {
+			output.writeString(entry.getKey());
+			writeValue(output, entry.getValue());
+		}
+		return output.toByteArray();
+	}
+
+	public OAuth2AccessToken decodeAccessToken(byte[] bytes) {
+		if (isSerialized(bytes)) {
+			return SerializationUtils.deserialize(bytes);
+		}
+		Input input = new Input(bytes, ACCESS_TOKEN);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(input.readString());
+		token.setTokenType(input.readString());
+		token.setExpiration((Date) readValue(input));
+		token.setScope(readStrings(input));
+		token.setRefreshToken(readRefreshToken(input));
+		int count = input.readInt();
+		if (count > 0) {
+			Map<String, Object> additionalInformation = new LinkedHashMap<String, Object>();
+			for (int i = 0; i < count; i++) {
+				additionalInformation.put(input.readString(), readValue(input));
+			}
+			token.setAdditionalInformation(additionalInformation);
+		}
+		return token;
+	}
+
+	public byte[] encodeRefreshToken(OAuth2RefreshToken token) {
+		Output output = new Output(REFRESH_TOKEN);
+		writeRefreshToken(output, token);
+		return output.toByteArray();
+	}
+
+	public OAuth2RefreshToken decodeRefreshToken(byte[] bytes) {
+		if (isSerialized(bytes)) {
+			return SerializationUtils.deserialize(bytes);
+		}
+		return readRefreshToken(new Input(bytes, REFRESH_TOKEN));
+	}
+
+	public byte[] encodeAuthentication(OAuth2Authentication authentication) {
+		if (authentication.getClass() != OAuth2Authentication.class) {
+			return SerializationUtils.serialize(authentication);
+		}
+		Output output = new Output(AUTHENTICATION);
+		writeAuthorizationRequest(output, authentication.getAuthorizationRequest());
+		writeUserAuthentication(output, authentication.getUserAuthentication());
+		writeValue(output, authentication.getDetails());
+		return output.toByteArray();
+	}
+
+	public OAuth2Authentication decodeAuthentication(byte[] bytes) {
+		if (isSerialized(bytes)) {
+			return SerializationUtils.deserialize(bytes);
+		}
+		Input input = new Input(bytes, AUTHENTICATION);
+		OAuth2Authentication authentication = new OAuth2Authentication(readAuthorizationRequest(input),
+				readUserAuthentication(input));
+		authentication.setDetails(readValue(input));
+		return authentication;
+	}
+
+	public byte[] encodeAuthorizationRequestHolder(AuthorizationRequestHolder holder) {
+		if (holder.getClass() != AuthorizationRequestHolder.class) {
+			return SerializationUtils.serialize(holder);
+		}
+		Output output = new Output(AUTHORIZATION_REQUEST_HOLDER);
+		writeAuthorizationRequest(output, holder.getAuthenticationRequest());
+		writeUserAuthentication(output, holder.getUserAuthentication());
+		return output.toByteArray();
+	}
+
+	public AuthorizationRequestHolder decodeAuthorizationRequestHolder(byte[] bytes) {
+		if (isSerialized(bytes)) {
+			return SerializationUtils.deserialize(bytes);
+		}
+		Input input = new Input(bytes, AUTHORIZATION_REQUEST_HOLDER);
+		return new AuthorizationRequestHolder(readAuthorizationRequest(input), readUserAuthentication(input));
+	}
+
+	private boolean isSerialized(byte[] bytes) {
+		return bytes.length > 1 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED;
+	}
+
+	private void writeRefreshToken(Output output, OAuth2RefreshToken token) {
+		if (token == null) {
+			output.writeByte(NULL);
+		}
+		else if (token.getClass() == DefaultOAuth2RefreshToken.class) {
+			output.writeByte(COMPACT);
+			output.writeString(token.getValue());
+		}
+		else if (token.getClass() == DefaultExpiringOAuth2RefreshToken.class) {
+			output.writeByte(EXPIRING);
+			output.writeString(token.getValue());
+			Date expiration = ((DefaultExpiringOAuth2RefreshToken) token).getExpiration();
+			writeValue(output, expiration == null ? null : new Date(expiration.getTime()));
+		}
+		else {
+			writeSerialized(output, token);
+		}
+	}
+
+	private OAuth2RefreshToken readRefreshToken(Input input) {
+		int tag = input.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case COMPACT:
+			return new DefaultOAuth2RefreshToken(input.readString());
+		case EXPIRING:
+			return new DefaultExpiringOAuth2RefreshToken(input.readString(), (Date) readValue(input));
+		case SERIALIZED:
+			return input.readSerialized();
+		default:
+			throw new IllegalArgumentException("Unknown refresh token tag: " + tag);
+		}
+	}
+
+	private void writeAuthorizationRequest(Output output, AuthorizationRequest request) {
+		if (request == null) {
+			output.writeByte(NULL);
+			return;
+		}
+		if (request.getClass() != DefaultAuthorizationRequest.class) {
+			writeSerialized(output, request);
+			return;
+		}
+		Map<String, String> parameters = request.getAuthorizationParameters();
+		Set<String> scope = request.getScope();
+		String scopeParameter = parameters.get(AuthorizationRequest.SCOPE);
+		boolean nullScope = scopeParameter == null && scope.isEmpty();
+		// The decoder rebuilds the request through its constructor, which resets the client id and scope parameters
+		// from the arguments, so fall back if they are not consistent already
+		if (!parameters.containsKey(AuthorizationRequest.CLIENT_ID) || !parameters.containsKey(AuthorizationRequest.SCOPE)
+				|| !nullScope && !ObjectUtils.nullSafeEquals(scopeParameter, OAuth2Utils.formatParameterList(scope))) {
+			writeSerialized(output, request);
+			return;
+		}
+		output.writeByte(COMPACT);
+		writeStringMap(output, parameters);
+		writeStringMap(output, request.getApprovalParameters());
+		writeStrings(output, nullScope ? null : scope);
+		writeStrings(output, request.getResourceIds());
+		writeAuthorities(output, request.getAuthorities());
+		output.writeByte(request.isApproved() ? TRUE : FALSE);
+		String redirectUri = request.getRedirectUri();
+		output.writeString(ObjectUtils.nullSafeEquals(redirectUri, parameters.get(AuthorizationRequest.REDIRECT_URI)) ? null
+				: redirectUri);
+	}
+
+	private AuthorizationRequest readAuthorizationRequest(Input input) {
+		int tag = input.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case COMPACT:
+			Map<String, String> parameters = readStringMap(input);
+			Map<String, String> approvalParameters = readStringMap(input);
+			Set<String> scope = readStrings(input);
+			DefaultAuthorizationRequest request = new DefaultAuthorizationRequest(parameters, approvalParameters,
+					parameters.get(AuthorizationRequest.CLIENT_ID), scope);
+			request.setResourceIds(readStrings(input));
+			request.setAuthorities(readAuthorities(input));
+			request.setApproved(input.readByte() == TRUE);
+			String redirectUri = input.readString();
+			if (redirectUri != null) {
+				request.setRedirectUri(redirectUri);
+			}
+			return request;
+		case SERIALIZED:
+			return input.readSerialized();
+		default:
+			throw new IllegalArgumentException("Unknown authorization request tag: " + tag);
+		}
+	}
+
+	private void writeUserAuthentication(Output output, Authentication authentication) {
+		if (authentication == null) {
+			output.writeByte(NULL);
+			return;
+		}
+		if (authentication.getClass() != UsernamePasswordAuthenticationToken.class) {
+			writeSerialized(output, authentication);
+			return;
+		}
+		output.writeByte(COMPACT);
+		writeValue(output, authentication.getPrincipal());
+		writeValue(output, authentication.getCredentials());
+		writeAuthorities(output, authentication.getAuthorities());
+		output.writeByte(authentication.isAuthenticated() ? TRUE : FALSE);
+		writeValue(output, authentication.getDetails());
+	}
+
+	private Authentication readUserAuthentication(Input input) {
+		int tag = input.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case COMPACT:
+			UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+					readValue(input), readValue(input), readAuthorities(input));
+			if (input.readByte() != TRUE) {
+				authentication.setAuthenticated(false);
+			}
+			authentication.setDetails(readValue(input));
+			return authentication;
+		case SERIALIZED:
+			return input.readSerialized();
+		default:
+			throw new IllegalArgumentException("Unknown authentication tag: " + tag);
+		}
+	}
+
+	private void writeAuthorities(Output output, Collection<? extends GrantedAuthority> authorities) {
+		for (GrantedAuthority authority : authorities) {
+			if (authority.getClass() != SimpleGrantedAuthority.class) {
+				writeSerialized(output, new ArrayList<GrantedAuthority>(authorities));
+				return;
+			}
+		}
+		output.writeByte(COMPACT);
+		output.writeInt(authorities.size());
+		for (GrantedAuthority authority : authorities) {
+			output.writeString(authority.getAuthority());
+		}
+	}
+
+	private Collection<GrantedAuthority> readAuthorities(Input input) {
+		int tag = input.readByte();
+		switch (tag) {
+		case COMPACT:
+			int count = input.readInt();
+			List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>(count);
+			for (int i = 0; i < count; i++) {
+				authorities.add(new SimpleGrantedAuthority(input.readString()));
+			}
+			return authorities;
+		case SERIALIZED:
+			return input.readSerialized();
+		default:
+			throw new IllegalArgumentException("Unknown authorities tag: " + tag);
+		}
+	}
+
+	private void writeStrings(Output output, Collection<String> values) {
+		if (values == null) {
+			output.writeInt(0);
+			return;
+		}
+		output.writeInt(values.size() + 1);
+		for (String value : values) {
+			output.writeString(value);
+		}
+	}
+
+	private Set<String> readStrings(Input input) {
+		int count = input.readInt() - 1;
+		if (count < 0) {
+			return null;
+		}
+		Set<String> values = new LinkedHashSet<String>();
+		for (int i = 0; i < count; i++) {
+			values.add(input.readString());
+		}
+		return values;
+	}
+
+	private void writeStringMap(Output output, Map<String, String> map) {
+		output.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			output.writeString(entry.getKey());
+			output.writeString(entry.getValue());
+		}
+	}
+
+	private Map<String, String> readStringMap(Input input) {
+		int count = input.readInt();
+		Map<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			map.put(input.readString(), input.readString());
+		}
+		return map;
+	}
+
+	private void writeValue(Output output, Object value) {
+		if (value == null) {
+			output.writeByte(NULL);
+		}
+		else if (value instanceof String) {
+			output.writeByte(STRING);
+			output.writeString((String) value);
+		}
+		else if (value instanceof Boolean) {
+			output.writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+		}
+		else if (value instanceof Integer) {
+			output.writeByte(INTEGER);
+			output.writeLong(((Integer) value).intValue());
+		}
+		else if (value instanceof Long) {
+			output.writeByte(LONG);
+			output.writeLong(((Long) value).longValue());
+		}
+		else if (value.getClass() == Date.class) {
+			output.writeByte(DATE);
+			output.writeLong(((Date) value).getTime());
+		}
+		else if (value.getClass() == User.class) {
+			User user = (User) value;
+			output.writeByte(USER);
+			output.writeString(user.getUsername());
+			output.writeString(user.getPassword());
+			output.writeByte((user.isEnabled() ? 1 : 0) | (user.isAccountNonExpired() ? 2 : 0)
+					| (user.isCredentialsNonExpired() ? 4 : 0) | (user.isAccountNonLocked() ? 8 : 0));
+			writeAuthorities(output, user.getAuthorities());
+		}
+		else {
+			writeSerialized(output, value);
+		}
+	}
+
+	private Object readValue(Input input) {
+		int tag = input.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return input.readString();
+		case TRUE:
+			return Boolean.TRUE;
+		case FALSE:
+			return Boolean.FALSE;
+		case INTEGER:
+			return Integer.valueOf((int) input.readLong());
+		case LONG:
+			return Long.valueOf(input.readLong());
+		case DATE:
+			return new Date(input.readLong());
+		case USER:
+			String username = input.readString();
+			String password = input.readString();
+			int flags = input.readByte();
+			User user = new User(username, password == null ? "" : password, (flags & 1) != 0, (flags & 2) != 0,
+					(flags & 4) != 0, (flags & 8) != 0, readAuthorities(input));
+			if (password == null) {
+				user.eraseCredentials();
+			}
+			return user;
+		case SERIALIZED:
+			return input.readSerialized();
+		default:
+			throw new IllegalArgumentException("Unknown value tag: " + tag);
+		}
+	}
+
+	private void writeSerialized(Output output, Object value) {
+		if (!(value instanceof Serializable)) {
+			throw new IllegalArgumentException("Cannot encode value of type " + value.getClass().getName());
+		}
+		output.writeByte(SERIALIZED);
+		output.writeBytes(SerializationUtils.serialize(value));
+	}
+
+	private static class Output {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+
+		public Output(int type) {
+			bytes.write(MAGIC);
+			bytes.write(VERSION);
+			bytes.write(type);
+		}
+
+		public void writeByte(int value) {
+			bytes.write(value);
+		}
+
+		public void writeInt(int value) {
+			// Unsigned variable length: 7 bits per byte, high bit set on all but the last byte
+			while ((value & ~0x7F) != 0) {
+				bytes.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes.write(value);
+		}
+
+		public void writeLong(long value) {
+			// Zig-zag so that small negative numbers are short as well
+			long zigzag = (value << 1) ^ (value >> 63);
+			while ((zigzag & ~0x7FL) != 0) {
+				bytes.write((int) ((zigzag & 0x7F) | 0x80));
+				zigzag >>>= 7;
+			}
+			bytes.write((int) zigzag);
+		}
+
+		public void writeBytes(byte[] value) {
+			writeInt(value.length);
+			bytes.write(value, 0, value.length);
+		}
+
+		public void writeString(String value) {
+			if (value == null) {
+				writeInt(0);
+				return;
+			}
+			byte[] encoded = utf8(value);
+			writeInt(encoded.length + 1);
+			bytes.write(encoded, 0, encoded.length);
+		}
+
+		public byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+
+		private static byte[] utf8(String value) {
+			try {
+				return value.getBytes("UTF-8");
+			}
+			catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+			}
+		}
+
+	}
+
+	private static class Input {
+
+		private final byte[] bytes;
+
+		private int position;
+
+		public Input(byte[] bytes, int type) {
+			this.bytes = bytes;
+			if (bytes.length < 3 || (bytes[0] & 0xFF) != MAGIC) {
+				throw new IllegalArgumentException("Not a recognized token format");
+			}
+			if (bytes[1] != VERSION) {
+				throw new IllegalArgumentException("Unsupported token format version: " + bytes[1]);
+			}
+			if (bytes[2] != type) {
+				throw new IllegalArgumentException("Unexpected token type: " + bytes[2]);
+			}
+			position = 3;
+		}
+
+		public int readByte() {
+			if (position >= bytes.length) {
+				throw new IllegalArgumentException("Unexpected end of token data");
+			}
+			return bytes[position++] & 0xFF;
+		}
+
+		public int readInt() {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed variable length integer");
+		}
+
+		public long readLong() {
+			long zigzag = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				zigzag |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return (zigzag >>> 1) ^ -(zigzag & 1);
+				}
+			}
+			throw new IllegalArgumentException("Malformed variable length long");
+		}
+
+		public String readString() {
+			int length = readInt() - 1;
+			if (length < 0) {
+				return null;
+			}
+			checkAvailable(length);
+			try {
+				String value = new String(bytes, position, length, "UTF-8");
+				position += length;
+				return value;
+			}
+			catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+			}
+		}
+
+		public <T> T readSerialized() {
+			int length = readInt();
+			checkAvailable(length);
+			byte[] value = new byte[length];
+			System.arraycopy(bytes, position, value, 0, length);
+			position += length;
+			return SerializationUtils.<T> deserialize(value);
+		}
+
+		private void checkAvailable(int length) {
+			if (length < 0 || length > bytes.length - position) {
+				throw new IllegalArgumentException("Unexpected end of token data");
+			}
+		}
+
+	}
+
+}
@@ -30,6 +30,7 @@ import org.springframework.security.oauth2.common.exceptions.InvalidScopeExcepti
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsHolder;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.util.Assert;
@@ -47,7 +48,7 @@ import org.springframework.util.Assert;
  * @author Dave Syer
  */
 public class DefaultTokenServices implements AuthorizationServerTokenServices, ResourceServerTokenServices,
-		ConsumerTokenServices, InitializingBean {
+		ConsumerTokenServices, StoredAccessTokenReader, InitializingBean {
 
 	private int refreshTokenValiditySeconds = 60 * 60 * 24 * 30; // default 30 days.
 
@@ -195,7 +196,8 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	}
 
 	public OAuth2Authentication loadAuthentication(String accessTokenValue) throws AuthenticationException {
-		OAuth2AccessToken accessToken = tokenStore.readAccessToken(accessTokenValue);
+		StoredAccessToken stored = readStoredAccessToken(accessTokenValue);
+		OAuth2AccessToken accessToken = stored == null ? null : stored.getAccessToken();
 		if (accessToken == null) {
 			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
 		}
@@ -204,10 +206,28 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 			throw new InvalidTokenException("Access token expired: " + accessTokenValue);
 		}
 
-		OAuth2Authentication result = tokenStore.readAuthentication(accessToken);
+		OAuth2Authentication result = stored.getAuthentication();
 		return result;
 	}
 
+	/**
+	 * Read an access token and its authentication from the token store, in one operation if the store supports it.
+	 * Unlike {@link #loadAuthentication(String)} this does not check the expiry.
+	 * 
+	 * @param accessTokenValue the token value
+	 * @return the token and its authentication, or null if there is no such token
+	 */
+	public StoredAccessToken readStoredAccessToken(String accessTokenValue) {
+		if (tokenStore instanceof StoredAccessTokenReader) {
+			return ((StoredAccessTokenReader) tokenStore).readStoredAccessToken(accessTokenValue);
+		}
+		OAuth2AccessToken accessToken = tokenStore.readAccessToken(accessTokenValue);
+		if (accessToken == null) {
+			return null;
+		}
+		return new StoredAccessToken(accessToken, tokenStore.readAuthentication(accessToken));
+	}
+
 	public String getClientId(String tokenValue) {
 		OAuth2Authentication authentication = tokenStore.readAuthentication(tokenValue);
 		if (authentication == null) {
@@ -269,7 +289,8 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	 */
 	protected int getAccessTokenValiditySeconds(AuthorizationRequest authorizationRequest) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(authorizationRequest.getClientId());
+			ClientDetails client = ClientDetailsHolder.loadClientByClientId(clientDetailsService,
+					authorizationRequest.getClientId());
 			Integer validity = client.getAccessTokenValiditySeconds();
 			if (validity != null) {
 				return validity;
@@ -285,7 +306,8 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	 */
 	protected int getRefreshTokenValiditySeconds(AuthorizationRequest authorizationRequest) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(authorizationRequest.getClientId());
+			ClientDetails client = ClientDetailsHolder.loadClientByClientId(clientDetailsService,
+					authorizationRequest.getClientId());
 			Integer validity = client.getRefreshTokenValiditySeconds();
 			if (validity != null) {
 				return validity;
@@ -302,7 +324,8 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	 */
 	protected boolean isSupportRefreshToken(AuthorizationRequest authorizationRequest) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(authorizationRequest.getClientId());
+			ClientDetails client = ClientDetailsHolder.loadClientByClientId(clientDetailsService,
+					authorizationRequest.getClientId());
 			return client.getAuthorizedGrantTypes().contains("refresh_token");
 		}
 		return this.supportRefreshToken;
@@ -1,59 +1,82 @@
 package org.springframework.security.oauth2.provider.token;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
-import org.springframework.util.Assert;
 
 /**
  * Implementation of token services that stores tokens in memory.
+ * <p>
+ * Each access token is held in a single record together with its authentication, and the secondary indexes (by
+ * authentication key, user name, client id and refresh token) are updated under a lock striped by authentication key,
+ * so concurrent changes to the same token are applied one at a time and readers always see a token together with its
+ * own authentication. Changes to tokens with different authentication keys do not contend.
+ * <p>
+ * Expired access tokens are tracked in a timing wheel and removed every {@link #setFlushInterval(int) flushInterval}
+ * inserts. Changes to the expiry of a token are queued while the lock is held and only applied to the wheel on the
+ * next flush (or when {@link #setFlushInterval(int) flushInterval} of them have queued up), so the wheel is not a
+ * point of contention either. To reclaim memory on time when there are few inserts, set a {@link #setSweepIntervalMillis(long) sweep
+ * interval}: a background thread is then started by {@link #afterPropertiesSet()} and stopped by {@link #destroy()}.
  * 
  * @author Ryan Heaton
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class InMemoryTokenStore implements TokenStore {
+public class InMemoryTokenStore implements TokenStore, StoredAccessTokenReader, InitializingBean, DisposableBean {
 
 	private static final int DEFAULT_FLUSH_INTERVAL = 1000;
 
-	private final ConcurrentHashMap<String, OAuth2AccessToken> accessTokenStore = new ConcurrentHashMap<String, OAuth2AccessToken>();
+	private static final int LOCK_STRIPES = 256;
 
-	private final ConcurrentHashMap<String, OAuth2AccessToken> authenticationToAccessTokenStore = new ConcurrentHashMap<String, OAuth2AccessToken>();
+	private final ConcurrentHashMap<String, AccessTokenRecord> accessTokenStore = new ConcurrentHashMap<String, AccessTokenRecord>();
 
-	private final ConcurrentHashMap<String, Collection<OAuth2AccessToken>> userNameToAccessTokenStore = new ConcurrentHashMap<String, Collection<OAuth2AccessToken>>();
+	private final ConcurrentHashMap<String, AccessTokenRecord> authenticationToAccessTokenStore = new ConcurrentHashMap<String, AccessTokenRecord>();
 
-	private final ConcurrentHashMap<String, Collection<OAuth2AccessToken>> clientIdToAccessTokenStore = new ConcurrentHashMap<String, Collection<OAuth2AccessToken>>();
+	private final ConcurrentHashMap<String, ConcurrentMap<String, OAuth2AccessToken>> userNameToAccessTokenStore = new ConcurrentHashMap<String, ConcurrentMap<String, OAuth2AccessToken>>();
 
-	private final ConcurrentHashMap<String, OAuth2RefreshToken> refreshTokenStore = new ConcurrentHashMap<String, OAuth2RefreshToken>();
+	private final ConcurrentHashMap<String, ConcurrentMap<String, OAuth2AccessToken>> clientIdToAccessTokenStore = new ConcurrentHashMap<String, ConcurrentMap<String, OAuth2AccessToken>>();
 
-	private final ConcurrentHashMap<String, String> accessTokenToRefreshTokenStore = new ConcurrentHashMap<String, String>();
+	private final ConcurrentHashMap<String, RefreshTokenRecord> refreshTokenStore = new ConcurrentHashMap<String, RefreshTokenRecord>();
 
-	private final ConcurrentHashMap<String, OAuth2Authentication> authenticationStore = new ConcurrentHashMap<String, OAuth2Authentication>();
+	private final ConcurrentHashMap<String, String> refreshTokenToAcessTokenStore = new ConcurrentHashMap<String, String>();
 
-	private final ConcurrentHashMap<String, OAuth2Authentication> refreshTokenAuthenticationStore = new ConcurrentHashMap<String, OAuth2Authentication>();
+	private final Object[] locks = new Object[LOCK_STRIPES];
 
-	private final ConcurrentHashMap<String, String> refreshTokenToAcessTokenStore = new ConcurrentHashMap<String, String>();
+	final TokenExpiryWheel expiryWheel = new TokenExpiryWheel(1000);
 
-	private final DelayQueue<TokenExpiry> expiryQueue = new DelayQueue<TokenExpiry>();
+	private final ConcurrentLinkedQueue<ExpiryUpdate> expiryUpdates = new ConcurrentLinkedQueue<ExpiryUpdate>();
 
-	private final ConcurrentHashMap<String, TokenExpiry> expiryMap = new ConcurrentHashMap<String, TokenExpiry>();
+	private final AtomicInteger expiryUpdateCount = new AtomicInteger(0);
 
 	private int flushInterval = DEFAULT_FLUSH_INTERVAL;
 
+	private long sweepIntervalMillis = 0;
+
+	private Thread sweeper;
+
+	private volatile boolean running = false;
+
 	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
 
 	private AtomicInteger flushCounter = new AtomicInteger(0);
 
+	public InMemoryTokenStore() {
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
 	/**
 	 * The number of tokens to store before flushing expired tokens. Defaults to 1000.
 	 * 
@@ -72,6 +95,39 @@ public class InMemoryTokenStore implements TokenStore {
 		return flushInterval;
 	}
 
+	/**
+	 * The interval in milliseconds between sweeps for expired tokens by a background thread. Defaults to 0, meaning no
+	 * background thread, so expired tokens are only removed on insert.
+	 * 
+	 * @param sweepIntervalMillis the sweep interval to set
+	 */
+	public void setSweepIntervalMillis(long sweepIntervalMillis) {
+		this.sweepIntervalMillis = sweepIntervalMillis;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (sweepIntervalMillis <= 0 || running) {
+			return;
+		}
+		running = true;
+		sweeper = new Thread(new Runnable() {
+			public void run() {
+				sweep();
+			}
+		}, "InMemoryTokenStore-sweeper");
+		sweeper.setDaemon(true);
+		sweeper.start();
+	}
+
+	public void destroy() throws Exception {
+		running = false;
+		if (sweeper != null) {
+			sweeper.interrupt();
+			sweeper.join();
+			sweeper = null;
+		}
+	}
+
 	/**
 	 * Convenience method for super admin users to remove all tokens (useful for testing, not really in production)
 	 */
@@ -81,11 +137,12 @@ public class InMemoryTokenStore implements TokenStore {
 		userNameToAccessTokenStore.clear();
 		clientIdToAccessTokenStore.clear();
 		refreshTokenStore.clear();
-		accessTokenToRefreshTokenStore.clear();
-		authenticationStore.clear();
-		refreshTokenAuthenticationStore.clear();
 		refreshTokenToAcessTokenStore.clear();
-		expiryQueue.clear();
+		synchronized (expiryWheel) {
+			expiryUpdates.clear();
+			expiryUpdateCount.set(0);
+			expiryWheel.clear();
+		}
 	}
 
 	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
@@ -93,34 +150,32 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public int getAccessTokenCount() {
-		Assert.state(accessTokenStore.isEmpty() || accessTokenStore.size() >= accessTokenToRefreshTokenStore.size(),
-				"Too many refresh tokens");
-		Assert.state(accessTokenStore.size() == authenticationToAccessTokenStore.size(),
-				"Inconsistent token store state");
-		Assert.state(accessTokenStore.size() <= authenticationStore.size(), "Inconsistent authentication store state");
 		return accessTokenStore.size();
 	}
 
 	public int getRefreshTokenCount() {
-		Assert.state(refreshTokenStore.size() == refreshTokenToAcessTokenStore.size(),
-				"Inconsistent refresh token store state");
-		return accessTokenStore.size();
+		return refreshTokenStore.size();
 	}
 
 	public int getExpiryTokenCount() {
-		return expiryQueue.size();
+		synchronized (expiryWheel) {
+			applyExpiryUpdates();
+			return expiryWheel.size();
+		}
 	}
 
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
 		String key = authenticationKeyGenerator.extractKey(authentication);
-		OAuth2AccessToken accessToken = authenticationToAccessTokenStore.get(key);
-		if (accessToken != null
-				&& !key.equals(authenticationKeyGenerator.extractKey(readAuthentication(accessToken.getValue())))) {
+		AccessTokenRecord record = authenticationToAccessTokenStore.get(key);
+		if (record == null) {
+			return null;
+		}
+		if (!key.equals(authenticationKeyGenerator.extractKey(record.authentication))) {
 			// Keep the stores consistent (maybe the same user is represented by this authentication but the details
 			// have changed)
-			storeAccessToken(accessToken, authentication);
+			storeAccessToken(record.token, authentication);
 		}
-		return accessToken;
+		return record.token;
 	}
 
 	public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
@@ -128,7 +183,8 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2Authentication readAuthentication(String token) {
-		return this.authenticationStore.get(token);
+		AccessTokenRecord record = this.accessTokenStore.get(token);
+		return record == null ? null : record.authentication;
 	}
 
 	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
@@ -136,7 +192,8 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2Authentication readAuthenticationForRefreshToken(String token) {
-		return this.refreshTokenAuthenticationStore.get(token);
+		RefreshTokenRecord record = this.refreshTokenStore.get(token);
+		return record == null ? null : record.authentication;
 	}
 
 	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
@@ -144,35 +201,35 @@ public class InMemoryTokenStore implements TokenStore {
 			flush();
 			this.flushCounter.set(0);
 		}
-		this.accessTokenStore.put(token.getValue(), token);
-		this.authenticationStore.put(token.getValue(), authentication);
-		this.authenticationToAccessTokenStore.put(authenticationKeyGenerator.extractKey(authentication), token);
-		if (!authentication.isClientOnly()) {
-			addToCollection(this.userNameToAccessTokenStore, authentication.getName(), token);
-		}
-		addToCollection(this.clientIdToAccessTokenStore, authentication.getAuthorizationRequest().getClientId(), token);
-		if (token.getExpiration() != null) {
-			TokenExpiry expiry = new TokenExpiry(token.getValue(), token.getExpiration());
-			// Remove existing expiry for this token if present
-			expiryQueue.remove(expiryMap.put(token.getValue(), expiry));
-			this.expiryQueue.put(expiry);
-		}
-		if (token.getRefreshToken() != null && token.getRefreshToken().getValue() != null) {
-			this.refreshTokenToAcessTokenStore.put(token.getRefreshToken().getValue(), token.getValue());
-			this.accessTokenToRefreshTokenStore.put(token.getValue(), token.getRefreshToken().getValue());
-		}
-	}
-
-	private void addToCollection(ConcurrentHashMap<String, Collection<OAuth2AccessToken>> store, String key,
-			OAuth2AccessToken token) {
-		if (!store.containsKey(key)) {
-			synchronized (store) {
-				if (!store.containsKey(key)) {
-					store.put(key, new HashSet<OAuth2AccessToken>());
+		String key = authenticationKeyGenerator.extractKey(authentication);
+		AccessTokenRecord record = new AccessTokenRecord(token, authentication, key);
+		while (true) {
+			AccessTokenRecord existing = this.accessTokenStore.get(token.getValue());
+			// Lock the old and new keys in a fixed order
+			int stripe = getStripe(key);
+			int other = existing == null ? stripe : getStripe(existing.authenticationKey);
+			synchronized (locks[Math.min(stripe, other)]) {
+				synchronized (locks[Math.max(stripe, other)]) {
+					if (this.accessTokenStore.get(token.getValue()) != existing) {
+						// Changed while we were waiting for the lock, so the old key might be wrong
+						continue;
+					}
+					if (existing == null) {
+						if (this.accessTokenStore.putIfAbsent(token.getValue(), record) != null) {
+							// Stored under another lock since we looked
+							continue;
+						}
+					}
+					else {
+						unindex(existing);
+						this.accessTokenStore.put(token.getValue(), record);
+					}
+					index(record);
+					break;
 				}
 			}
 		}
-		store.get(key).add(token);
+		applyExpiryUpdatesIfBacklogged();
 	}
 
 	public void removeAccessToken(OAuth2AccessToken accessToken) {
@@ -180,40 +237,33 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2AccessToken readAccessToken(String tokenValue) {
-		return this.accessTokenStore.get(tokenValue);
+		AccessTokenRecord record = this.accessTokenStore.get(tokenValue);
+		return record == null ? null : record.token;
 	}
 
-	public void removeAccessToken(String tokenValue) {
-		OAuth2AccessToken removed = this.accessTokenStore.remove(tokenValue);
-		String refresh = this.accessTokenToRefreshTokenStore.remove(tokenValue);
-		if (refresh != null) {
-			// Don't remove the refresh token itself - it's up to the caller to do that
-			this.refreshTokenToAcessTokenStore.remove(tokenValue);
+	public StoredAccessToken readStoredAccessToken(String tokenValue) {
+		AccessTokenRecord record = this.accessTokenStore.get(tokenValue);
+		if (record == null) {
+			return null;
 		}
-		OAuth2Authentication authentication = this.authenticationStore.remove(tokenValue);
-		if (authentication != null) {
-			this.authenticationToAccessTokenStore.remove(authenticationKeyGenerator.extractKey(authentication));
-			Collection<OAuth2AccessToken> tokens;
-			tokens = this.userNameToAccessTokenStore.get(authentication.getName());
-			if (tokens != null) {
-				tokens.remove(removed);
-			}
-			String clientId = authentication.getAuthorizationRequest().getClientId();
-			tokens = this.clientIdToAccessTokenStore.get(clientId);
-			if (tokens != null) {
-				tokens.remove(removed);
-			}
-			this.authenticationToAccessTokenStore.remove(authenticationKeyGenerator.extractKey(authentication));
+		return new StoredAccessToken(record.token, record.authentication);
+	}
+
+	public void removeAccessToken(String tokenValue) {
+		AccessTokenRecord record = this.accessTokenStore.get(tokenValue);
+		while (record != null && !removeAccessToken(tokenValue, record)) {
+			record = this.accessTokenStore.get(tokenValue);
 		}
+		applyExpiryUpdatesIfBacklogged();
 	}
 
 	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
-		this.refreshTokenStore.put(refreshToken.getValue(), refreshToken);
-		this.refreshTokenAuthenticationStore.put(refreshToken.getValue(), authentication);
+		this.refreshTokenStore.put(refreshToken.getValue(), new RefreshTokenRecord(refreshToken, authentication));
 	}
 
 	public OAuth2RefreshToken readRefreshToken(String tokenValue) {
-		return this.refreshTokenStore.get(tokenValue);
+		RefreshTokenRecord record = this.refreshTokenStore.get(tokenValue);
+		return record == null ? null : record.token;
 	}
 
 	public void removeRefreshToken(OAuth2RefreshToken refreshToken) {
@@ -222,7 +272,6 @@ public class InMemoryTokenStore implements TokenStore {
 
 	public void removeRefreshToken(String tokenValue) {
 		this.refreshTokenStore.remove(tokenValue);
-		this.refreshTokenAuthenticationStore.remove(tokenValue);
 		this.refreshTokenToAcessTokenStore.remove(tokenValue);
 	}
 
@@ -238,50 +287,197 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
-		Collection<OAuth2AccessToken> result = clientIdToAccessTokenStore.get(clientId);
-		return result != null ? Collections.<OAuth2AccessToken> unmodifiableCollection(result) : Collections
-				.<OAuth2AccessToken> emptySet();
+		return snapshot(clientIdToAccessTokenStore.get(clientId));
 	}
 
 	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
-		Collection<OAuth2AccessToken> result = userNameToAccessTokenStore.get(userName);
-		return result != null ? Collections.<OAuth2AccessToken> unmodifiableCollection(result) : Collections
-				.<OAuth2AccessToken> emptySet();
+		return snapshot(userNameToAccessTokenStore.get(userName));
 	}
 
-	private void flush() {
-		TokenExpiry expiry = expiryQueue.poll();
-		while (expiry != null) {
-			removeAccessToken(expiry.getValue());
-			expiry = expiryQueue.poll();
+	private Collection<OAuth2AccessToken> snapshot(ConcurrentMap<String, OAuth2AccessToken> tokens) {
+		if (tokens == null || tokens.isEmpty()) {
+			return Collections.<OAuth2AccessToken> emptySet();
+		}
+		return Collections.<OAuth2AccessToken> unmodifiableCollection(new ArrayList<OAuth2AccessToken>(tokens.values()));
+	}
+
+	/**
+	 * Remove an access token if it is still stored with the record given.
+	 * 
+	 * @return false if the token was changed concurrently and the caller should look again
+	 */
+	private boolean removeAccessToken(String tokenValue, AccessTokenRecord record) {
+		synchronized (locks[getStripe(record.authenticationKey)]) {
+			AccessTokenRecord existing = this.accessTokenStore.get(tokenValue);
+			if (existing != record) {
+				return existing == null;
+			}
+			// Nobody else can store the token until it is removed, so its indexes and expiry are still ours to change
+			queueExpiryUpdate(tokenValue, null);
+			unindex(record);
+			this.accessTokenStore.remove(tokenValue);
+			return true;
+		}
+	}
+
+	// Callers must hold the lock for the record's authentication key
+	private void index(AccessTokenRecord record) {
+		OAuth2AccessToken token = record.token;
+		this.authenticationToAccessTokenStore.put(record.authenticationKey, record);
+		if (!record.authentication.isClientOnly()) {
+			addToIndex(this.userNameToAccessTokenStore, record.authentication.getName(), token);
+		}
+		addToIndex(this.clientIdToAccessTokenStore, record.authentication.getAuthorizationRequest().getClientId(),
+				token);
+		// Replaces the existing expiry for this token if present
+		queueExpiryUpdate(token.getValue(), token.getExpiration() == null ? null : token.getExpiration().getTime());
+		if (record.refreshTokenValue != null) {
+			this.refreshTokenToAcessTokenStore.put(record.refreshTokenValue, token.getValue());
+		}
+	}
+
+	// Callers must hold the lock for the record's authentication key
+	private void unindex(AccessTokenRecord record) {
+		String tokenValue = record.token.getValue();
+		// Another token might have been stored for the same authentication since
+		this.authenticationToAccessTokenStore.remove(record.authenticationKey, record);
+		removeFromIndex(this.userNameToAccessTokenStore, record.authentication.getName(), tokenValue);
+		removeFromIndex(this.clientIdToAccessTokenStore, record.authentication.getAuthorizationRequest()
+				.getClientId(), tokenValue);
+		if (record.refreshTokenValue != null) {
+			// Don't remove the refresh token itself - it's up to the caller to do that
+			this.refreshTokenToAcessTokenStore.remove(record.refreshTokenValue, tokenValue);
+		}
+	}
+
+	private void addToIndex(ConcurrentHashMap<String, ConcurrentMap<String, OAuth2AccessToken>> index, String key,
+			OAuth2AccessToken token) {
+		ConcurrentMap<String, OAuth2AccessToken> tokens = index.get(key);
+		if (tokens == null) {
+			ConcurrentMap<String, OAuth2AccessToken> created = new ConcurrentHashMap<String, OAuth2AccessToken>();
+			tokens = index.putIfAbsent(key, created);
+			if (tokens == null) {
+				tokens = created;
+			}
+		}
+		tokens.put(token.getValue(), token);
+	}
+
+	private void removeFromIndex(ConcurrentHashMap<String, ConcurrentMap<String, OAuth2AccessToken>> index,
+			String key, String tokenValue) {
+		ConcurrentMap<String, OAuth2AccessToken> tokens = index.get(key);
+		if (tokens != null) {
+			tokens.remove(tokenValue);
 		}
 	}
 
-	private static class TokenExpiry implements Delayed {
+	private int getStripe(String authenticationKey) {
+		int hash = authenticationKey.hashCode();
+		// Spread the bits because the number of stripes is a power of two
+		hash ^= (hash >>> 16);
+		return hash & (LOCK_STRIPES - 1);
+	}
+
+	// Callers must hold the lock for the token's authentication key, so the updates for a token are queued in order
+	private void queueExpiryUpdate(String tokenValue, Long expiry) {
+		this.expiryUpdates.offer(new ExpiryUpdate(tokenValue, expiry));
+		this.expiryUpdateCount.incrementAndGet();
+	}
 
-		private final long expiry;
+	private void applyExpiryUpdatesIfBacklogged() {
+		if (this.expiryUpdateCount.get() >= this.flushInterval) {
+			synchronized (expiryWheel) {
+				applyExpiryUpdates();
+			}
+		}
+	}
 
-		private final String value;
+	// Callers must hold the lock on the wheel, so the updates are applied one drain at a time and in order
+	private void applyExpiryUpdates() {
+		ExpiryUpdate update;
+		while ((update = this.expiryUpdates.poll()) != null) {
+			this.expiryUpdateCount.decrementAndGet();
+			if (update.expiry == null) {
+				this.expiryWheel.cancel(update.tokenValue);
+			}
+			else {
+				this.expiryWheel.schedule(update.tokenValue, update.expiry);
+			}
+		}
+	}
 
-		public TokenExpiry(String value, Date date) {
-			this.value = value;
-			this.expiry = date.getTime();
+	private void flush() {
+		long now = System.currentTimeMillis();
+		List<String> expired;
+		synchronized (expiryWheel) {
+			applyExpiryUpdates();
+			expired = expiryWheel.advance(now);
+		}
+		for (String value : expired) {
+			AccessTokenRecord record = accessTokenStore.get(value);
+			// The token might have been stored again with a new expiry since the wheel gave it up
+			if (record != null && record.token.getExpiration() != null
+					&& record.token.getExpiration().getTime() <= now) {
+				removeAccessToken(value, record);
+			}
 		}
+	}
 
-		public int compareTo(Delayed other) {
-			if (this == other) {
-				return 0;
+	private void sweep() {
+		while (running) {
+			try {
+				Thread.sleep(sweepIntervalMillis);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
 			}
-			long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
-			return (diff == 0 ? 0 : ((diff < 0) ? -1 : 1));
+			flush();
+		}
+	}
+
+	private static class AccessTokenRecord {
+
+		private final OAuth2AccessToken token;
+
+		private final OAuth2Authentication authentication;
+
+		private final String authenticationKey;
+
+		private final String refreshTokenValue;
+
+		public AccessTokenRecord(OAuth2AccessToken token, OAuth2Authentication authentication, String authenticationKey) {
+			this.token = token;
+			this.authentication = authentication;
+			this.authenticationKey = authenticationKey;
+			OAuth2RefreshToken refreshToken = token.getRefreshToken();
+			this.refreshTokenValue = refreshToken == null ? null : refreshToken.getValue();
 		}
 
-		public long getDelay(TimeUnit unit) {
-			return expiry - System.currentTimeMillis();
+	}
+
+	private static class ExpiryUpdate {
+
+		private final String tokenValue;
+
+		private final Long expiry;
+
+		public ExpiryUpdate(String tokenValue, Long expiry) {
+			this.tokenValue = tokenValue;
+			this.expiry = expiry;
 		}
 
-		public String getValue() {
-			return value;
+	}
+
+	private static class RefreshTokenRecord {
+
+		private final OAuth2RefreshToken token;
+
+		private final OAuth2Authentication authentication;
+
+		public RefreshTokenRecord(OAuth2RefreshToken token, OAuth2Authentication authentication) {
+			this.token = token;
+			this.authentication = authentication;
 		}
 
 	}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationRequestHolder;
+
+/**
+ * Token codec using standard Java serialization. This is the default for the JDBC stores and the format that they
+ * have always used.
+ */
+public class JavaSerializationTokenCodec implements TokenCodec {
+
+	public byte[] encodeAccessToken(OAuth2AccessToken token) {
+		return SerializationUtils.serialize(token);
+	}
+
+	public OAuth2AccessToken decodeAccessToken(byte[] bytes) {
+		return SerializationUtils.deserialize(bytes);
+	}
+
+	public byte[] encodeRefreshToken(OAuth2RefreshToken token) {
+		return SerializationUtils.serialize(token);
+	}
+
+	public OAuth2RefreshToken decodeRefreshToken(byte[] bytes) {
+		return SerializationUtils.deserialize(bytes);
+	}
+
+	public byte[] encodeAuthentication(OAuth2Authentication authentication) {
+		return SerializationUtils.serialize(authentication);
+	}
+
+	public OAuth2Authentication decodeAuthentication(byte[] bytes) {
+		return SerializationUtils.deserialize(bytes);
+	}
+
+	public byte[] encodeAuthorizationRequestHolder(AuthorizationRequestHolder holder) {
+		return SerializationUtils.serialize(holder);
+	}
+
+	public AuthorizationRequestHolder decodeAuthorizationRequestHolder(byte[] bytes) {
+		return SerializationUtils.deserialize(bytes);
+	}
+
+}
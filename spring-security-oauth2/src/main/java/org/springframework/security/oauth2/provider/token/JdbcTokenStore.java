@@ -4,11 +4,13 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import javax.sql.DataSource;
@@ -16,12 +18,13 @@ import javax.sql.DataSource;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.StatementCreatorUtils;
 import org.springframework.jdbc.core.support.SqlLobValue;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.util.Assert;
 
@@ -32,7 +35,7 @@ import org.springframework.util.Assert;
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class JdbcTokenStore implements TokenStore {
+public class JdbcTokenStore implements TokenStore, StoredAccessTokenReader {
 
 	private static final Log LOG = LogFactory.getLog(JdbcTokenStore.class);
 
@@ -42,6 +45,8 @@ public class JdbcTokenStore implements TokenStore {
 
 	private static final String DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT = "select token_id, authentication from oauth_access_token where token_id = ?";
 
+	private static final String DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token, authentication from oauth_access_token where token_id = ?";
+
 	private static final String DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token from oauth_access_token where authentication_id = ?";
 
 	private static final String DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT = "select token_id, token from oauth_access_token where user_name = ?";
@@ -60,12 +65,19 @@ public class JdbcTokenStore implements TokenStore {
 
 	private static final String DEFAULT_REFRESH_TOKEN_DELETE_STATEMENT = "delete from oauth_refresh_token where token_id = ?";
 
+	private static final int[] ACCESS_TOKEN_INSERT_TYPES = new int[] { Types.VARCHAR, Types.BLOB, Types.VARCHAR,
+			Types.VARCHAR, Types.VARCHAR, Types.BLOB, Types.VARCHAR };
+
+	private static final int[] REFRESH_TOKEN_INSERT_TYPES = new int[] { Types.VARCHAR, Types.BLOB, Types.BLOB };
+
 	private String insertAccessTokenSql = DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT;
 
 	private String selectAccessTokenSql = DEFAULT_ACCESS_TOKEN_SELECT_STATEMENT;
 
 	private String selectAccessTokenAuthenticationSql = DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT;
 
+	private String selectAccessTokenAndAuthenticationSql = DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT;
+
 	private String selectAccessTokenFromAuthenticationSql = DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT;
 
 	private String selectAccessTokensFromUserNameSql = DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT;
@@ -86,6 +98,8 @@ public class JdbcTokenStore implements TokenStore {
 
 	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
 
+	private TokenCodec tokenCodec = new JavaSerializationTokenCodec();
+
 	private final JdbcTemplate jdbcTemplate;
 
 	public JdbcTokenStore(DataSource dataSource) {
@@ -97,6 +111,17 @@ public class JdbcTokenStore implements TokenStore {
 		this.authenticationKeyGenerator = authenticationKeyGenerator;
 	}
 
+	/**
+	 * The codec used to convert tokens and authentications to and from the binary columns. Defaults to Java
+	 * serialization. A {@link CompactTokenCodec} makes smaller rows that are faster to read, and can still read rows
+	 * written with Java serialization.
+	 * 
+	 * @param tokenCodec the token codec to set
+	 */
+	public void setTokenCodec(TokenCodec tokenCodec) {
+		this.tokenCodec = tokenCodec;
+	}
+
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
 		OAuth2AccessToken accessToken = null;
 
@@ -129,17 +154,7 @@ public class JdbcTokenStore implements TokenStore {
 	}
 
 	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
-		String refreshToken = null;
-		if (token.getRefreshToken() != null) {
-			refreshToken = token.getRefreshToken().getValue();
-		}
-
-		jdbcTemplate.update(insertAccessTokenSql, new Object[] { extractTokenKey(token.getValue()),
-				new SqlLobValue(serializeAccessToken(token)), authenticationKeyGenerator.extractKey(authentication),
-				authentication.isClientOnly() ? null : authentication.getName(),
-				authentication.getAuthorizationRequest().getClientId(),
-				new SqlLobValue(serializeAuthentication(authentication)), extractTokenKey(refreshToken) }, new int[] {
-				Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB, Types.VARCHAR });
+		insertAccessTokens(Collections.singletonList(createAccessTokenRow(token, authentication)));
 	}
 
 	public OAuth2AccessToken readAccessToken(String tokenValue) {
@@ -165,6 +180,31 @@ public class JdbcTokenStore implements TokenStore {
 		return accessToken;
 	}
 
+	public StoredAccessToken readStoredAccessToken(String tokenValue) {
+		StoredAccessToken stored = null;
+
+		try {
+			stored = jdbcTemplate.queryForObject(selectAccessTokenAndAuthenticationSql,
+					new RowMapper<StoredAccessToken>() {
+						public StoredAccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
+							return new StoredAccessToken(deserializeAccessToken(rs.getBytes(2)),
+									deserializeAuthentication(rs.getBytes(3)));
+						}
+					}, extractTokenKey(tokenValue));
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Failed to find access token for token " + tokenValue);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			LOG.warn("Failed to deserialize access token or authentication for " + tokenValue);
+			removeAccessToken(tokenValue);
+		}
+
+		return stored;
+	}
+
 	public void removeAccessToken(OAuth2AccessToken token) {
 		removeAccessToken(token.getValue());
 	}
@@ -202,10 +242,7 @@ public class JdbcTokenStore implements TokenStore {
 	}
 
 	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
-		jdbcTemplate.update(insertRefreshTokenSql, new Object[] { extractTokenKey(refreshToken.getValue()),
-				new SqlLobValue(serializeRefreshToken(refreshToken)),
-				new SqlLobValue(serializeAuthentication(authentication)) }, new int[] { Types.VARCHAR, Types.BLOB,
-				Types.BLOB });
+		insertRefreshTokens(Collections.singletonList(createRefreshTokenRow(refreshToken, authentication)));
 	}
 
 	public OAuth2RefreshToken readRefreshToken(String token) {
@@ -320,6 +357,89 @@ public class JdbcTokenStore implements TokenStore {
 		return tokens;
 	}
 
+	/**
+	 * Create the column values for a row in the access token table, in the order expected by the
+	 * {@link #setInsertAccessTokenSql(String) insert statement}.
+	 * 
+	 * @param token the access token to store
+	 * @param authentication the authentication associated with the token
+	 * @return the column values for the insert
+	 */
+	protected Object[] createAccessTokenRow(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		String refreshToken = null;
+		if (token.getRefreshToken() != null) {
+			refreshToken = token.getRefreshToken().getValue();
+		}
+		return new Object[] { extractTokenKey(token.getValue()), new SqlLobValue(serializeAccessToken(token)),
+				authenticationKeyGenerator.extractKey(authentication),
+				authentication.isClientOnly() ? null : authentication.getName(),
+				authentication.getAuthorizationRequest().getClientId(),
+				new SqlLobValue(serializeAuthentication(authentication)), extractTokenKey(refreshToken) };
+	}
+
+	/**
+	 * Create the column values for a row in the refresh token table, in the order expected by the
+	 * {@link #setInsertRefreshTokenSql(String) insert statement}.
+	 * 
+	 * @param refreshToken the refresh token to store
+	 * @param authentication the authentication associated with the token
+	 * @return the column values for the insert
+	 */
+	protected Object[] createRefreshTokenRow(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		return new Object[] { extractTokenKey(refreshToken.getValue()),
+				new SqlLobValue(serializeRefreshToken(refreshToken)),
+				new SqlLobValue(serializeAuthentication(authentication)) };
+	}
+
+	/**
+	 * Insert rows created by {@link #createAccessTokenRow(OAuth2AccessToken, OAuth2Authentication)}, as a single JDBC
+	 * batch if there is more than one.
+	 * 
+	 * @param rows the rows to insert
+	 */
+	protected void insertAccessTokens(List<Object[]> rows) {
+		insert(insertAccessTokenSql, rows, ACCESS_TOKEN_INSERT_TYPES);
+	}
+
+	/**
+	 * Insert rows created by {@link #createRefreshTokenRow(OAuth2RefreshToken, OAuth2Authentication)}, as a single
+	 * JDBC batch if there is more than one.
+	 * 
+	 * @param rows the rows to insert
+	 */
+	protected void insertRefreshTokens(List<Object[]> rows) {
+		insert(insertRefreshTokenSql, rows, REFRESH_TOKEN_INSERT_TYPES);
+	}
+
+	private void insert(String sql, final List<Object[]> rows, final int[] types) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		if (rows.size() == 1) {
+			jdbcTemplate.update(sql, rows.get(0), types);
+			return;
+		}
+		try {
+			jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					Object[] row = rows.get(i);
+					for (int j = 0; j < row.length; j++) {
+						StatementCreatorUtils.setParameterValue(ps, j + 1, types[j], row[j]);
+					}
+				}
+
+				public int getBatchSize() {
+					return rows.size();
+				}
+			});
+		}
+		finally {
+			for (Object[] row : rows) {
+				StatementCreatorUtils.cleanupParameters(row);
+			}
+		}
+	}
+
 	protected String extractTokenKey(String value) {
 		if (value == null) {
 			return null;
@@ -355,27 +475,27 @@ public class JdbcTokenStore implements TokenStore {
 	}
 
 	protected byte[] serializeAccessToken(OAuth2AccessToken token) {
-		return SerializationUtils.serialize(token);
+		return tokenCodec.encodeAccessToken(token);
 	}
 
 	protected byte[] serializeRefreshToken(OAuth2RefreshToken token) {
-		return SerializationUtils.serialize(token);
+		return tokenCodec.encodeRefreshToken(token);
 	}
 
 	protected byte[] serializeAuthentication(OAuth2Authentication authentication) {
-		return SerializationUtils.serialize(authentication);
+		return tokenCodec.encodeAuthentication(authentication);
 	}
 
 	protected OAuth2AccessToken deserializeAccessToken(byte[] token) {
-		return SerializationUtils.deserialize(token);
+		return tokenCodec.decodeAccessToken(token);
 	}
 
 	protected OAuth2RefreshToken deserializeRefreshToken(byte[] token) {
-		return SerializationUtils.deserialize(token);
+		return tokenCodec.decodeRefreshToken(token);
 	}
 
 	protected OAuth2Authentication deserializeAuthentication(byte[] authentication) {
-		return SerializationUtils.deserialize(authentication);
+		return tokenCodec.decodeAuthentication(authentication);
 	}
 
 	public void setInsertAccessTokenSql(String insertAccessTokenSql) {
@@ -406,6 +526,10 @@ public class JdbcTokenStore implements TokenStore {
 		this.selectAccessTokenAuthenticationSql = selectAccessTokenAuthenticationSql;
 	}
 
+	public void setSelectAccessTokenAndAuthenticationSql(String selectAccessTokenAndAuthenticationSql) {
+		this.selectAccessTokenAndAuthenticationSql = selectAccessTokenAndAuthenticationSql;
+	}
+
 	public void setSelectRefreshTokenAuthenticationSql(String selectRefreshTokenAuthenticationSql) {
 		this.selectRefreshTokenAuthenticationSql = selectRefreshTokenAuthenticationSql;
 	}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.Signer;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link TokenEnhancer} that replaces the value of an access token with a signed JWT carrying everything a resource
+ * server needs to know about it (client id, scope, user name, authorities, resource ids and expiry). A resource server
+ * can then authenticate requests with a {@link JwtTokenServices} without going back to the token store. The original
+ * token value is kept in the "jti" claim.
+ * <p>
+ * The signing key is either a shared secret (for HMAC SHA-256) or a PEM encoded RSA private key (for RSA SHA-256).
+ * Alternatively a {@link Signer} can be provided directly.
+ */
+public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
+
+	public static final String TOKEN_ID = "jti";
+
+	public static final String CLIENT_ID = "client_id";
+
+	public static final String USER_NAME = "user_name";
+
+	public static final String SCOPE = "scope";
+
+	public static final String AUTHORITIES = "authorities";
+
+	public static final String AUDIENCE = "aud";
+
+	public static final String EXPIRES = "exp";
+
+	private static final String PEM_PREFIX = "-----BEGIN";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private Signer signer;
+
+	private String signingKey;
+
+	/**
+	 * The signer to use for the tokens. If not provided one is created from the {@link #setSigningKey(String) signing
+	 * key}.
+	 *
+	 * @param signer the signer to set
+	 */
+	public void setSigner(Signer signer) {
+		this.signer = signer;
+	}
+
+	/**
+	 * The key used to sign tokens: either a PEM encoded RSA private key or a shared secret for a MAC.
+	 *
+	 * @param signingKey the signing key to set
+	 */
+	public void setSigningKey(String signingKey) {
+		this.signingKey = signingKey;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (signer == null) {
+			Assert.state(StringUtils.hasText(signingKey), "Either a signer or a signing key is required");
+			signer = createSigner(signingKey.trim());
+		}
+	}
+
+	public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+		DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(accessToken);
+		String content;
+		try {
+			content = mapper.writeValueAsString(convertAccessToken(accessToken, authentication));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot convert access token to JSON", e);
+		}
+		return result.setValue(JwtHelper.encode(content, signer).getEncoded());
+	}
+
+	/**
+	 * Extract the claims to encode in the token. Subclasses can override to add more, but a {@link JwtTokenServices}
+	 * will only use the ones it knows about.
+	 *
+	 * @param accessToken the access token
+	 * @param authentication the current authentication
+	 * @return a map of claims to serialize as JSON
+	 */
+	protected Map<String, Object> convertAccessToken(OAuth2AccessToken accessToken,
+			OAuth2Authentication authentication) {
+		Map<String, Object> claims = new LinkedHashMap<String, Object>();
+		AuthorizationRequest clientToken = authentication.getAuthorizationRequest();
+		claims.put(TOKEN_ID, accessToken.getValue());
+		claims.put(CLIENT_ID, clientToken.getClientId());
+		if (!authentication.isClientOnly()) {
+			claims.put(USER_NAME, authentication.getUserAuthentication().getName());
+		}
+		if (accessToken.getScope() != null) {
+			claims.put(SCOPE, accessToken.getScope());
+		}
+		if (authentication.getAuthorities() != null) {
+			claims.put(AUTHORITIES, AuthorityUtils.authorityListToSet(authentication.getAuthorities()));
+		}
+		if (clientToken.getResourceIds() != null && !clientToken.getResourceIds().isEmpty()) {
+			claims.put(AUDIENCE, clientToken.getResourceIds());
+		}
+		if (accessToken.getExpiration() != null) {
+			claims.put(EXPIRES, accessToken.getExpiration().getTime() / 1000);
+		}
+		return claims;
+	}
+
+	private static Signer createSigner(String key) {
+		if (key.startsWith(PEM_PREFIX)) {
+			return new RsaSigner(key);
+		}
+		return new MacSigner(key);
+	}
+
+}
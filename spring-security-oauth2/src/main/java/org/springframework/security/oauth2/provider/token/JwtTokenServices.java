@@ -0,0 +1,191 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link ResourceServerTokenServices} for access tokens created by a {@link JwtTokenEnhancer}. The token is
+ * authenticated by verifying its signature and the authentication is rebuilt purely from its claims, so there is no
+ * call to a token store (and revoking a token in the store has no effect here before it expires).
+ * <p>
+ * The verifier key is either the shared secret used by the authorization server (for HMAC SHA-256) or the RSA public
+ * key corresponding to its signing key, PEM or ssh encoded. Alternatively a {@link SignatureVerifier} can be provided
+ * directly.
+ */
+public class JwtTokenServices implements ResourceServerTokenServices, InitializingBean {
+
+	private static final String PEM_PREFIX = "-----BEGIN";
+
+	private static final String SSH_PREFIX = "ssh-";
+
+	private static final String UNKNOWN_PASSWORD = "N/A";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private SignatureVerifier verifier;
+
+	private String verifierKey;
+
+	/**
+	 * The verifier to use for the token signatures. If not provided one is created from the
+	 * {@link #setVerifierKey(String) verifier key}.
+	 *
+	 * @param verifier the verifier to set
+	 */
+	public void setVerifier(SignatureVerifier verifier) {
+		this.verifier = verifier;
+	}
+
+	/**
+	 * The key used to verify tokens: either an RSA public key or a shared secret for a MAC.
+	 *
+	 * @param verifierKey the verifier key to set
+	 */
+	public void setVerifierKey(String verifierKey) {
+		this.verifierKey = verifierKey;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (verifier == null) {
+			Assert.state(StringUtils.hasText(verifierKey), "Either a verifier or a verifier key is required");
+			verifier = createVerifier(verifierKey.trim());
+		}
+	}
+
+	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
+		return extractAuthentication(decode(accessToken, true));
+	}
+
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		Map<String, Object> claims = decode(accessToken, false);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(accessToken);
+		token.setExpiration(getExpiration(claims));
+		token.setScope(getStrings(claims, JwtTokenEnhancer.SCOPE));
+		return token;
+	}
+
+	/**
+	 * Rebuild the authentication from the claims in a verified token.
+	 *
+	 * @param claims the claims from the token
+	 * @return an authentication
+	 */
+	protected OAuth2Authentication extractAuthentication(Map<String, Object> claims) {
+		String clientId = (String) claims.get(JwtTokenEnhancer.CLIENT_ID);
+		if (clientId == null) {
+			throw new InvalidTokenException("Access token has no client id");
+		}
+		Collection<? extends GrantedAuthority> authorities = AuthorityUtils.createAuthorityList(getStrings(claims,
+				JwtTokenEnhancer.AUTHORITIES).toArray(new String[0]));
+		DefaultAuthorizationRequest request = new DefaultAuthorizationRequest(clientId, getStrings(claims,
+				JwtTokenEnhancer.SCOPE));
+		request.setResourceIds(getStrings(claims, JwtTokenEnhancer.AUDIENCE));
+		request.setApproved(true);
+		Authentication user = null;
+		String userName = (String) claims.get(JwtTokenEnhancer.USER_NAME);
+		if (userName != null) {
+			user = new UsernamePasswordAuthenticationToken(userName, UNKNOWN_PASSWORD, authorities);
+		}
+		else {
+			request.setAuthorities(authorities);
+		}
+		return new OAuth2Authentication(request, user);
+	}
+
+	private Map<String, Object> decode(String accessToken, boolean rejectExpired) {
+		Jwt jwt;
+		boolean expired;
+		try {
+			jwt = JwtHelper.decode(accessToken);
+			// Reading the expiry is much cheaper than verifying the signature, so check it first
+			expired = rejectExpired && jwt.getClaimSet().isExpired(System.currentTimeMillis());
+			if (!expired) {
+				jwt.verifySignature(verifier);
+			}
+		}
+		catch (RuntimeException e) {
+			// Not a JWT, not signed with our key or corrupt: either way it isn't ours
+			throw new InvalidTokenException("Invalid access token: " + accessToken, e);
+		}
+		if (expired) {
+			throw new InvalidTokenException("Access token expired: " + accessToken);
+		}
+		try {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> claims = mapper.readValue(jwt.getClaims(), Map.class);
+			return claims;
+		}
+		catch (IOException e) {
+			throw new InvalidTokenException("Cannot read claims from access token: " + accessToken, e);
+		}
+	}
+
+	private Date getExpiration(Map<String, Object> claims) {
+		Object value = claims.get(JwtTokenEnhancer.EXPIRES);
+		if (value instanceof Number) {
+			return new Date(((Number) value).longValue() * 1000L);
+		}
+		return null;
+	}
+
+	private Set<String> getStrings(Map<String, Object> claims, String name) {
+		Object value = claims.get(name);
+		if (value instanceof List) {
+			Set<String> result = new LinkedHashSet<String>();
+			for (Object item : (List<?>) value) {
+				result.add(String.valueOf(item));
+			}
+			return result;
+		}
+		if (value instanceof String) {
+			return StringUtils.commaDelimitedListToSet((String) value);
+		}
+		return Collections.emptySet();
+	}
+
+	private static SignatureVerifier createVerifier(String key) {
+		if (key.startsWith(PEM_PREFIX) || key.startsWith(SSH_PREFIX)) {
+			return new RsaVerifier(key);
+		}
+		return new MacSigner(key);
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationRequestHolder;
+
+/**
+ * Strategy for converting tokens and authentications to and from the binary form used by persistent stores like
+ * {@link JdbcTokenStore}. Implementations signal data that cannot be decoded with an {@link IllegalArgumentException}
+ * (stores generally treat that as a corrupt entry and remove it).
+ */
+public interface TokenCodec {
+
+	byte[] encodeAccessToken(OAuth2AccessToken token);
+
+	OAuth2AccessToken decodeAccessToken(byte[] bytes);
+
+	byte[] encodeRefreshToken(OAuth2RefreshToken token);
+
+	OAuth2RefreshToken decodeRefreshToken(byte[] bytes);
+
+	byte[] encodeAuthentication(OAuth2Authentication authentication);
+
+	OAuth2Authentication decodeAuthentication(byte[] bytes);
+
+	byte[] encodeAuthorizationRequestHolder(AuthorizationRequestHolder holder);
+
+	AuthorizationRequestHolder decodeAuthorizationRequestHolder(byte[] bytes);
+
+}
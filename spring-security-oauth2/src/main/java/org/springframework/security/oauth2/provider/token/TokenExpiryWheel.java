@@ -0,0 +1,233 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hierarchical timing wheel that tracks the expiry times of token values. Scheduling and cancelling are constant
+ * time, and {@link #advance(long)} only visits the slots for the ticks that have passed (plus the occasional cascade
+ * of a coarser slot into the finer levels), so there is no ordered queue to maintain.
+ * <p>
+ * Each level has {@link #WHEEL_SIZE} slots and each slot of a level spans a whole turn of the level below. With the
+ * default one second tick the four levels cover about six months; anything further out waits in an overflow list that
+ * is re-examined whenever the top level turns. Expiry is rounded up to the next tick, so a value is never reported
+ * before its expiry time.
+ * <p>
+ * All methods are synchronized: the critical sections are short and constant time apart from {@link #advance(long)}.
+ */
+class TokenExpiryWheel {
+
+	static final int WHEEL_SIZE = 64;
+
+	private static final int BITS = 6;
+
+	private static final int MASK = WHEEL_SIZE - 1;
+
+	private static final int LEVELS = 4;
+
+	private final long tickMillis;
+
+	private final Slot[][] wheels = new Slot[LEVELS][WHEEL_SIZE];
+
+	private final Slot overflow = new Slot();
+
+	private final Slot due = new Slot();
+
+	private final Map<String, Node> nodes = new HashMap<String, Node>();
+
+	private long currentTick;
+
+	public TokenExpiryWheel(long tickMillis) {
+		this(tickMillis, System.currentTimeMillis());
+	}
+
+	TokenExpiryWheel(long tickMillis, long now) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("Tick must be positive");
+		}
+		this.tickMillis = tickMillis;
+		this.currentTick = now / tickMillis;
+		for (int level = 0; level < LEVELS; level++) {
+			for (int i = 0; i < WHEEL_SIZE; i++) {
+				wheels[level][i] = new Slot();
+			}
+		}
+	}
+
+	/**
+	 * Schedule a value to expire at the time given, replacing any existing schedule for the same value.
+	 *
+	 * @param value the token value
+	 * @param expiry the expiry time in milliseconds since the epoch
+	 */
+	public synchronized void schedule(String value, long expiry) {
+		Node node = nodes.get(value);
+		if (node != null) {
+			node.unlink();
+		}
+		else {
+			node = new Node(value);
+			nodes.put(value, node);
+		}
+		// Round up so that nothing is reported early
+		node.tick = expiry / tickMillis + (expiry % tickMillis == 0 ? 0 : 1);
+		insert(node);
+	}
+
+	/**
+	 * Cancel the expiry for a value if there is one.
+	 *
+	 * @param value the token value
+	 */
+	public synchronized void cancel(String value) {
+		Node node = nodes.remove(value);
+		if (node != null) {
+			node.unlink();
+		}
+	}
+
+	/**
+	 * Move the wheel forward to the time given and collect the values that have expired. Expired values are no longer
+	 * scheduled when this method returns.
+	 *
+	 * @param now the current time in milliseconds since the epoch
+	 * @return the expired values (possibly empty)
+	 */
+	public synchronized List<String> advance(long now) {
+		List<String> expired = new ArrayList<String>();
+		long target = now / tickMillis;
+		if (nodes.isEmpty()) {
+			currentTick = Math.max(currentTick, target);
+			return expired;
+		}
+		while (currentTick < target) {
+			currentTick++;
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+					if (level == LEVELS - 1) {
+						cascade(overflow);
+					}
+					cascade(wheels[level][(int) ((currentTick >>> (BITS * level)) & MASK)]);
+				}
+			}
+			drain(wheels[0][(int) (currentTick & MASK)], expired);
+			if (nodes.isEmpty()) {
+				currentTick = target;
+			}
+		}
+		drain(due, expired);
+		return expired;
+	}
+
+	/**
+	 * @return the number of values scheduled
+	 */
+	public synchronized int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Cancel all scheduled values.
+	 */
+	public synchronized void clear() {
+		for (Node node : nodes.values()) {
+			node.unlink();
+		}
+		nodes.clear();
+	}
+
+	private void insert(Node node) {
+		long delta = node.tick - currentTick;
+		if (delta <= 0) {
+			due.add(node);
+			return;
+		}
+		for (int level = 0; level < LEVELS; level++) {
+			if (delta < (1L << (BITS * (level + 1)))) {
+				wheels[level][(int) ((node.tick >>> (BITS * level)) & MASK)].add(node);
+				return;
+			}
+		}
+		overflow.add(node);
+	}
+
+	private void cascade(Slot slot) {
+		Node node = slot.head.next;
+		slot.head.next = slot.head;
+		slot.head.previous = slot.head;
+		while (node != slot.head) {
+			Node next = node.next;
+			insert(node);
+			node = next;
+		}
+	}
+
+	private void drain(Slot slot, List<String> expired) {
+		Node node = slot.head.next;
+		while (node != slot.head) {
+			Node next = node.next;
+			node.unlink();
+			nodes.remove(node.value);
+			expired.add(node.value);
+			node = next;
+		}
+	}
+
+	private static class Slot {
+
+		private final Node head = new Node(null);
+
+		public Slot() {
+			head.next = head;
+			head.previous = head;
+		}
+
+		public void add(Node node) {
+			node.previous = head.previous;
+			node.next = head;
+			head.previous.next = node;
+			head.previous = node;
+		}
+
+	}
+
+	private static class Node {
+
+		private final String value;
+
+		private long tick;
+
+		private Node previous;
+
+		private Node next;
+
+		public Node(String value) {
+			this.value = value;
+		}
+
+		public void unlink() {
+			if (previous != null) {
+				previous.next = next;
+				next.previous = previous;
+				previous = null;
+				next = null;
+			}
+		}
+
+	}
+
+}
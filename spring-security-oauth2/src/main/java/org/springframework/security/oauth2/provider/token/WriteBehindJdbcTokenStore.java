@@ -0,0 +1,480 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link JdbcTokenStore} that defers token inserts to a background thread, so that inserts from concurrent requests
+ * can be sent to the database in JDBC batches. A batch is flushed when it reaches the {@link #setBatchSize(int) batch
+ * size} or when the oldest write in it has waited for the {@link #setFlushIntervalMillis(long) flush interval},
+ * whichever comes first. Tokens that are waiting to be written are visible to the read methods of this store, so a
+ * token can be used immediately after it is issued by the same node.
+ * <p>
+ * Durability: a call to {@link #storeAccessToken(OAuth2AccessToken, OAuth2Authentication)} or
+ * {@link #storeRefreshToken(OAuth2RefreshToken, OAuth2Authentication)} returns before the token is committed, so
+ * tokens issued in the last flush interval can be lost if the process dies, and they are not visible to other nodes
+ * sharing the database until they are flushed. Pending writes are flushed on {@link #destroy()}. Failed batches are
+ * retried row by row and rows that still fail are logged and dropped, so a write is never left pending.
+ * <p>
+ * Backpressure: at most {@link #setMaxPendingWrites(int) maxPendingWrites} writes are queued. When the queue is full
+ * the calling thread inserts its own token synchronously, so callers slow down to the speed of the database instead
+ * of growing the heap.
+ * <p>
+ * The background thread is started by {@link #afterPropertiesSet()}. Until then (and after {@link #destroy()}) all
+ * writes are synchronous.
+ */
+public class WriteBehindJdbcTokenStore extends JdbcTokenStore implements InitializingBean, DisposableBean {
+
+	private static final Log LOG = LogFactory.getLog(WriteBehindJdbcTokenStore.class);
+
+	private final ConcurrentHashMap<String, PendingWrite> pendingAccessTokens = new ConcurrentHashMap<String, PendingWrite>();
+
+	private final ConcurrentHashMap<String, PendingWrite> pendingAuthenticationKeys = new ConcurrentHashMap<String, PendingWrite>();
+
+	private final ConcurrentHashMap<String, PendingWrite> pendingRefreshTokens = new ConcurrentHashMap<String, PendingWrite>();
+
+	private final Object flushLock = new Object();
+
+	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+	private int batchSize = 100;
+
+	private long flushIntervalMillis = 50;
+
+	private int maxPendingWrites = 10000;
+
+	private BlockingQueue<PendingWrite> queue;
+
+	private Thread flusher;
+
+	private volatile boolean running = false;
+
+	public WriteBehindJdbcTokenStore(DataSource dataSource) {
+		super(dataSource);
+	}
+
+	/**
+	 * The maximum number of rows sent to the database in one JDBC batch (default 100).
+	 *
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * The maximum time in milliseconds that a write waits for a batch to fill up before it is flushed (default 50).
+	 * This is also the window in which an issued token is not yet durable.
+	 *
+	 * @param flushIntervalMillis the flush interval to set
+	 */
+	public void setFlushIntervalMillis(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * The maximum number of writes waiting to be flushed (default 10000). Further writes are executed synchronously
+	 * by the caller until the queue drains.
+	 *
+	 * @param maxPendingWrites the maximum number of pending writes
+	 */
+	public void setMaxPendingWrites(int maxPendingWrites) {
+		this.maxPendingWrites = maxPendingWrites;
+	}
+
+	@Override
+	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+		super.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+		this.authenticationKeyGenerator = authenticationKeyGenerator;
+	}
+
+	/**
+	 * Start the background thread that flushes pending writes.
+	 */
+	public void afterPropertiesSet() throws Exception {
+		Assert.state(batchSize > 0, "Batch size must be positive");
+		Assert.state(maxPendingWrites > 0, "Maximum pending writes must be positive");
+		queue = new ArrayBlockingQueue<PendingWrite>(maxPendingWrites);
+		running = true;
+		flusher = new Thread(new Runnable() {
+			public void run() {
+				processQueue();
+			}
+		}, "oauth2-token-write-behind");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Stop the background thread and flush all pending writes to the database. The thread is not interrupted (it
+	 * might be in the middle of a JDBC call), it stops after the batch it is working on.
+	 */
+	public void destroy() throws Exception {
+		running = false;
+		if (flusher != null) {
+			flusher.join(TimeUnit.SECONDS.toMillis(10) + flushIntervalMillis);
+			flusher = null;
+		}
+		flush();
+	}
+
+	/**
+	 * Write all pending tokens to the database before returning.
+	 */
+	public void flush() {
+		if (queue == null) {
+			return;
+		}
+		List<PendingWrite> batch = new ArrayList<PendingWrite>();
+		while (queue.drainTo(batch, batchSize) > 0) {
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	@Override
+	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		PendingWrite write = new PendingWrite(token.getValue(), authenticationKeyGenerator.extractKey(authentication),
+				token, null, authentication, createAccessTokenRow(token, authentication));
+		pendingAccessTokens.put(write.value, write);
+		pendingAuthenticationKeys.put(write.authenticationKey, write);
+		if (!enqueue(write)) {
+			synchronized (flushLock) {
+				try {
+					insertAccessTokens(Collections.singletonList(write.row));
+				}
+				finally {
+					completed(write);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		PendingWrite write = new PendingWrite(refreshToken.getValue(), null, null, refreshToken, authentication,
+				createRefreshTokenRow(refreshToken, authentication));
+		pendingRefreshTokens.put(write.value, write);
+		if (!enqueue(write)) {
+			synchronized (flushLock) {
+				try {
+					insertRefreshTokens(Collections.singletonList(write.row));
+				}
+				finally {
+					completed(write);
+				}
+			}
+		}
+	}
+
+	@Override
+	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+		PendingWrite write = pendingAuthenticationKeys.get(authenticationKeyGenerator.extractKey(authentication));
+		if (write != null) {
+			return write.accessToken;
+		}
+		return super.getAccessToken(authentication);
+	}
+
+	@Override
+	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		PendingWrite write = pendingAccessTokens.get(tokenValue);
+		if (write != null) {
+			return write.accessToken;
+		}
+		return super.readAccessToken(tokenValue);
+	}
+
+	@Override
+	public StoredAccessToken readStoredAccessToken(String tokenValue) {
+		PendingWrite write = pendingAccessTokens.get(tokenValue);
+		if (write != null) {
+			return new StoredAccessToken(write.accessToken, write.authentication);
+		}
+		return super.readStoredAccessToken(tokenValue);
+	}
+
+	@Override
+	public OAuth2Authentication readAuthentication(String token) {
+		PendingWrite write = pendingAccessTokens.get(token);
+		if (write != null) {
+			return write.authentication;
+		}
+		return super.readAuthentication(token);
+	}
+
+	@Override
+	public OAuth2RefreshToken readRefreshToken(String token) {
+		PendingWrite write = pendingRefreshTokens.get(token);
+		if (write != null) {
+			return write.refreshToken;
+		}
+		return super.readRefreshToken(token);
+	}
+
+	@Override
+	public OAuth2Authentication readAuthenticationForRefreshToken(String value) {
+		PendingWrite write = pendingRefreshTokens.get(value);
+		if (write != null) {
+			return write.authentication;
+		}
+		return super.readAuthenticationForRefreshToken(value);
+	}
+
+	@Override
+	public void removeAccessToken(String tokenValue) {
+		synchronized (flushLock) {
+			PendingWrite write = pendingAccessTokens.remove(tokenValue);
+			if (write != null) {
+				pendingAuthenticationKeys.remove(write.authenticationKey, write);
+			}
+			super.removeAccessToken(tokenValue);
+		}
+	}
+
+	@Override
+	public void removeRefreshToken(String token) {
+		synchronized (flushLock) {
+			pendingRefreshTokens.remove(token);
+			super.removeRefreshToken(token);
+		}
+	}
+
+	@Override
+	public void removeAccessTokenUsingRefreshToken(String refreshToken) {
+		synchronized (flushLock) {
+			for (PendingWrite write : pendingAccessTokens.values()) {
+				OAuth2RefreshToken pending = write.accessToken.getRefreshToken();
+				if (pending != null && refreshToken.equals(pending.getValue())) {
+					completed(write);
+				}
+			}
+			super.removeAccessTokenUsingRefreshToken(refreshToken);
+		}
+	}
+
+	@Override
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		// Snapshot the pending writes before querying, so a token flushed in between is found in one or the other
+		List<OAuth2AccessToken> pending = new ArrayList<OAuth2AccessToken>();
+		for (PendingWrite write : pendingAccessTokens.values()) {
+			if (clientId.equals(write.authentication.getAuthorizationRequest().getClientId())) {
+				pending.add(write.accessToken);
+			}
+		}
+		return merge(super.findTokensByClientId(clientId), pending);
+	}
+
+	@Override
+	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+		List<OAuth2AccessToken> pending = new ArrayList<OAuth2AccessToken>();
+		for (PendingWrite write : pendingAccessTokens.values()) {
+			if (!write.authentication.isClientOnly() && userName.equals(write.authentication.getName())) {
+				pending.add(write.accessToken);
+			}
+		}
+		return merge(super.findTokensByUserName(userName), pending);
+	}
+
+	private Collection<OAuth2AccessToken> merge(Collection<OAuth2AccessToken> stored, List<OAuth2AccessToken> pending) {
+		if (pending.isEmpty()) {
+			return stored;
+		}
+		Set<OAuth2AccessToken> tokens = new LinkedHashSet<OAuth2AccessToken>(stored);
+		tokens.addAll(pending);
+		return new ArrayList<OAuth2AccessToken>(tokens);
+	}
+
+	private boolean enqueue(PendingWrite write) {
+		if (!running || !queue.offer(write)) {
+			return false;
+		}
+		if (!running) {
+			// destroy() may already have flushed the queue before this write landed in it, so flush it ourselves
+			flush();
+		}
+		return true;
+	}
+
+	private void processQueue() {
+		List<PendingWrite> batch = new ArrayList<PendingWrite>(batchSize);
+		while (running) {
+			try {
+				PendingWrite first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.currentTimeMillis() + flushIntervalMillis;
+				while (batch.size() < batchSize) {
+					queue.drainTo(batch, batchSize - batch.size());
+					long remaining = deadline - System.currentTimeMillis();
+					if (batch.size() >= batchSize || remaining <= 0) {
+						break;
+					}
+					PendingWrite next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+					if (next != null) {
+						batch.add(next);
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				// Not expected (destroy() does not interrupt): stop, and whatever is left is flushed by destroy()
+				Thread.currentThread().interrupt();
+				running = false;
+			}
+			if (!batch.isEmpty()) {
+				try {
+					write(batch);
+				}
+				catch (RuntimeException e) {
+					LOG.error("Could not flush " + batch.size() + " pending token writes", e);
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	private void write(List<PendingWrite> batch) {
+		synchronized (flushLock) {
+			List<PendingWrite> accessTokens = new ArrayList<PendingWrite>();
+			List<PendingWrite> refreshTokens = new ArrayList<PendingWrite>();
+			for (PendingWrite write : batch) {
+				// Skip writes that were removed (or replaced) while they were waiting
+				if (write.isAccessToken()) {
+					if (pendingAccessTokens.get(write.value) == write) {
+						accessTokens.add(write);
+					}
+				}
+				else if (pendingRefreshTokens.get(write.value) == write) {
+					refreshTokens.add(write);
+				}
+			}
+			try {
+				writeAccessTokens(accessTokens);
+				writeRefreshTokens(refreshTokens);
+			}
+			finally {
+				// Written or dropped, none of them is pending any more
+				for (PendingWrite write : batch) {
+					completed(write);
+				}
+			}
+		}
+	}
+
+	private void writeAccessTokens(List<PendingWrite> writes) {
+		try {
+			insertAccessTokens(rows(writes));
+		}
+		catch (RuntimeException e) {
+			// Not only DataAccessException: a row that cannot be serialized fails the same way
+			LOG.warn("Batch insert of " + writes.size() + " access tokens failed, retrying one by one", e);
+			for (PendingWrite write : writes) {
+				try {
+					insertAccessTokens(Collections.singletonList(write.row));
+				}
+				catch (RuntimeException ex) {
+					LOG.error("Dropping access token that could not be stored", ex);
+				}
+			}
+		}
+	}
+
+	private void writeRefreshTokens(List<PendingWrite> writes) {
+		try {
+			insertRefreshTokens(rows(writes));
+		}
+		catch (RuntimeException e) {
+			LOG.warn("Batch insert of " + writes.size() + " refresh tokens failed, retrying one by one", e);
+			for (PendingWrite write : writes) {
+				try {
+					insertRefreshTokens(Collections.singletonList(write.row));
+				}
+				catch (RuntimeException ex) {
+					LOG.error("Dropping refresh token that could not be stored", ex);
+				}
+			}
+		}
+	}
+
+	private List<Object[]> rows(List<PendingWrite> writes) {
+		List<Object[]> rows = new ArrayList<Object[]>(writes.size());
+		for (PendingWrite write : writes) {
+			rows.add(write.row);
+		}
+		return rows;
+	}
+
+	private void completed(PendingWrite write) {
+		if (write.isAccessToken()) {
+			pendingAccessTokens.remove(write.value, write);
+			pendingAuthenticationKeys.remove(write.authenticationKey, write);
+		}
+		else {
+			pendingRefreshTokens.remove(write.value, write);
+		}
+	}
+
+	private static class PendingWrite {
+
+		private final String value;
+
+		private final String authenticationKey;
+
+		private final OAuth2AccessToken accessToken;
+
+		private final OAuth2RefreshToken refreshToken;
+
+		private final OAuth2Authentication authentication;
+
+		private final Object[] row;
+
+		public PendingWrite(String value, String authenticationKey, OAuth2AccessToken accessToken,
+				OAuth2RefreshToken refreshToken, OAuth2Authentication authentication, Object[] row) {
+			this.value = value;
+			this.authenticationKey = authenticationKey;
+			this.accessToken = accessToken;
+			this.refreshToken = refreshToken;
+			this.authentication = authentication;
+			this.row = row;
+		}
+
+		public boolean isAccessToken() {
+			return accessToken != null;
+		}
+
+	}
+
+}
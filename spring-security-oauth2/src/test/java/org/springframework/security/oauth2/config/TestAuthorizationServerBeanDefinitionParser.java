@@ -42,7 +42,8 @@ public class TestAuthorizationServerBeanDefinitionParser {
 	@Parameters
 	public static List<Object[]> parameters() {
 		return Arrays.asList(new Object[] { "authorization-server-vanilla" },
-				new Object[] { "authorization-server-extras" }, new Object[] { "authorization-server-types" });
+				new Object[] { "authorization-server-extras" }, new Object[] { "authorization-server-types" },
+				new Object[] { "authorization-server-jwt" });
 	}
 
 	public TestAuthorizationServerBeanDefinitionParser(String resource) {
@@ -12,10 +12,12 @@
  */
 package org.springframework.security.oauth2.config;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.security.oauth2.provider.token.JwtTokenServices;
 
 /**
  * @author Dave Syer
@@ -30,5 +32,7 @@ public class TestResourceServerBeanDefinitionParser {
 		assertTrue(context.containsBeanDefinition("oauth2ProviderFilter"));
 		assertTrue(context.containsBeanDefinition("anotherProviderFilter"));
 		assertTrue(context.containsBeanDefinition("thirdProviderFilter"));
+		assertTrue(context.containsBeanDefinition("jwtProviderFilter"));
+		assertEquals(1, context.getBeansOfType(JwtTokenServices.class).size());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestCachingClientDetailsService {
+
+	private CachingClientDetailsService service = new CachingClientDetailsService();
+
+	private JdbcClientDetailsService delegate = Mockito.mock(JdbcClientDetailsService.class);
+
+	private BaseClientDetails client = new BaseClientDetails("foo", null, "read", "authorization_code", null);
+
+	@Before
+	public void init() throws Exception {
+		service.setClientDetailsService(delegate);
+		service.afterPropertiesSet();
+		Mockito.when(delegate.loadClientByClientId("foo")).thenReturn(client);
+	}
+
+	@Test
+	public void testCachedClient() {
+		assertSame(client, service.loadClientByClientId("foo"));
+		assertSame(client, service.loadClientByClientId("foo"));
+		Mockito.verify(delegate, Mockito.times(1)).loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testUnknownClientNotCached() {
+		Mockito.when(delegate.loadClientByClientId("bar")).thenThrow(new NoSuchClientException("bar"));
+		for (int i = 0; i < 2; i++) {
+			try {
+				service.loadClientByClientId("bar");
+				fail("Expected NoSuchClientException");
+			}
+			catch (NoSuchClientException e) {
+				// expected
+			}
+		}
+		Mockito.verify(delegate, Mockito.times(2)).loadClientByClientId("bar");
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		service.setTimeToLiveSeconds(0);
+		service.loadClientByClientId("foo");
+		service.loadClientByClientId("foo");
+		Mockito.verify(delegate, Mockito.times(2)).loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testRefreshAhead() throws Exception {
+		service.setRefreshAheadSeconds(0);
+		BaseClientDetails other = new BaseClientDetails("foo", null, "write", "authorization_code", null);
+		service.loadClientByClientId("foo");
+		Mockito.when(delegate.loadClientByClientId("foo")).thenReturn(other);
+		// The cached value is served while the reload happens
+		assertSame(client, service.loadClientByClientId("foo"));
+		assertSame(other, service.loadClientByClientId("foo"));
+	}
+
+	@Test
+	public void testUpdateEvicts() {
+		service.loadClientByClientId("foo");
+		service.updateClientDetails(client);
+		service.loadClientByClientId("foo");
+		Mockito.verify(delegate).updateClientDetails(client);
+		Mockito.verify(delegate, Mockito.times(2)).loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testUpdateSecretEvicts() {
+		service.loadClientByClientId("foo");
+		service.updateClientSecret("foo", "secret");
+		service.loadClientByClientId("foo");
+		Mockito.verify(delegate, Mockito.times(2)).loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testRemoveEvictsEvenIfItFails() {
+		service.loadClientByClientId("foo");
+		Mockito.doThrow(new NoSuchClientException("foo")).when(delegate).removeClientDetails("foo");
+		try {
+			service.removeClientDetails("foo");
+			fail("Expected NoSuchClientException");
+		}
+		catch (NoSuchClientException e) {
+			// expected
+		}
+		service.loadClientByClientId("foo");
+		Mockito.verify(delegate, Mockito.times(2)).loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testMaxSize() {
+		service.setMaxSize(10);
+		for (int i = 0; i < 100; i++) {
+			String clientId = "foo" + i;
+			Mockito.when(delegate.loadClientByClientId(clientId)).thenReturn(
+					new BaseClientDetails(clientId, null, null, null, null));
+			assertEquals(clientId, service.loadClientByClientId(clientId).getClientId());
+		}
+		for (int i = 0; i < 100; i++) {
+			service.loadClientByClientId("foo" + i);
+		}
+		// At most 10 of the second round can be cache hits
+		Mockito.verify(delegate, Mockito.atLeast(190)).loadClientByClientId(Mockito.anyString());
+	}
+
+}
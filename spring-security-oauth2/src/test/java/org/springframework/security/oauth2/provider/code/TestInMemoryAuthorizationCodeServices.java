@@ -1,6 +1,21 @@
 package org.springframework.security.oauth2.provider.code;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 
 public class TestInMemoryAuthorizationCodeServices extends TestAuthorizationCodeServicesBase {
 
@@ -15,4 +30,121 @@ public class TestInMemoryAuthorizationCodeServices extends TestAuthorizationCode
 	AuthorizationCodeServices getAuthorizationCodeServices() {
 		return authorizationCodeServices;
 	}
+
+	@Test
+	public void testExpiredCodeCannotBeRedeemed() throws Exception {
+		authorizationCodeServices.setCodeValiditySeconds(1);
+		String code = authorizationCodeServices.createAuthorizationCode(createHolder("id"));
+		Thread.sleep(1100);
+		try {
+			authorizationCodeServices.consumeAuthorizationCode(code);
+			fail("Should have thrown exception");
+		}
+		catch (InvalidGrantException e) {
+			// good we expected this
+		}
+		assertEquals(1, authorizationCodeServices.getExpiredCount());
+		assertEquals(0, authorizationCodeServices.getRedeemedCount());
+	}
+
+	@Test
+	public void testExpiredCodesPurgedOnIssue() throws Exception {
+		authorizationCodeServices.setCodeValiditySeconds(1);
+		authorizationCodeServices.createAuthorizationCode(createHolder("id"));
+		authorizationCodeServices.createAuthorizationCode(createHolder("id"));
+		Thread.sleep(1100);
+		authorizationCodeServices.createAuthorizationCode(createHolder("id"));
+		assertEquals(1, authorizationCodeServices.getCodeCount());
+		assertEquals(2, authorizationCodeServices.getExpiredCount());
+		assertEquals(3, authorizationCodeServices.getIssuedCount());
+	}
+
+	@Test
+	public void testOldestEvictedWhenFull() throws Exception {
+		authorizationCodeServices.setMaxCodes(2);
+		String first = authorizationCodeServices.createAuthorizationCode(createHolder("foo"));
+		String second = authorizationCodeServices.createAuthorizationCode(createHolder("bar"));
+		String third = authorizationCodeServices.createAuthorizationCode(createHolder("foo"));
+		assertEquals(2, authorizationCodeServices.getCodeCount());
+		assertEquals(1, authorizationCodeServices.getEvictedCount());
+		authorizationCodeServices.consumeAuthorizationCode(second);
+		authorizationCodeServices.consumeAuthorizationCode(third);
+		assertEquals(2, authorizationCodeServices.getRedeemedCount());
+		try {
+			authorizationCodeServices.consumeAuthorizationCode(first);
+			fail("Should have thrown exception");
+		}
+		catch (InvalidGrantException e) {
+			// good we expected this
+		}
+	}
+
+	@Test
+	public void testOldestEvictedPerClient() throws Exception {
+		authorizationCodeServices.setMaxCodesPerClient(2);
+		String first = authorizationCodeServices.createAuthorizationCode(createHolder("foo"));
+		String other = authorizationCodeServices.createAuthorizationCode(createHolder("bar"));
+		authorizationCodeServices.createAuthorizationCode(createHolder("foo"));
+		authorizationCodeServices.createAuthorizationCode(createHolder("foo"));
+		assertEquals(3, authorizationCodeServices.getCodeCount());
+		assertEquals(1, authorizationCodeServices.getEvictedCount());
+		authorizationCodeServices.consumeAuthorizationCode(other);
+		try {
+			authorizationCodeServices.consumeAuthorizationCode(first);
+			fail("Should have thrown exception");
+		}
+		catch (InvalidGrantException e) {
+			// good we expected this
+		}
+	}
+
+	@Test
+	public void testNoLimitsByDefault() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			authorizationCodeServices.createAuthorizationCode(createHolder("foo"));
+		}
+		assertEquals(10, authorizationCodeServices.getCodeCount());
+		assertEquals(0, authorizationCodeServices.getEvictedCount());
+	}
+
+	@Test
+	public void testConcurrentIssueAndRedeem() throws Exception {
+		authorizationCodeServices.setMaxCodes(50);
+		authorizationCodeServices.setMaxCodesPerClient(20);
+		final int threads = 8;
+		final int iterations = 500;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++) {
+			final String clientId = "client" + (t % 3);
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					for (int i = 0; i < iterations; i++) {
+						String code = authorizationCodeServices.createAuthorizationCode(createHolder(clientId));
+						if (i % 2 == 0) {
+							try {
+								authorizationCodeServices.consumeAuthorizationCode(code);
+							}
+							catch (InvalidGrantException e) {
+								// evicted by another thread
+							}
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		assertTrue(authorizationCodeServices.getCodeCount() <= 50);
+		assertEquals(authorizationCodeServices.getIssuedCount(), authorizationCodeServices.getRedeemedCount()
+				+ authorizationCodeServices.getEvictedCount() + authorizationCodeServices.getCodeCount());
+	}
+
+	private AuthorizationRequestHolder createHolder(String clientId) {
+		return new AuthorizationRequestHolder(new DefaultAuthorizationRequest(clientId, null), new TestAuthentication(
+				"test2", false));
+	}
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.UnsupportedGrantTypeException;
+import org.springframework.security.oauth2.provider.BaseClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.CompositeTokenGranter;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequestManager;
+import org.springframework.security.oauth2.provider.InMemoryClientDetailsService;
+import org.springframework.security.oauth2.provider.TokenGranter;
+import org.springframework.security.oauth2.provider.client.ClientCredentialsTokenGranter;
+import org.springframework.security.oauth2.provider.code.AuthorizationCodeTokenGranter;
+import org.springframework.security.oauth2.provider.code.AuthorizationRequestHolder;
+import org.springframework.security.oauth2.provider.code.InMemoryAuthorizationCodeServices;
+import org.springframework.security.oauth2.provider.password.ResourceOwnerPasswordTokenGranter;
+import org.springframework.security.oauth2.provider.refresh.RefreshTokenGranter;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+
+/**
+ * Checks that a token grant only loads the client details once, whatever the grant type.
+ */
+public class TestTokenEndpointClientDetailsLookups {
+
+	private TokenEndpoint endpoint = new TokenEndpoint();
+
+	private AtomicInteger lookups = new AtomicInteger();
+
+	private InMemoryAuthorizationCodeServices authorizationCodeServices = new InMemoryAuthorizationCodeServices();
+
+	private UsernamePasswordAuthenticationToken client = new UsernamePasswordAuthenticationToken("foo", null,
+			AuthorityUtils.createAuthorityList("ROLE_CLIENT"));
+
+	private UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken("marissa", "koala",
+			AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+	@Before
+	public void init() throws Exception {
+		InMemoryClientDetailsService clients = new InMemoryClientDetailsService();
+		clients.setClientDetailsStore(Collections.singletonMap("foo", new BaseClientDetails("foo", null, "read",
+				"client_credentials,password,authorization_code,refresh_token", "ROLE_CLIENT")));
+		final ClientDetailsService delegate = clients;
+		ClientDetailsService clientDetailsService = new ClientDetailsService() {
+			public ClientDetails loadClientByClientId(String clientId) {
+				lookups.incrementAndGet();
+				return delegate.loadClientByClientId(clientId);
+			}
+		};
+		DefaultTokenServices tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(new InMemoryTokenStore());
+		tokenServices.setSupportRefreshToken(true);
+		tokenServices.setClientDetailsService(clientDetailsService);
+		tokenServices.afterPropertiesSet();
+		AuthenticationManager authenticationManager = new AuthenticationManager() {
+			public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+				return user;
+			}
+		};
+		TokenGranter tokenGranter = new CompositeTokenGranter(Arrays.<TokenGranter> asList(
+				new ClientCredentialsTokenGranter(tokenServices, clientDetailsService),
+				new ResourceOwnerPasswordTokenGranter(authenticationManager, tokenServices, clientDetailsService),
+				new AuthorizationCodeTokenGranter(tokenServices, authorizationCodeServices, clientDetailsService),
+				new RefreshTokenGranter(tokenServices, clientDetailsService)));
+		endpoint.setTokenGranter(tokenGranter);
+		endpoint.setAuthorizationRequestManager(new DefaultAuthorizationRequestManager(clientDetailsService));
+		endpoint.setClientDetailsService(clientDetailsService);
+	}
+
+	@Test
+	public void testClientCredentials() {
+		grant("client_credentials", new HashMap<String, String>());
+		assertEquals(1, lookups.get());
+	}
+
+	@Test
+	public void testPassword() {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("username", "marissa");
+		parameters.put("password", "koala");
+		grant("password", parameters);
+		assertEquals(1, lookups.get());
+	}
+
+	@Test
+	public void testAuthorizationCode() {
+		DefaultAuthorizationRequest authorizationRequest = new DefaultAuthorizationRequest("foo",
+				Collections.singleton("read"));
+		authorizationRequest.setApproved(true);
+		String code = authorizationCodeServices.createAuthorizationCode(new AuthorizationRequestHolder(
+				authorizationRequest, user));
+		grant("authorization_code", Collections.singletonMap("code", code));
+		assertEquals(1, lookups.get());
+	}
+
+	@Test
+	public void testRefreshToken() {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("username", "marissa");
+		parameters.put("password", "koala");
+		OAuth2AccessToken token = grant("password", parameters);
+		assertNotNull(token.getRefreshToken());
+		lookups.set(0);
+		grant("refresh_token", Collections.singletonMap("refresh_token", token.getRefreshToken().getValue()));
+		assertEquals(1, lookups.get());
+	}
+
+	@Test
+	public void testLookupsNotSharedBetweenRequests() {
+		grant("client_credentials", new HashMap<String, String>());
+		grant("client_credentials", new HashMap<String, String>());
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void testLookupsNotSharedAfterFailedRequest() {
+		try {
+			grant("foo", new HashMap<String, String>());
+			fail("Expected UnsupportedGrantTypeException");
+		}
+		catch (UnsupportedGrantTypeException e) {
+			// expected
+		}
+		grant("client_credentials", new HashMap<String, String>());
+		assertEquals(2, lookups.get());
+	}
+
+	private OAuth2AccessToken grant(String grantType, Map<String, String> parameters) {
+		Map<String, String> request = new HashMap<String, String>(parameters);
+		request.put("grant_type", grantType);
+		return endpoint.getAccessToken(client, grantType, request).getBody();
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class TestCachingResourceServerTokenServices {
+
+	private CachingResourceServerTokenServices services = new CachingResourceServerTokenServices();
+
+	private DefaultTokenServices tokenServices = Mockito.mock(DefaultTokenServices.class);
+
+	private DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("FOO");
+
+	private OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("client",
+			null), new UsernamePasswordAuthenticationToken("marissa", "koala"));
+
+	@Before
+	public void init() throws Exception {
+		services.setTokenServices(tokenServices);
+		services.afterPropertiesSet();
+		Mockito.when(tokenServices.readStoredAccessToken("FOO")).thenReturn(
+				new StoredAccessToken(accessToken, authentication));
+	}
+
+	@Test
+	public void testCachedAuthentication() {
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		assertEquals(accessToken, services.readAccessToken("FOO"));
+		Mockito.verify(tokenServices, Mockito.times(1)).readStoredAccessToken("FOO");
+		Mockito.verify(tokenServices, Mockito.never()).loadAuthentication("FOO");
+		Mockito.verify(tokenServices, Mockito.never()).readAccessToken("FOO");
+	}
+
+	@Test
+	public void testCachedAuthenticationWithoutStoredAccessTokenReader() throws Exception {
+		ResourceServerTokenServices delegate = Mockito.mock(ResourceServerTokenServices.class);
+		Mockito.when(delegate.readAccessToken("FOO")).thenReturn(accessToken);
+		Mockito.when(delegate.loadAuthentication("FOO")).thenReturn(authentication);
+		services.setTokenServices(delegate);
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		assertEquals(authentication, services.loadAuthentication("FOO"));
+		Mockito.verify(delegate, Mockito.times(1)).loadAuthentication("FOO");
+		Mockito.verify(delegate, Mockito.times(1)).readAccessToken("FOO");
+	}
+
+	@Test
+	public void testCachedAuthenticationIsCopied() {
+		services.loadAuthentication("FOO").setDetails("BAR");
+		assertNull(services.loadAuthentication("FOO").getDetails());
+	}
+
+	@Test
+	public void testExpiryCappedByToken() throws Exception {
+		accessToken.setExpiration(new Date(System.currentTimeMillis() + 50));
+		services.loadAuthentication("FOO");
+		Thread.sleep(100);
+		try {
+			services.loadAuthentication("FOO");
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+		Mockito.verify(tokenServices, Mockito.times(2)).readStoredAccessToken("FOO");
+	}
+
+	@Test
+	public void testExpiredTokenNotCached() {
+		accessToken.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		for (int i = 0; i < 2; i++) {
+			try {
+				services.loadAuthentication("FOO");
+				fail("Expected InvalidTokenException");
+			}
+			catch (InvalidTokenException e) {
+				// expected
+			}
+		}
+		// The token services get to deal with the expired token every time
+		Mockito.verify(tokenServices, Mockito.times(2)).loadAuthentication("FOO");
+	}
+
+	@Test
+	public void testNegativeCaching() {
+		for (int i = 0; i < 2; i++) {
+			try {
+				services.loadAuthentication("BAR");
+				fail("Expected InvalidTokenException");
+			}
+			catch (InvalidTokenException e) {
+				// expected
+			}
+		}
+		Mockito.verify(tokenServices, Mockito.times(1)).readStoredAccessToken("BAR");
+	}
+
+	@Test
+	public void testRevokeEvicts() {
+		services.loadAuthentication("FOO");
+		Mockito.when(tokenServices.revokeToken("FOO")).thenReturn(true);
+		services.revokeToken("FOO");
+		Mockito.when(tokenServices.readStoredAccessToken("FOO")).thenReturn(null);
+		try {
+			services.loadAuthentication("FOO");
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLoadRacingWithRevokeIsNotCached() {
+		Mockito.when(tokenServices.readStoredAccessToken("FOO")).thenAnswer(new Answer<StoredAccessToken>() {
+			public StoredAccessToken answer(InvocationOnMock invocation) throws Throwable {
+				// Revoked after this load read the token, but before it was cached
+				services.revokeToken("FOO");
+				return new StoredAccessToken(accessToken, authentication);
+			}
+		});
+		services.loadAuthentication("FOO");
+		Mockito.when(tokenServices.readStoredAccessToken("FOO")).thenReturn(null);
+		try {
+			services.loadAuthentication("FOO");
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMaxSize() {
+		services.setMaxSize(10);
+		for (int i = 0; i < 100; i++) {
+			String value = "FOO" + i;
+			Mockito.when(tokenServices.readStoredAccessToken(value)).thenReturn(
+					new StoredAccessToken(new DefaultOAuth2AccessToken(value), authentication));
+			services.loadAuthentication(value);
+		}
+		for (int i = 0; i < 100; i++) {
+			services.loadAuthentication("FOO" + i);
+		}
+		// At most 10 of the second round can be cache hits
+		Mockito.verify(tokenServices, Mockito.atLeast(190)).readStoredAccessToken(Mockito.anyString());
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationRequestHolder;
+
+public class TestCompactTokenCodec {
+
+	private CompactTokenCodec codec = new CompactTokenCodec();
+
+	@Test
+	public void testAccessToken() {
+		DefaultOAuth2AccessToken token = createAccessToken();
+		OAuth2AccessToken result = codec.decodeAccessToken(codec.encodeAccessToken(token));
+		assertEquals(token, result);
+		assertEquals(token.getExpiration(), result.getExpiration());
+		assertEquals(token.getScope(), result.getScope());
+		assertEquals(token.getTokenType(), result.getTokenType());
+		assertEquals(token.getRefreshToken(), result.getRefreshToken());
+		assertEquals(token.getAdditionalInformation(), result.getAdditionalInformation());
+	}
+
+	@Test
+	public void testAccessTokenWithNullScope() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		OAuth2AccessToken result = codec.decodeAccessToken(codec.encodeAccessToken(token));
+		assertNull(result.getScope());
+		assertNull(result.getExpiration());
+		assertNull(result.getRefreshToken());
+	}
+
+	@Test
+	public void testRefreshTokens() {
+		OAuth2RefreshToken token = new DefaultOAuth2RefreshToken("FOO");
+		assertEquals(token, codec.decodeRefreshToken(codec.encodeRefreshToken(token)));
+		DefaultExpiringOAuth2RefreshToken expiring = new DefaultExpiringOAuth2RefreshToken("BAR", new Date());
+		DefaultExpiringOAuth2RefreshToken result = (DefaultExpiringOAuth2RefreshToken) codec
+				.decodeRefreshToken(codec.encodeRefreshToken(expiring));
+		assertEquals(expiring, result);
+		assertEquals(expiring.getExpiration(), result.getExpiration());
+	}
+
+	@Test
+	public void testAuthentication() {
+		OAuth2Authentication authentication = createAuthentication();
+		OAuth2Authentication result = codec.decodeAuthentication(codec.encodeAuthentication(authentication));
+		assertEquals(authentication, result);
+		assertEquals(authentication.getAuthorizationRequest().getRedirectUri(), result.getAuthorizationRequest()
+				.getRedirectUri());
+		assertEquals(authentication.getAuthorizationRequest().getResourceIds(), result.getAuthorizationRequest()
+				.getResourceIds());
+	}
+
+	@Test
+	public void testClientOnlyAuthenticationWithNullScope() {
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				null);
+		assertEquals(authentication, codec.decodeAuthentication(codec.encodeAuthentication(authentication)));
+	}
+
+	@Test
+	public void testUserPrincipal() {
+		User user = new User("marissa", "koala", true, true, true, false,
+				AuthorityUtils.createAuthorityList("ROLE_USER"));
+		user.eraseCredentials();
+		UsernamePasswordAuthenticationToken userAuthentication = new UsernamePasswordAuthenticationToken(user, null,
+				user.getAuthorities());
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id",
+				Arrays.asList("read")), userAuthentication);
+		OAuth2Authentication result = codec.decodeAuthentication(codec.encodeAuthentication(authentication));
+		assertEquals(authentication, result);
+		User other = (User) result.getPrincipal();
+		assertNull(other.getPassword());
+		assertEquals(user.isAccountNonLocked(), other.isAccountNonLocked());
+		assertEquals(user.getAuthorities(), other.getAuthorities());
+	}
+
+	@Test
+	public void testAuthorizationRequestHolder() {
+		AuthorizationRequestHolder holder = new AuthorizationRequestHolder(new DefaultAuthorizationRequest("client",
+				Arrays.asList("read")), new UsernamePasswordAuthenticationToken("user", "pwd"));
+		assertEquals(holder, codec.decodeAuthorizationRequestHolder(codec.encodeAuthorizationRequestHolder(holder)));
+	}
+
+	@Test
+	public void testReadsJavaSerialization() {
+		DefaultOAuth2AccessToken token = createAccessToken();
+		OAuth2Authentication authentication = createAuthentication();
+		assertEquals(token, codec.decodeAccessToken(SerializationUtils.serialize(token)));
+		assertEquals(authentication, codec.decodeAuthentication(SerializationUtils.serialize(authentication)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncatedData() {
+		byte[] bytes = codec.encodeAuthentication(createAuthentication());
+		byte[] truncated = new byte[bytes.length / 2];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		codec.decodeAuthentication(truncated);
+	}
+
+	@Test
+	public void testSmallerThanJavaSerialization() {
+		OAuth2Authentication authentication = createAuthentication();
+		int compact = codec.encodeAuthentication(authentication).length;
+		int serialized = SerializationUtils.serialize(authentication).length;
+		assertTrue("Compact form (" + compact + ") not much smaller than serialized (" + serialized + ")",
+				compact * 2 < serialized);
+		DefaultOAuth2AccessToken token = createAccessToken();
+		compact = codec.encodeAccessToken(token).length;
+		serialized = SerializationUtils.serialize(token).length;
+		assertTrue("Compact form (" + compact + ") not much smaller than serialized (" + serialized + ")",
+				compact * 2 < serialized);
+	}
+
+	private DefaultOAuth2AccessToken createAccessToken() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date());
+		token.setScope(new LinkedHashSet<String>(Arrays.asList("read", "write")));
+		token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken("BAR", new Date()));
+		Map<String, Object> additionalInformation = new HashMap<String, Object>();
+		additionalInformation.put("foo", "bar");
+		additionalInformation.put("count", 3);
+		additionalInformation.put("list", Arrays.asList("a", "b"));
+		token.setAdditionalInformation(additionalInformation);
+		return token;
+	}
+
+	private OAuth2Authentication createAuthentication() {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("redirect_uri", "http://anywhere.com");
+		parameters.put("state", "xyz");
+		DefaultAuthorizationRequest request = new DefaultAuthorizationRequest(parameters,
+				Collections.singletonMap("user_oauth_approval", "true"), "client", Arrays.asList("read", "write"));
+		request.setResourceIds(Collections.singleton("sparklr"));
+		request.setAuthorities(AuthorityUtils.createAuthorityList("ROLE_CLIENT"));
+		request.setRedirectUri("http://anywhere.com/resolved");
+		request.setApproved(true);
+		return new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken("marissa", null,
+				AuthorityUtils.createAuthorityList("ROLE_USER")));
+	}
+
+}
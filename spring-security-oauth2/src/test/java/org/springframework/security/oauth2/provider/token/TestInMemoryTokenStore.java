@@ -2,11 +2,22 @@ package org.springframework.security.oauth2.provider.token;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
@@ -67,4 +78,120 @@ public class TestInMemoryTokenStore extends TestTokenStoreBase {
 			getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
 		}
 	}
+
+	@Test
+	public void testBackgroundSweep() throws Exception {
+		getTokenStore().setSweepIntervalMillis(50);
+		getTokenStore().afterPropertiesSet();
+		try {
+			OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id",
+					null), new TestAuthentication("test", false));
+			DefaultOAuth2AccessToken expectedOAuth2AccessToken = new DefaultOAuth2AccessToken("testToken");
+			expectedOAuth2AccessToken.setExpiration(new Date(System.currentTimeMillis() - 1000));
+			getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
+			for (int i = 0; i < 100 && getTokenStore().getAccessTokenCount() > 0; i++) {
+				Thread.sleep(50);
+			}
+			assertEquals(0, getTokenStore().getAccessTokenCount());
+			assertEquals(0, getTokenStore().getExpiryTokenCount());
+		}
+		finally {
+			getTokenStore().destroy();
+		}
+	}
+
+	@Test
+	public void testStoreAndRemoveDoNotWaitForExpiryWheel() throws Exception {
+		getTokenStore().setFlushInterval(Integer.MAX_VALUE);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> result;
+			// Stand in for a long flush: stores and removes must not need the wheel
+			synchronized (getTokenStore().expiryWheel) {
+				result = executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						for (int i = 0; i < 10; i++) {
+							OAuth2Authentication authentication = new OAuth2Authentication(
+									new DefaultAuthorizationRequest("id", null), new TestAuthentication("test" + i, false));
+							DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken" + i);
+							token.setExpiration(new Date(System.currentTimeMillis() + 10000));
+							getTokenStore().storeAccessToken(token, authentication);
+						}
+						getTokenStore().removeAccessToken("testToken0");
+						return null;
+					}
+				});
+				result.get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(9, getTokenStore().getAccessTokenCount());
+			assertEquals(9, getTokenStore().getExpiryTokenCount());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFindTokensByUserNameIsSnapshot() throws Exception {
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				new TestAuthentication("test", false));
+		getTokenStore().storeAccessToken(new DefaultOAuth2AccessToken("testToken"), authentication);
+		Collection<OAuth2AccessToken> tokens = getTokenStore().findTokensByUserName("test");
+		getTokenStore().removeAccessToken("testToken");
+		assertEquals(1, tokens.size());
+		assertEquals(0, getTokenStore().findTokensByUserName("test").size());
+	}
+
+	@Test
+	public void testConcurrentStoreAndRemove() throws Exception {
+		final int threads = 8;
+		final int iterations = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					start.await();
+					for (int i = 0; i < iterations; i++) {
+						// Threads share token values and client ids so that they contend
+						String value = "testToken" + (i % 20);
+						OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest(
+								"id" + (i % 5), null), new TestAuthentication("test" + thread, false));
+						DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value);
+						token.setRefreshToken(new DefaultOAuth2RefreshToken("refresh" + value));
+						getTokenStore().storeAccessToken(token, authentication);
+						if (i % 3 == 0) {
+							getTokenStore().removeAccessToken(value);
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> result : results) {
+			result.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		// Every token in an index must be stored, with an authentication that matches the index
+		int indexed = 0;
+		for (int t = 0; t < threads; t++) {
+			for (OAuth2AccessToken token : getTokenStore().findTokensByUserName("test" + t)) {
+				assertEquals("test" + t, getTokenStore().readAuthentication(token).getName());
+				indexed++;
+			}
+		}
+		assertEquals(getTokenStore().getAccessTokenCount(), indexed);
+		indexed = 0;
+		for (int i = 0; i < 5; i++) {
+			for (OAuth2AccessToken token : getTokenStore().findTokensByClientId("id" + i)) {
+				assertEquals("id" + i, getTokenStore().readAuthentication(token).getAuthorizationRequest()
+						.getClientId());
+				indexed++;
+			}
+		}
+		assertEquals(getTokenStore().getAccessTokenCount(), indexed);
+	}
 }
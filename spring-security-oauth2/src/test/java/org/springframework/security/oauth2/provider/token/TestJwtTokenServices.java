@@ -0,0 +1,140 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class TestJwtTokenServices {
+
+	private JwtTokenEnhancer enhancer = new JwtTokenEnhancer();
+
+	private JwtTokenServices services = new JwtTokenServices();
+
+	private DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("FOO");
+
+	private DefaultAuthorizationRequest request = new DefaultAuthorizationRequest("client", Collections.singleton("read"));
+
+	@Before
+	public void init() throws Exception {
+		enhancer.setSigningKey("secret");
+		enhancer.afterPropertiesSet();
+		services.setVerifierKey("secret");
+		services.afterPropertiesSet();
+		accessToken.setScope(Collections.singleton("read"));
+		accessToken.setExpiration(new Date(System.currentTimeMillis() + 100000));
+		request.setResourceIds(Collections.singleton("sparklr"));
+	}
+
+	@Test
+	public void testUserAuthenticationRoundTrip() {
+		OAuth2Authentication authentication = new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(
+				"marissa", "koala", AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER")));
+		OAuth2AccessToken token = enhancer.enhance(accessToken, authentication);
+		assertNotSame("FOO", token.getValue());
+		assertEquals(accessToken.getExpiration(), token.getExpiration());
+		OAuth2Authentication result = services.loadAuthentication(token.getValue());
+		assertFalse(result.isClientOnly());
+		assertEquals("marissa", result.getName());
+		assertEquals("client", result.getAuthorizationRequest().getClientId());
+		assertEquals(Collections.singleton("read"), result.getAuthorizationRequest().getScope());
+		assertEquals(Collections.singleton("sparklr"), result.getAuthorizationRequest().getResourceIds());
+		assertEquals(Collections.singleton("ROLE_USER"), AuthorityUtils.authorityListToSet(result.getAuthorities()));
+		assertTrue(result.isAuthenticated());
+	}
+
+	@Test
+	public void testClientAuthenticationRoundTrip() {
+		request.setAuthorities(AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"));
+		OAuth2Authentication authentication = new OAuth2Authentication(request, null);
+		OAuth2Authentication result = services.loadAuthentication(enhancer.enhance(accessToken, authentication)
+				.getValue());
+		assertTrue(result.isClientOnly());
+		assertNull(result.getUserAuthentication());
+		assertEquals(Collections.singleton("ROLE_CLIENT"), AuthorityUtils.authorityListToSet(result.getAuthorities()));
+	}
+
+	@Test
+	public void testReadAccessToken() {
+		Set<String> scope = new LinkedHashSet<String>();
+		scope.add("read");
+		scope.add("write");
+		accessToken.setScope(scope);
+		String value = enhancer.enhance(accessToken, new OAuth2Authentication(request, null)).getValue();
+		OAuth2AccessToken result = services.readAccessToken(value);
+		assertEquals(value, result.getValue());
+		assertEquals(scope, result.getScope());
+		// Only whole seconds survive the round trip
+		assertEquals(accessToken.getExpiration().getTime() / 1000, result.getExpiration().getTime() / 1000);
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testExpiredToken() {
+		accessToken.setExpiration(new Date(System.currentTimeMillis() - 10000));
+		services.loadAuthentication(enhancer.enhance(accessToken, new OAuth2Authentication(request, null)).getValue());
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testWrongKey() throws Exception {
+		services = new JwtTokenServices();
+		services.setVerifierKey("other");
+		services.afterPropertiesSet();
+		services.loadAuthentication(enhancer.enhance(accessToken, new OAuth2Authentication(request, null)).getValue());
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testNotJwt() {
+		services.loadAuthentication("FOO");
+	}
+
+	@Test
+	public void testRsaKeys() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(1024);
+		KeyPair keys = generator.generateKeyPair();
+		enhancer = new JwtTokenEnhancer();
+		enhancer.setSigner(new RsaSigner((RSAPrivateKey) keys.getPrivate()));
+		enhancer.afterPropertiesSet();
+		services = new JwtTokenServices();
+		services.setVerifier(new RsaVerifier((RSAPublicKey) keys.getPublic()));
+		services.afterPropertiesSet();
+		OAuth2Authentication result = services.loadAuthentication(enhancer.enhance(accessToken,
+				new OAuth2Authentication(request, null)).getValue());
+		assertEquals("client", result.getAuthorizationRequest().getClientId());
+	}
+
+}
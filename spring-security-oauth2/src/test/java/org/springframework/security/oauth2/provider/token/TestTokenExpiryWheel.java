@@ -0,0 +1,88 @@
+/*
+ * Copyright 2006-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestTokenExpiryWheel {
+
+	private long start = 1000000000000L;
+
+	private TokenExpiryWheel wheel = new TokenExpiryWheel(1000, start);
+
+	@Test
+	public void testAlreadyExpired() {
+		wheel.schedule("FOO", start - 1000);
+		assertEquals(Arrays.asList("FOO"), wheel.advance(start));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testNotReportedEarly() {
+		wheel.schedule("FOO", start + 1500);
+		assertTrue(wheel.advance(start + 1000).isEmpty());
+		assertTrue(wheel.advance(start + 1999).isEmpty());
+		assertEquals(Arrays.asList("FOO"), wheel.advance(start + 2000));
+	}
+
+	@Test
+	public void testCancel() {
+		wheel.schedule("FOO", start + 1000);
+		wheel.cancel("FOO");
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.advance(start + 5000).isEmpty());
+	}
+
+	@Test
+	public void testReschedule() {
+		wheel.schedule("FOO", start + 1000);
+		wheel.schedule("FOO", start + 10000);
+		assertEquals(1, wheel.size());
+		assertTrue(wheel.advance(start + 5000).isEmpty());
+		assertEquals(Arrays.asList("FOO"), wheel.advance(start + 10000));
+	}
+
+	@Test
+	public void testCascadeThroughLevels() {
+		// Spread expiries over all the levels and the overflow list
+		long[] offsets = new long[] { 1, 63, 64, 65, 4095, 4096, 4097, 262144, 262145, 16777215, 16777216, 20000000 };
+		for (int i = 0; i < offsets.length; i++) {
+			wheel.schedule("" + i, start + offsets[i] * 1000);
+		}
+		for (int i = 0; i < offsets.length; i++) {
+			long previous = start + (offsets[i] - 1) * 1000;
+			wheel.advance(previous);
+			assertEquals("Expired early at offset " + offsets[i], offsets.length - i, wheel.size());
+			List<String> expired = wheel.advance(start + offsets[i] * 1000);
+			assertEquals("Not expired at offset " + offsets[i], Collections.singletonList("" + i), expired);
+		}
+	}
+
+	@Test
+	public void testManyExpireTogether() {
+		for (int i = 0; i < 1000; i++) {
+			wheel.schedule("" + i, start + (i % 100) * 1000);
+		}
+		assertEquals(1000, new HashSet<String>(wheel.advance(start + 100000)).size());
+		assertEquals(0, wheel.size());
+	}
+
+}
@@ -57,6 +57,22 @@ public abstract class TestTokenStoreBase {
 		assertNull(getTokenStore().readAuthentication(expectedOAuth2AccessToken.getValue()));
 	}
 
+	@Test
+	public void testReadStoredAccessToken() {
+		if (!(getTokenStore() instanceof StoredAccessTokenReader)) {
+			return;
+		}
+		StoredAccessTokenReader reader = (StoredAccessTokenReader) getTokenStore();
+		assertNull(reader.readStoredAccessToken("testToken"));
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null), new TestAuthentication("test2", false));
+		OAuth2AccessToken expectedOAuth2AccessToken = new DefaultOAuth2AccessToken("testToken");
+		getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
+
+		StoredAccessToken stored = reader.readStoredAccessToken("testToken");
+		assertEquals(expectedOAuth2AccessToken, stored.getAccessToken());
+		assertEquals(expectedAuthentication, stored.getAuthentication());
+	}
+
 	@Test
 	public void testRetrieveAccessToken() {
 		DefaultAuthorizationRequest authorizationRequest = new DefaultAuthorizationRequest("id", null);
@@ -0,0 +1,127 @@
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class TestWriteBehindJdbcTokenStore extends TestTokenStoreBase {
+
+	private WriteBehindJdbcTokenStore tokenStore;
+
+	private EmbeddedDatabase db;
+
+	@Override
+	public WriteBehindJdbcTokenStore getTokenStore() {
+		return tokenStore;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		tokenStore = new WriteBehindJdbcTokenStore(db);
+		// Long enough that reads in the tests are served from the pending writes
+		tokenStore.setFlushIntervalMillis(500);
+		tokenStore.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		tokenStore.destroy();
+		db.shutdown();
+	}
+
+	@Test
+	public void testPendingTokensAreWrittenOnDestroy() throws Exception {
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				new TestAuthentication("test2", false));
+		for (int i = 0; i < 10; i++) {
+			tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken" + i), authentication);
+		}
+		tokenStore.destroy();
+		JdbcTokenStore store = new JdbcTokenStore(db);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(authentication, store.readAuthentication("testToken" + i));
+		}
+	}
+
+	@Test
+	public void testRemovedPendingTokenIsNotWritten() throws Exception {
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				new TestAuthentication("test2", false));
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken"), authentication);
+		tokenStore.removeAccessToken("testToken");
+		tokenStore.destroy();
+		assertNull(new JdbcTokenStore(db).readAccessToken("testToken"));
+	}
+
+	@Test
+	public void testRemovePendingTokenUsingRefreshToken() throws Exception {
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				new TestAuthentication("test2", false));
+		DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("testToken");
+		accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("refreshToken"));
+		tokenStore.storeAccessToken(accessToken, authentication);
+		tokenStore.removeAccessTokenUsingRefreshToken("refreshToken");
+		assertNull(tokenStore.readAccessToken("testToken"));
+		tokenStore.destroy();
+		assertNull(new JdbcTokenStore(db).readAccessToken("testToken"));
+	}
+
+	@Test
+	public void testFailedWritesAreNotLeftPending() throws Exception {
+		tokenStore.destroy();
+		tokenStore = new WriteBehindJdbcTokenStore(db) {
+			@Override
+			protected void insertAccessTokens(List<Object[]> rows) {
+				// Not a DataAccessException, e.g. a row that cannot be serialized
+				throw new IllegalStateException("Cannot write");
+			}
+		};
+		tokenStore.setFlushIntervalMillis(500);
+		tokenStore.afterPropertiesSet();
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				new TestAuthentication("test2", false));
+		for (int i = 0; i < 5; i++) {
+			tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken" + i), authentication);
+		}
+		assertNotNull(tokenStore.readAccessToken("testToken0"));
+		tokenStore.destroy();
+		for (int i = 0; i < 5; i++) {
+			assertNull(tokenStore.readAccessToken("testToken" + i));
+		}
+		assertNull(tokenStore.getAccessToken(authentication));
+		assertTrue(tokenStore.findTokensByClientId("id").isEmpty());
+	}
+
+	@Test
+	public void testFullQueueWritesSynchronously() throws Exception {
+		tokenStore.destroy();
+		tokenStore = new WriteBehindJdbcTokenStore(db);
+		tokenStore.setMaxPendingWrites(1);
+		tokenStore.setFlushIntervalMillis(500);
+		tokenStore.afterPropertiesSet();
+		OAuth2Authentication authentication = new OAuth2Authentication(new DefaultAuthorizationRequest("id", null),
+				new TestAuthentication("test2", false));
+		for (int i = 0; i < 5; i++) {
+			tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken" + i), authentication);
+		}
+		OAuth2AccessToken token = tokenStore.readAccessToken("testToken4");
+		assertNotNull(token);
+		assertEquals(5, tokenStore.findTokensByClientId("id").size());
+	}
+
+}